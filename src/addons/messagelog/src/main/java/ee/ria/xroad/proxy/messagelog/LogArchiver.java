@@ -84,7 +84,7 @@ public class LogArchiver extends UntypedActor {
 
         if (START_ARCHIVING.equals(message)) {
             try {
-                Long maxTimestampId = doInTransaction(session -> getMaxTimestampId(session));
+                Long maxTimestampId = doInTransaction("getMaxTimestampId", session -> getMaxTimestampId(session));
                 if (maxTimestampId != null) {
                     while (handleArchive(maxTimestampId)) {
                     }
@@ -98,7 +98,7 @@ public class LogArchiver extends UntypedActor {
     }
 
     private boolean handleArchive(long maxTimestampId) throws Exception {
-        return doInTransaction(session -> {
+        return doInTransaction("handleArchive", session -> {
             List<LogRecord> records = getRecordsToBeArchived(session, maxTimestampId);
             if (records == null || records.isEmpty()) {
                 log.info("No records to be archived at this time");
@@ -70,7 +70,7 @@ public class LogCleaner extends UntypedActor {
         long count = 0;
         int removed;
         do {
-            removed = doInTransaction(session -> {
+            removed = doInTransaction("handleClean", session -> {
                 final Query query = session.getNamedQuery("delete-logrecords");
                 query.setParameter("time", time);
                 query.setParameter("limit", CLEAN_BATCH_LIMIT);
@@ -83,7 +83,7 @@ public final class LogRecordManager {
     static LogRecord getByQueryId(String queryId, Date startTime, Date endTime) throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, startTime, endTime);
 
-        return doInTransaction(session -> getMessageRecord(session, queryId, startTime, endTime));
+        return doInTransaction("getByQueryId", session -> getMessageRecord(session, queryId, startTime, endTime));
     }
 
     /**
@@ -99,7 +99,8 @@ public final class LogRecordManager {
             throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, clientId, isResponse);
 
-        return doInTransaction(session -> processor.apply(getMessageRecord(session, queryId, clientId, isResponse)));
+        return doInTransaction("getByQueryIdUnique",
+                session -> processor.apply(getMessageRecord(session, queryId, clientId, isResponse)));
     }
 
     /**
@@ -115,7 +116,8 @@ public final class LogRecordManager {
             throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, clientId, isResponse);
 
-        return doInTransaction(session -> processor.apply(getMessageRecords(session, queryId, clientId, isResponse)));
+        return doInTransaction("getByQueryId",
+                session -> processor.apply(getMessageRecords(session, queryId, clientId, isResponse)));
     }
 
     /**
@@ -127,7 +129,7 @@ public final class LogRecordManager {
     public static LogRecord get(Long number) throws Exception {
         log.trace("get({})", number);
 
-        return doInTransaction(session -> getLogRecord(session, number));
+        return doInTransaction("get", session -> getLogRecord(session, number));
     }
 
     /**
@@ -136,7 +138,7 @@ public final class LogRecordManager {
      * @throws Exception if an error occurs while communicating with database.
      */
     static void saveMessageRecord(MessageRecord messageRecord) throws Exception {
-        doInTransaction(session -> {
+        doInTransaction("saveMessageRecord", session -> {
             //the blob must be created within hibernate session
             final InputStream is = messageRecord.getAttachmentStream();
             if (is != null) {
@@ -154,7 +156,7 @@ public final class LogRecordManager {
      * @throws Exception if an error occurs while communicating with database.
      */
     static void updateMessageRecordSignature(MessageRecord messageRecord) throws Exception {
-        doInTransaction(session -> {
+        doInTransaction("updateMessageRecordSignature", session -> {
             final Query query = session.createQuery("update MessageRecord m set m.signature = :signature, "
                     + "m.signatureHash = :hash where id = :id");
             query.setParameter("id", messageRecord.getId());
@@ -176,7 +178,7 @@ public final class LogRecordManager {
     static void saveTimestampRecord(TimestampRecord timestampRecord, Long[]
             timestampedLogRecords, String[] hashChains)
             throws Exception {
-        doInTransaction(session -> {
+        doInTransaction("saveTimestampRecord", session -> {
             save(session, timestampRecord);
             setMessageRecordsTimestamped(session, timestampedLogRecords, timestampRecord, hashChains);
 
@@ -34,12 +34,10 @@ import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.RestLogMessage;
 import ee.ria.xroad.common.messagelog.SoapLogMessage;
 
-import com.google.common.collect.Iterables;
 import lombok.Setter;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.Objects;
 
 /**
  * Utility class for processing SoapMessages and removing altered message with <soap:body>
@@ -155,10 +153,7 @@ public class MessageBodyManipulator {
      * @return true if ClientId is in the collection
      */
     public boolean isClientInCollection(ClientId searchParam, Iterable<ClientId> searched) {
-        ClientId searchResult = Iterables.find(searched,
-                input -> (input.memberEquals(searchParam)
-                        && Objects.equals(input.getSubsystemCode(), searchParam.getSubsystemCode())), null);
-        return (searchResult != null);
+        return MessageLogProperties.isMessageBodyLoggingOverridden(searchParam, searched);
     }
 
 }
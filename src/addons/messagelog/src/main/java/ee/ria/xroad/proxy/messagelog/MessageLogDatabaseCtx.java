@@ -54,4 +54,16 @@ public final class MessageLogDatabaseCtx {
     public static <T> T doInTransaction(TransactionCallback<T> callback) throws Exception {
         return CTX.doInTransaction(callback);
     }
+
+    /**
+     * Convenience method for a transaction callback recorded under the given operation name.
+     * @param <T> the type of result.
+     * @param operation name of the operation.
+     * @param callback the callback.
+     * @return the result.
+     * @throws Exception if an error occurs.
+     */
+    public static <T> T doInTransaction(String operation, TransactionCallback<T> callback) throws Exception {
+        return CTX.doInTransaction(operation, callback);
+    }
 }
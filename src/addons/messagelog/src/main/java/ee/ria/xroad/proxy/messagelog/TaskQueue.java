@@ -145,7 +145,8 @@ public class TaskQueue extends UntypedActor {
         List<Task> timestampTasks;
 
         try {
-            timestampTasks = doInTransaction(session -> getTimestampTasks(session, timestampRecordsLimit));
+            timestampTasks = doInTransaction("getTimestampTasks",
+                    session -> getTimestampTasks(session, timestampRecordsLimit));
         } catch (Exception e) {
             log.error("Error getting time-stamp tasks", e);
 
@@ -190,7 +191,7 @@ public class TaskQueue extends UntypedActor {
 
     private static boolean isTaskQueueEmpty() {
         try {
-            return doInTransaction(TaskQueue::getTasksQueueSize) == 0L;
+            return doInTransaction("isTaskQueueEmpty", TaskQueue::getTasksQueueSize) == 0L;
         } catch (Exception e) {
             log.error("Could not read timestamp task queue status", e);
 
@@ -33,11 +33,11 @@ import org.hibernate.HibernateException;
 import org.hibernate.Interceptor;
 import org.hibernate.JDBCException;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.resource.transaction.spi.TransactionStatus;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DATABASE_ERROR;
-import static ee.ria.xroad.common.db.HibernateUtil.getSessionFactory;
 
 /**
  * Database context manages database connections for a specific session
@@ -48,6 +48,8 @@ import static ee.ria.xroad.common.db.HibernateUtil.getSessionFactory;
 @AllArgsConstructor
 public class DatabaseCtx {
 
+    private static final String UNNAMED_OPERATION = "unnamed";
+
     private final String sessionFactoryName;
 
     private Interceptor interceptor = null;
@@ -64,19 +66,51 @@ public class DatabaseCtx {
      */
     public <T> T doInTransaction(TransactionCallback<T> callback)
             throws Exception {
+        return doInTransaction(UNNAMED_OPERATION, callback);
+    }
+
+    /**
+     * Same as {@link #doInTransaction(TransactionCallback)}, the transaction
+     * is recorded in the database metrics under the given operation name.
+     * @param <T> the type of result
+     * @param operation name of the logical operation
+     * @param callback the callback to call
+     * @return the result from the callback
+     * @throws Exception if an exception occurred
+     */
+    public <T> T doInTransaction(String operation,
+            TransactionCallback<T> callback) throws Exception {
         Session session = null;
+        DatabaseMetrics.TransactionRecorder recorder = null;
         try {
-            session = beginTransaction();
+            session = getSession();
+            recorder = DatabaseMetrics.start(sessionFactoryName, operation,
+                    session);
+
+            beginTransaction();
 
             T result = callback.apply(session);
 
+            if (recorder != null) {
+                recorder.beforeCompletion(session);
+            }
+
             commitTransaction();
+
+            if (recorder != null) {
+                recorder.completed(true);
+            }
+
             return result;
         } catch (Exception e) {
             if (e instanceof HibernateException) {
                 log.error("Error while executing in transaction", e);
             }
 
+            if (recorder != null && session != null) {
+                recorder.beforeCompletion(session);
+            }
+
             try {
                 rollbackTransaction();
             } catch (Exception logIt) {
@@ -91,6 +125,10 @@ public class DatabaseCtx {
                 log.debug("Error closing session", logIt);
             }
 
+            if (recorder != null) {
+                recorder.completed(false);
+            }
+
             throw customizeException(e);
         }
     }
@@ -99,8 +137,14 @@ public class DatabaseCtx {
      * @return the current session
      */
     public Session getSession() {
-        return getSessionFactory(sessionFactoryName, interceptor)
-                .getCurrentSession();
+        return getSessionFactory().getCurrentSession();
+    }
+
+    /**
+     * @return the session factory of this context
+     */
+    public SessionFactory getSessionFactory() {
+        return HibernateUtil.getSessionFactory(sessionFactoryName, interceptor);
     }
 
     /**
@@ -0,0 +1,187 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.db;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records database transactions per logical operation and exposes the records over JMX, in the domain
+ * {@value #JMX_DOMAIN}. Every operation has metrics named {@code <session factory>.<operation>.<metric>}:
+ * <ul>
+ * <li>{@code duration}: duration of the transaction, including the pool wait and the commit or rollback</li>
+ * <li>{@code poolWait}: time spent waiting for a connection from the connection pool</li>
+ * <li>{@code statements}: number of JDBC statements and batches executed in the transaction</li>
+ * <li>{@code entities}: number of entities loaded or saved in the transaction, bulk updates are not counted</li>
+ * <li>{@code failures}: number of transactions that were rolled back</li>
+ * </ul>
+ * Transactions that take longer than {@link SystemProperties#getDatabaseSlowTransactionThreshold()} are logged.
+ */
+@Slf4j
+final class DatabaseMetrics {
+
+    static final String JMX_DOMAIN = "xroad.db";
+
+    private static final boolean ENABLED = SystemProperties.isDatabaseMetricsEnabled();
+    private static final long SLOW_THRESHOLD_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(SystemProperties.getDatabaseSlowTransactionThreshold());
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+    private static final ConcurrentMap<String, Recorders> RECORDERS = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED) {
+            JmxReporter.forRegistry(METRICS).inDomain(JMX_DOMAIN).build().start();
+        }
+    }
+
+    private DatabaseMetrics() {
+    }
+
+    /**
+     * Starts recording a transaction of the given session. Must be called before the transaction is begun,
+     * so that the connection acquisition is recorded.
+     * @param sessionFactoryName name of the session factory of the session
+     * @param operation name of the logical operation
+     * @param session the session
+     * @return the recorder of the transaction, or null if recording is disabled
+     */
+    static TransactionRecorder start(String sessionFactoryName, String operation, Session session) {
+        if (!ENABLED) {
+            return null;
+        }
+
+        String name = sessionFactoryName + "." + operation;
+        TransactionRecorder recorder = new TransactionRecorder(name,
+                RECORDERS.computeIfAbsent(name, Recorders::new));
+        session.addEventListeners(recorder);
+
+        return recorder;
+    }
+
+    private static final class Recorders {
+        private final Timer duration;
+        private final Timer poolWait;
+        private final Histogram statements;
+        private final Histogram entities;
+        private final Counter failures;
+
+        Recorders(String name) {
+            duration = METRICS.timer(name + ".duration");
+            poolWait = METRICS.timer(name + ".poolWait");
+            statements = METRICS.histogram(name + ".statements");
+            entities = METRICS.histogram(name + ".entities");
+            failures = METRICS.counter(name + ".failures");
+        }
+    }
+
+    /**
+     * Records a single transaction from the events of its session. The session is used by one thread at a time,
+     * so the recorder needs no synchronization.
+     */
+    static final class TransactionRecorder extends BaseSessionEventListener {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final transient Recorders recorders;
+        private final long start = System.nanoTime();
+
+        private long acquisitionStart;
+        private long poolWait;
+        private int statements;
+        private int entities;
+
+        private TransactionRecorder(String name, Recorders recorders) {
+            this.name = name;
+            this.recorders = recorders;
+        }
+
+        @Override
+        public void jdbcConnectionAcquisitionStart() {
+            acquisitionStart = System.nanoTime();
+        }
+
+        @Override
+        public void jdbcConnectionAcquisitionEnd() {
+            poolWait += System.nanoTime() - acquisitionStart;
+        }
+
+        @Override
+        public void jdbcExecuteStatementEnd() {
+            statements++;
+        }
+
+        @Override
+        public void jdbcExecuteBatchEnd() {
+            statements++;
+        }
+
+        /**
+         * Counts the entities of the session. Must be called before the transaction is completed, because the
+         * session is closed with the transaction.
+         * @param session the session
+         */
+        void beforeCompletion(Session session) {
+            if (session.isOpen()) {
+                entities = session.getStatistics().getEntityCount();
+            }
+        }
+
+        /**
+         * Records the completed transaction.
+         * @param committed true, if the transaction was committed
+         */
+        void completed(boolean committed) {
+            long duration = System.nanoTime() - start;
+
+            recorders.duration.update(duration, TimeUnit.NANOSECONDS);
+            recorders.poolWait.update(poolWait, TimeUnit.NANOSECONDS);
+            recorders.statements.update(statements);
+            recorders.entities.update(entities);
+
+            if (!committed) {
+                recorders.failures.inc();
+            }
+
+            if (SLOW_THRESHOLD_NANOS > 0 && duration >= SLOW_THRESHOLD_NANOS) {
+                log.warn("Slow transaction {} took {} ms (pool wait {} ms, {} statements, {} entities, {})", name,
+                        TimeUnit.NANOSECONDS.toMillis(duration), TimeUnit.NANOSECONDS.toMillis(poolWait),
+                        statements, entities, committed ? "committed" : "rolled back");
+            }
+        }
+    }
+}
@@ -33,6 +33,7 @@ import com.google.common.collect.Lists;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Contains constants for messagelog properties.
@@ -56,6 +57,8 @@ public final class MessageLogProperties {
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
 
+    private static final int DEFAULT_SPOOL_RETRY_INTERVAL = 60;
+
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
 
@@ -94,6 +97,19 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
 
+    /** Property name for toggling asynchronous logging of responses in the client proxy */
+    public static final String ASYNC_RESPONSE_LOGGING = PREFIX + "async-response-logging";
+
+    /** Property name of the policy for failed asynchronous response logging, 'fail' or 'spool' */
+    public static final String ASYNC_RESPONSE_LOGGING_FAILURE_POLICY =
+            PREFIX + "async-response-logging-failure-policy";
+
+    /** Property name of the directory of messages waiting to be logged after a logging failure */
+    public static final String SPOOL_PATH = PREFIX + "spool-path";
+
+    /** Property name of the interval of retrying to log spooled messages (seconds) */
+    public static final String SPOOL_RETRY_INTERVAL = PREFIX + "spool-retry-interval";
+
     /**
      * Property name for toggling SOAP body logging on/off
      * @deprecated
@@ -237,6 +253,36 @@ public final class MessageLogProperties {
         return System.getProperty(ARCHIVE_TRANSFER_COMMAND, null);
     }
 
+    /**
+     * @return true if the client proxy should send the response to the client while the response is being logged.
+     * Defaults to false.
+     */
+    public static boolean isAsyncResponseLoggingEnabled() {
+        return Boolean.getBoolean(ASYNC_RESPONSE_LOGGING);
+    }
+
+    /**
+     * @return true if responses that failed to be logged asynchronously should be spooled and logged later,
+     * false if the request should fail. Defaults to false.
+     */
+    public static boolean isAsyncResponseLoggingSpoolEnabled() {
+        return "spool".equalsIgnoreCase(System.getProperty(ASYNC_RESPONSE_LOGGING_FAILURE_POLICY, "fail"));
+    }
+
+    /**
+     * @return the directory of messages waiting to be logged after a logging failure.
+     */
+    public static String getSpoolPath() {
+        return System.getProperty(SPOOL_PATH, "/var/lib/xroad/messagelog-spool");
+    }
+
+    /**
+     * @return the interval of retrying to log spooled messages in seconds. Defaults to 60.
+     */
+    public static int getSpoolRetryInterval() {
+        return getInt(System.getProperty(SPOOL_RETRY_INTERVAL), DEFAULT_SPOOL_RETRY_INTERVAL);
+    }
+
     private static int getInt(String value, int defaultValue) {
         try {
             return Integer.parseInt(value);
@@ -277,6 +323,25 @@ public final class MessageLogProperties {
         return getMessageBodyLoggingOverrides(true);
     }
 
+    /**
+     * Tells whether the global message body logging setting is overridden for the given service provider. An
+     * override applies to the exact member or subsystem it names, not to the subsystems of a member.
+     *
+     * @param producer the service provider.
+     * @param overrides the service providers for which the global setting is overridden.
+     * @return true if the setting is overridden for the service provider.
+     */
+    public static boolean isMessageBodyLoggingOverridden(ClientId producer, Iterable<ClientId> overrides) {
+        for (ClientId override : overrides) {
+            if (override.memberEquals(producer)
+                    && Objects.equals(override.getSubsystemCode(), producer.getSubsystemCode())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
 
     /**
      * Returns maximum loggable REST body size
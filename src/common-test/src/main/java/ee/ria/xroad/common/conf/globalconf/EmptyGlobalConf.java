@@ -41,6 +41,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of GlobalConfProvider that does nothing but
@@ -52,6 +53,11 @@ public class EmptyGlobalConf implements GlobalConfProvider {
     private static final int DEFAULT_TIMESTAMPING_INTERVAL = 60;
     private static final int DEFAULT_OCSP_FRESHNESS = 3600;
 
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // The configuration does not change, each provider instance gets a version of its own
+    private final long version = -VERSIONS.incrementAndGet();
+
     @Override
     public List<String> getOcspResponderAddresses(X509Certificate org)
             throws Exception {
@@ -274,6 +280,11 @@ public class EmptyGlobalConf implements GlobalConfProvider {
         return true;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
     @Override
     public List<SecurityServerId> getSecurityServers(
             String... instanceIdentifiers) {
@@ -25,7 +25,7 @@
 package ee.ria.xroad.common.request;
 
 import ee.ria.xroad.common.SystemProperties;
-import ee.ria.xroad.common.conf.InternalSSLKey;
+import ee.ria.xroad.common.conf.InternalSSLKeyCache;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.HttpSender;
@@ -205,7 +205,7 @@ public final class ManagementRequestClient implements StartStop {
             @Override
             public X509Certificate[] getCertificateChain(String alias) {
                 try {
-                    return InternalSSLKey.load().getCertChain();
+                    return InternalSSLKeyCache.get().getCertChain();
                 } catch (Exception e) {
                     log.error("Failed to load internal TLS key", e);
                     return new X509Certificate[] {};
@@ -220,7 +220,7 @@ public final class ManagementRequestClient implements StartStop {
             @Override
             public PrivateKey getPrivateKey(String alias) {
                 try {
-                    return InternalSSLKey.load().getKey();
+                    return InternalSSLKeyCache.get().getKey();
                 } catch (Exception e) {
                     log.error("Failed to load internal TLS key", e);
 
@@ -62,6 +62,7 @@ public final class ErrorCodes {
     public static final String X_DATABASE_ERROR = "DatabaseError";
     public static final String X_INVALID_RESPONSE = "InvalidResponse";
     public static final String X_INVALID_REQUEST = "InvalidRequest";
+    public static final String X_SERVER_BUSY = "ServerBusy";
 
 
     // Verification errors
@@ -51,6 +51,14 @@ public final class SystemProperties {
     public static final String CONFIGURATION_PATH =
             PREFIX + "common.configuration-path";
 
+    /** Property name of the flag that enables recording database transactions, see DatabaseMetrics */
+    public static final String DATABASE_METRICS_ENABLED =
+            PREFIX + "common.database-metrics-enabled";
+
+    /** Property name of the duration in milliseconds after which a database transaction is logged as slow */
+    public static final String DATABASE_SLOW_TRANSACTION_THRESHOLD =
+            PREFIX + "common.database-slow-transaction-threshold";
+
     /** Current version number of the global configuration **/
     public static final int CURRENT_GLOBAL_CONFIGURATION_VERSION = 2;
 
@@ -167,6 +175,10 @@ public final class SystemProperties {
     public static final String SERVER_CONF_CACHE_PERIOD =
             PREFIX + "proxy.server-conf-cache-period";
 
+    /** Property name of the interval in milliseconds at which the server conf version is polled for changes */
+    public static final String SERVER_CONF_VERSION_POLL_INTERVAL =
+            PREFIX + "proxy.server-conf-version-poll-interval";
+
     /** Property name of the idle time that connections to the ServerProxy Connector are allowed, in milliseconds */
     private static final String SERVERPROXY_CONNECTOR_MAX_IDLE_TIME =
             PREFIX + "proxy.server-connector-max-idle-time";
@@ -185,6 +197,14 @@ public final class SystemProperties {
     private static final String SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS =
             PREFIX + "proxy.server-support-clients-pooled-connections";
 
+    /** Property name of the maximum number of TLS sessions the server proxy keeps for resumption */
+    private static final String SERVERPROXY_TLS_SESSION_CACHE_SIZE =
+            PREFIX + "proxy.server-tls-session-cache-size";
+
+    /** Property name of the time the server proxy allows a TLS session to be resumed, in seconds */
+    private static final String SERVERPROXY_TLS_SESSION_TIMEOUT =
+            PREFIX + "proxy.server-tls-session-timeout";
+
     /**
      * Property name of the idle time that connections to the clientproxy connector are initially allowed,
      * in milliseconds
@@ -196,6 +216,32 @@ public final class SystemProperties {
     private static final String CLIENTPROXY_CONNECTOR_MAX_IDLE_TIME =
             PREFIX + "proxy.client-connector-max-idle-time";
 
+    /** Property name of the maximum number of jobs waiting for a free client proxy thread */
+    private static final String CLIENTPROXY_HANDLER_QUEUE_CAPACITY =
+            PREFIX + "proxy.client-handler-queue-capacity";
+
+    /**
+     * Property name of the maximum time a request may wait for a free client proxy thread before it is rejected,
+     * in milliseconds, value of 0 means no limit
+     */
+    private static final String CLIENTPROXY_HANDLER_QUEUE_DEADLINE =
+            PREFIX + "proxy.client-handler-queue-deadline";
+
+    /** Property name of the maximum number of TLS sessions to other security servers kept for resumption */
+    private static final String CLIENTPROXY_TLS_SESSION_CACHE_SIZE =
+            PREFIX + "proxy.client-tls-session-cache-size";
+
+    /** Property name of the time a TLS session to another security server is resumed, in seconds */
+    private static final String CLIENTPROXY_TLS_SESSION_TIMEOUT =
+            PREFIX + "proxy.client-tls-session-timeout";
+
+    /**
+     * Property name of the interval in seconds at which the client proxy refreshes the resolved addresses of the
+     * security servers it connects to, value of 0 disables resolving the addresses ahead of the connections
+     */
+    private static final String CLIENTPROXY_DNS_REFRESH_INTERVAL =
+            PREFIX + "proxy.client-dns-refresh-interval";
+
     /** Property name of the client connector socket SO_LINGER timer, in seconds, value of -1 means off */
     private static final String CLIENTPROXY_CONNECTOR_SO_LINGER =
             PREFIX + "proxy.client-connector-so-linger";
@@ -264,6 +310,16 @@ public final class SystemProperties {
 
     private static final String DEFAULT_CLIENTPROXY_CONNECTOR_SO_LINGER = "-1";
 
+    private static final String DEFAULT_CLIENTPROXY_HANDLER_QUEUE_CAPACITY = "1000";
+
+    private static final String DEFAULT_CLIENTPROXY_HANDLER_QUEUE_DEADLINE = "30000";
+
+    private static final String DEFAULT_PROXY_TLS_SESSION_CACHE_SIZE = "10000";
+
+    private static final String DEFAULT_PROXY_TLS_SESSION_TIMEOUT = "600";
+
+    private static final String DEFAULT_CLIENTPROXY_DNS_REFRESH_INTERVAL = "30";
+
     private static final String DEFAULT_CLIENTPROXY_HTTPCLIENT_TIMEOUT = "0";
 
     private static final String DEFAULT_CLIENTPROXY_HTTPCLIENT_SO_LINGER = "-1";
@@ -398,6 +454,18 @@ public final class SystemProperties {
     public static final String CONFIGURATION_CLIENT_ALLOWED_FEDERATIONS =
             PREFIX + "configuration-client.allowed-federations";
 
+    /** Property name of the maximum number of configuration sources downloaded in parallel */
+    public static final String CONFIGURATION_CLIENT_DOWNLOAD_PARALLELISM =
+            PREFIX + "configuration-client.download-parallelism";
+
+    /** Property name of the delay after which the next location of a configuration source is tried in parallel */
+    public static final String CONFIGURATION_CLIENT_LOCATION_HEDGE_DELAY_MS =
+            PREFIX + "configuration-client.location-hedge-delay-ms";
+
+    /** Property name of the time after which a download from a single configuration location is abandoned */
+    public static final String CONFIGURATION_CLIENT_LOCATION_TIMEOUT_SECONDS =
+            PREFIX + "configuration-client.location-timeout";
+
     /**
      * A constant to describe the X-Road instances this security server federates with.
      * {@link #CUSTOM} means a list of named, comma-separated X-Road instances to allow.
@@ -746,6 +814,21 @@ public final class SystemProperties {
         return System.getProperty(TEMP_FILES_PATH, DefaultFilepaths.TEMP_FILES_PATH);
     }
 
+    /**
+     * @return whether database transactions are recorded per operation and exposed over JMX, 'true' by default.
+     */
+    public static boolean isDatabaseMetricsEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(DATABASE_METRICS_ENABLED, "true"));
+    }
+
+    /**
+     * @return the duration in milliseconds after which a database transaction is logged as slow,
+     * 0 disables the logging. Default is 0.
+     */
+    public static int getDatabaseSlowTransactionThreshold() {
+        return Integer.parseInt(System.getProperty(DATABASE_SLOW_TRANSACTION_THRESHOLD, "0"));
+    }
+
     /**
      * @return path to the directory where OCSP responses are stored, '/var/cache/xroad/' by default.
      */
@@ -900,6 +983,30 @@ public final class SystemProperties {
         return System.getProperty(CONFIGURATION_CLIENT_ALLOWED_FEDERATIONS, AllowedFederationMode.NONE.name());
     }
 
+    /**
+     * @return the maximum number of configuration sources the configuration client downloads in parallel,
+     * '4' by default.
+     */
+    public static int getConfigurationClientDownloadParallelism() {
+        return Integer.parseInt(System.getProperty(CONFIGURATION_CLIENT_DOWNLOAD_PARALLELISM, "4"));
+    }
+
+    /**
+     * @return the delay in milliseconds after which the configuration client starts downloading from the next
+     * location of a configuration source if the previous location has not responded yet, '3000' by default.
+     */
+    public static int getConfigurationClientLocationHedgeDelayMs() {
+        return Integer.parseInt(System.getProperty(CONFIGURATION_CLIENT_LOCATION_HEDGE_DELAY_MS, "3000"));
+    }
+
+    /**
+     * @return the time in seconds after which the configuration client abandons downloading from a single
+     * configuration location, '60' by default.
+     */
+    public static int getConfigurationClientLocationTimeoutSeconds() {
+        return Integer.parseInt(System.getProperty(CONFIGURATION_CLIENT_LOCATION_TIMEOUT_SECONDS, "60"));
+    }
+
     /**
      * @return the HTTP port on which the server proxy OCSP responder is listening, '5577' by default.
      */
@@ -1265,6 +1372,14 @@ public final class SystemProperties {
         return Integer.parseInt(System.getProperty(SERVER_CONF_CACHE_PERIOD, "60"));
     }
 
+    /**
+     * @return the interval in milliseconds at which the server conf version is polled for changes,
+     * 0 disables the polling. Default is 500 ms.
+     */
+    public static int getServerConfVersionPollInterval() {
+        return Integer.parseInt(System.getProperty(SERVER_CONF_VERSION_POLL_INTERVAL, "500"));
+    }
+
     /**
      * @return the interval in seconds at which verifier caches results.
      * Max value is 180 seconds and cannot be exceeded in configuration.
@@ -1346,6 +1461,67 @@ public final class SystemProperties {
 
     }
 
+    /**
+     * @return the maximum number of jobs waiting for a free client proxy thread, '1000' by default
+     */
+    public static int getClientProxyHandlerQueueCapacity() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_HANDLER_QUEUE_CAPACITY,
+                DEFAULT_CLIENTPROXY_HANDLER_QUEUE_CAPACITY));
+    }
+
+    /**
+     * @return the maximum time in milliseconds a request may wait for a free client proxy thread before it is
+     * rejected, '30000' by default, 0 means no limit
+     */
+    public static long getClientProxyHandlerQueueDeadline() {
+        return Long.parseLong(System.getProperty(CLIENTPROXY_HANDLER_QUEUE_DEADLINE,
+                DEFAULT_CLIENTPROXY_HANDLER_QUEUE_DEADLINE));
+    }
+
+    /**
+     * @return the maximum number of TLS sessions to other security servers the client proxy keeps for resumption,
+     * '10000' by default, 0 means no limit
+     */
+    public static int getClientProxyTlsSessionCacheSize() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_TLS_SESSION_CACHE_SIZE,
+                DEFAULT_PROXY_TLS_SESSION_CACHE_SIZE));
+    }
+
+    /**
+     * @return the time in seconds the client proxy resumes a TLS session to another security server,
+     * '600' by default
+     */
+    public static int getClientProxyTlsSessionTimeout() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_TLS_SESSION_TIMEOUT,
+                DEFAULT_PROXY_TLS_SESSION_TIMEOUT));
+    }
+
+    /**
+     * @return the interval in seconds at which the client proxy refreshes the resolved addresses of the security
+     * servers it connects to, '30' by default, 0 means that the addresses are resolved when connecting
+     */
+    public static int getClientProxyDnsRefreshInterval() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_DNS_REFRESH_INTERVAL,
+                DEFAULT_CLIENTPROXY_DNS_REFRESH_INTERVAL));
+    }
+
+    /**
+     * @return the maximum number of TLS sessions the server proxy keeps for resumption, '10000' by default,
+     * 0 means no limit
+     */
+    public static int getServerProxyTlsSessionCacheSize() {
+        return Integer.parseInt(System.getProperty(SERVERPROXY_TLS_SESSION_CACHE_SIZE,
+                DEFAULT_PROXY_TLS_SESSION_CACHE_SIZE));
+    }
+
+    /**
+     * @return the time in seconds the server proxy allows a TLS session to be resumed, '600' by default
+     */
+    public static int getServerProxyTlsSessionTimeout() {
+        return Integer.parseInt(System.getProperty(SERVERPROXY_TLS_SESSION_TIMEOUT,
+                DEFAULT_PROXY_TLS_SESSION_TIMEOUT));
+    }
+
     /**
      * @return true if the idle connection monitor thread should be used for client proxy
      */
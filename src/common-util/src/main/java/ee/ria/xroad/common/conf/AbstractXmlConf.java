@@ -46,7 +46,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static java.util.Objects.requireNonNull;
@@ -64,6 +68,9 @@ import static java.util.Objects.requireNonNull;
 @Slf4j
 public abstract class AbstractXmlConf<T> implements ConfProvider {
 
+    // JAXB contexts are thread safe and expensive to create, so they are shared by all instances
+    private static final ConcurrentMap<Class<?>, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<>();
+
     private final JAXBContext jaxbCtx;
 
     protected final Class<? extends SchemaValidator> schemaValidator;
@@ -93,7 +100,7 @@ public abstract class AbstractXmlConf<T> implements ConfProvider {
     protected AbstractXmlConf(Class<?> objectFactory, String fileName,
             Class<? extends SchemaValidator> schemaValidator) {
         try {
-            jaxbCtx = JAXBContext.newInstance(objectFactory);
+            jaxbCtx = getJaxbContext(objectFactory);
             this.schemaValidator = schemaValidator;
 
             load(fileName);
@@ -105,7 +112,7 @@ public abstract class AbstractXmlConf<T> implements ConfProvider {
     protected AbstractXmlConf(Class<?> objectFactory, JAXBElement<T> root,
             Class<? extends SchemaValidator> schemaValidator) {
         try {
-            jaxbCtx = JAXBContext.newInstance(objectFactory);
+            jaxbCtx = getJaxbContext(objectFactory);
             this.schemaValidator = schemaValidator;
 
             this.root = root;
@@ -115,6 +122,21 @@ public abstract class AbstractXmlConf<T> implements ConfProvider {
         }
     }
 
+    private static JAXBContext getJaxbContext(Class<?> objectFactory) throws JAXBException {
+        JAXBContext ctx = JAXB_CONTEXTS.get(objectFactory);
+
+        if (ctx == null) {
+            ctx = JAXBContext.newInstance(objectFactory);
+
+            JAXBContext existing = JAXB_CONTEXTS.putIfAbsent(objectFactory, ctx);
+            if (existing != null) {
+                ctx = existing;
+            }
+        }
+
+        return ctx;
+    }
+
     @Override
     public boolean hasChanged() {
         try {
@@ -140,6 +162,32 @@ public abstract class AbstractXmlConf<T> implements ConfProvider {
         confType = result.getConfType();
     }
 
+    /**
+     * Loads the configuration from a root element that has been parsed and validated from the given file earlier,
+     * for example restored from a binary image of the file. The file is tracked for changes as in
+     * {@link #load(String)}, but it is neither validated nor parsed again.
+     * @param fileName the file the root element was parsed from
+     * @param parsedRoot the parsed root element
+     * @throws Exception if an error occurs
+     */
+    @SuppressWarnings("unchecked")
+    public void load(String fileName, JAXBElement<?> parsedRoot) throws Exception {
+        requireNonNull(parsedRoot, "parsedRoot not set");
+
+        confFileName = fileName;
+        confFileChecker = new FileContentChangeChecker(confFileName);
+
+        root = (JAXBElement<T>) parsedRoot;
+        confType = root.getValue();
+    }
+
+    /**
+     * @return the parsed root element of the configuration
+     */
+    public JAXBElement<T> getRoot() {
+        return root;
+    }
+
     /**
      * Load the xml configuration to a {@link LoadResult} that can be manipulated further.
      * @return
@@ -210,25 +258,48 @@ public abstract class AbstractXmlConf<T> implements ConfProvider {
      * @param data the data
      * @throws Exception if an error occurs
      */
-    @SuppressWarnings("unchecked")
     public void load(byte[] data) throws Exception {
         if (data == null) {
             return;
         }
 
+        loadContent(() -> new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Loads the configuration from a file without tracking the file for changes. The file is streamed, so its
+     * content is never held in memory as a whole.
+     * @param file the file
+     * @throws Exception if an error occurs
+     */
+    public void loadContent(Path file) throws Exception {
+        if (file == null) {
+            return;
+        }
+
+        loadContent(() -> Files.newInputStream(file));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadContent(ContentSource source) throws Exception {
         if (schemaValidator != null) {
-            try (InputStream in = new ByteArrayInputStream(data)) {
+            try (InputStream in = source.open()) {
                 validateSchemaWithValidator(in);
             }
         }
 
-        try (InputStream in = new ByteArrayInputStream(data)) {
+        try (InputStream in = source.open()) {
             Unmarshaller unmarshaller = jaxbCtx.createUnmarshaller();
             root = (JAXBElement<T>) unmarshaller.unmarshal(in);
             confType = root.getValue();
         }
     }
 
+    @FunctionalInterface
+    private interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
     /**
      * Reloads the configuration from the file.
      * @throws Exception the file cannot be loaded
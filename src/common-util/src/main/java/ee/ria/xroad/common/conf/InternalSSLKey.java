@@ -80,6 +80,13 @@ public final class InternalSSLKey {
         return load(filename, keyName, keyName.toCharArray());
     }
 
+    /**
+     * @return the path of the pkcs11 file holding the internal ssl key
+     */
+    static Path getKeyFile() {
+        return Paths.get(SystemProperties.getConfPath(), KEY_FILE_NAME);
+    }
+
     private static InternalSSLKey load(String filename, String keyAlias, char[] keyPassword) throws Exception {
         Path file = Paths.get(SystemProperties.getConfPath(), filename);
         if (Files.exists(file)) {
@@ -0,0 +1,103 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf;
+
+import ee.ria.xroad.common.util.filewatcher.FileWatcherRunner;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the internal SSL key in memory, so that it is not loaded from the pkcs11 file every time it is used
+ * (for example during TLS handshakes). The file is watched for changes and the key is reloaded when the file is
+ * created or modified. A reloaded key replaces the previous one atomically, if the file cannot be loaded the
+ * previous key is kept.
+ */
+@Slf4j
+public final class InternalSSLKeyCache {
+
+    private static final long WATCHER_STARTUP_TIMEOUT_MS = 1000;
+
+    private static final AtomicReference<InternalSSLKey> KEY = new AtomicReference<>();
+
+    private static FileWatcherRunner watcher;
+
+    private InternalSSLKeyCache() {
+    }
+
+    /**
+     * Returns the internal SSL key, loading it from the pkcs11 file if it has not been loaded yet.
+     *
+     * @return the internal ssl key, or null if the file does not exist
+     * @throws Exception if an error occurs while loading
+     */
+    public static InternalSSLKey get() throws Exception {
+        InternalSSLKey key = KEY.get();
+
+        return key != null ? key : load();
+    }
+
+    private static synchronized InternalSSLKey load() throws Exception {
+        if (watcher == null) {
+            // start watching before loading, so that changes made while loading are not missed
+            CountDownLatch started = new CountDownLatch(1);
+
+            watcher = FileWatcherRunner.create()
+                    .watchForChangesIn(InternalSSLKey.getKeyFile())
+                    .listenToCreate().listenToModify()
+                    .andOnChangeNotify(InternalSSLKeyCache::reload)
+                    .andOnStartupNotify(started::countDown)
+                    .inDaemonThread()
+                    .buildAndStartWatcher();
+
+            if (!started.await(WATCHER_STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Watching {} for changes did not start", InternalSSLKey.getKeyFile());
+            }
+        }
+
+        InternalSSLKey key = KEY.get();
+
+        if (key == null) {
+            key = InternalSSLKey.load();
+            KEY.compareAndSet(null, key);
+        }
+
+        return key;
+    }
+
+    private static void reload() {
+        try {
+            KEY.set(InternalSSLKey.load());
+
+            log.info("Reloaded internal SSL key from {}", InternalSSLKey.getKeyFile());
+        } catch (Exception e) {
+            // the file may still be being written, the next change event reloads it
+            log.warn("Could not reload internal SSL key, keeping the previous key", e);
+        }
+    }
+}
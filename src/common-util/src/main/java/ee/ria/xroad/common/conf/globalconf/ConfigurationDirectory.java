@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -75,6 +76,40 @@ public interface ConfigurationDirectory {
         saveMetadata(fileName, expirationDate);
     }
 
+    /**
+     * Moves the content file to its final location along with corresponding expiration date file. The content is
+     * moved atomically, or copied to the target directory first and then moved atomically, if the content file
+     * resides on a different file system.
+     *
+     * @param fileName the name of the file to save
+     * @param content the file holding the content
+     * @param expirationDate the file expiration date
+     * @throws Exception if an error occurs
+     */
+    static void save(Path fileName, Path content, ConfigurationPartMetadata expirationDate) throws Exception {
+        if (fileName == null) {
+            return;
+        }
+
+        Path parent = fileName.getParent();
+
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        LOG.info("Saving content to file {}", fileName);
+
+        // Move the content to its final location.
+        try {
+            Files.move(content, fileName, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            AtomicSave.moveBetweenFilesystems(content.toString(), fileName.toString());
+        }
+
+        // Save the content metadata date to disk.
+        saveMetadata(fileName, expirationDate);
+    }
+
     /**
      * Saves the expiration date for the given file.
      *
@@ -103,7 +138,7 @@ public interface ConfigurationDirectory {
     }
 
     /**
-     * Deletes the file and accompanying expire date.
+     * Deletes the file and accompanying expire date and binary image.
      *
      * @param fileName the file name
      */
@@ -120,6 +155,8 @@ public interface ConfigurationDirectory {
             LOG.error("Failed to delete file {}", metadataFile);
         }
 
+        ParametersImage.delete(file.toPath());
+
         File directory = file.getParentFile();
 
         if (directory.isDirectory()) {
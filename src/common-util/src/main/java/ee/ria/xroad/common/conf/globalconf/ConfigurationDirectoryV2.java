@@ -42,10 +42,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_GLOBALCONF;
@@ -65,15 +68,18 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
     public static final String PRIVATE_PARAMETERS_XML = "private-params.xml";
     public static final String SHARED_PARAMETERS_XML = "shared-params.xml";
 
+    // Source of parameter versions, shared by all directories so that versions are never reused
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
     @Getter
     @Setter
     private Path path;
     private final boolean reloadIfChanged;
 
-    private String instanceIdentifier;
+    private volatile String instanceIdentifier;
 
-    private Map<String, PrivateParametersV2> privateParameters = new HashMap<>();
-    private Map<String, SharedParametersV2> sharedParameters = new HashMap<>();
+    // Parameters of all instances, replaced as a whole on every (re)load
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
 
     // ------------------------------------------------------------------------
 
@@ -104,22 +110,29 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
     /**
      * @return the instance identifier of this configuration. The instance identifier is lazy initialized.
      */
-    public synchronized String getInstanceIdentifier() {
-        if (instanceIdentifier == null) {
-            loadInstanceIdentifier();
+    public String getInstanceIdentifier() {
+        String result = instanceIdentifier;
+
+        if (result == null) {
+            result = loadInstanceIdentifier();
+            instanceIdentifier = result;
         }
 
-        return instanceIdentifier;
+        return result;
     }
 
     /**
      * Reloads the configuration directory. Only files that are new or have changed, are actually loaded.
+     * Parameters of unchanged files are reused and the result is published atomically, so concurrent readers
+     * see either the previous or the new configuration, never a mix of both.
      *
      * @throws Exception if an error occurs during reload
      */
     public synchronized void reload() throws Exception {
-        Map<String, PrivateParametersV2> privateParams = new HashMap<>();
-        Map<String, SharedParametersV2> sharedParams = new HashMap<>();
+        Snapshot current = snapshot;
+
+        Map<String, ParametersFile<PrivateParametersV2>> privateParams = new HashMap<>();
+        Map<String, ParametersFile<SharedParametersV2>> sharedParams = new HashMap<>();
 
         log.trace("Reloading configuration from {}", path);
 
@@ -129,20 +142,21 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             for (Path instanceDir : stream) {
                 log.trace("Loading parameters from {}", instanceDir);
                 try {
-                    loadPrivateParameters(instanceDir, privateParams);
+                    loadParameters(instanceDir, PRIVATE_PARAMETERS_XML, PrivateParametersV2.class,
+                            current.privateParameters, privateParams);
                 } catch (Exception e) {
                     log.error("Unable to load private parameters from {}", instanceDir, e);
                 }
                 try {
-                    loadSharedParameters(instanceDir, sharedParams);
+                    loadParameters(instanceDir, SHARED_PARAMETERS_XML, SharedParametersV2.class,
+                            current.sharedParameters, sharedParams);
                 } catch (Exception e) {
                     log.error("Unable to load shared parameters from {}", instanceDir, e);
                 }
             }
         }
 
-        privateParameters = privateParams;
-        sharedParameters = sharedParams;
+        publish(current, privateParams, sharedParams);
     }
 
     /**
@@ -152,26 +166,18 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
      * @return private parameters or null, if no private parameters exist for given instance identifier
      * @throws Exception if an error occurs while reading parameters
      */
-    public synchronized PrivateParametersV2 getPrivate(String instanceId) throws Exception {
+    public PrivateParametersV2 getPrivate(String instanceId) throws Exception {
         String safeInstanceId = escapeInstanceIdentifier(instanceId);
 
         log.trace("getPrivate(instance = {}, directory = {})", instanceId, safeInstanceId);
 
-        PrivateParametersV2 parameters = privateParameters.get(safeInstanceId);
-
-        if (!reloadIfChanged) {
-            return parameters;
+        if (reloadIfChanged) {
+            reloadInstance(safeInstanceId);
         }
 
-        if (parameters != null && parameters.hasChanged()) {
-            parameters.reload();
-        } else if (parameters == null) {
-            // Parameters not cached, attempt to load it from disk.
-            Path instanceDir = Paths.get(path.toString(), safeInstanceId);
-            loadPrivateParameters(instanceDir, privateParameters);
-        }
+        ParametersFile<PrivateParametersV2> file = snapshot.privateParameters.get(safeInstanceId);
 
-        return privateParameters.get(safeInstanceId);
+        return file != null ? file.getParameters() : null;
     }
 
     /**
@@ -181,33 +187,35 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
      * @return shared parameters or null, if no shared parameters exist for given instance identifier
      * @throws Exception if an error occurs while reading parameters
      */
-    public synchronized SharedParametersV2 getShared(String instanceId) throws Exception {
+    public SharedParametersV2 getShared(String instanceId) throws Exception {
         String safeInstanceId = escapeInstanceIdentifier(instanceId);
 
         log.trace("getShared(instance = {}, directory = {})", instanceId, safeInstanceId);
 
-        SharedParametersV2 parameters = sharedParameters.get(safeInstanceId);
-
-        if (!reloadIfChanged) {
-            return parameters;
+        if (reloadIfChanged) {
+            reloadInstance(safeInstanceId);
         }
 
-        if (parameters != null && parameters.hasChanged()) {
-            parameters.reload();
-        } else if (parameters == null) {
-            // Parameters not cached, attempt to load it from disk.
-            Path instanceDir = Paths.get(path.toString(), safeInstanceId);
-            loadSharedParameters(instanceDir, sharedParameters);
-        }
+        ParametersFile<SharedParametersV2> file = snapshot.sharedParameters.get(safeInstanceId);
 
-        return sharedParameters.get(safeInstanceId);
+        return file != null ? file.getParameters() : null;
     }
 
     /**
      * @return all known shared parameters
      */
-    public synchronized List<SharedParametersV2> getShared() {
-        return new ArrayList<>(sharedParameters.values());
+    public List<SharedParametersV2> getShared() {
+        return snapshot.sharedList;
+    }
+
+    /**
+     * Returns the version of the loaded parameters. The version changes whenever the parameters of any instance
+     * are added, removed or changed by a reload, so it can be used to invalidate data derived from the parameters.
+     *
+     * @return the version of the loaded parameters
+     */
+    public long getVersion() {
+        return snapshot.version;
     }
 
     /**
@@ -328,13 +336,13 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
     // ------------------------------------------------------------------------
 
-    private void loadInstanceIdentifier() {
+    private String loadInstanceIdentifier() {
         Path file = Paths.get(path.toString(), INSTANCE_IDENTIFIER_FILE);
 
         log.trace("Loading instance identifier from {}", file);
 
         try {
-            instanceIdentifier = FileUtils.readFileToString(file.toFile()).trim();
+            return FileUtils.readFileToString(file.toFile()).trim();
         } catch (Exception e) {
             log.error("Failed to read instance identifier from " + file, e);
 
@@ -343,48 +351,82 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
         }
     }
 
-    private void loadPrivateParameters(Path instanceDir, Map<String, PrivateParametersV2> privateParams)
-            throws Exception {
-        String instanceId = instanceDir.getFileName().toString();
+    // Refreshes the parameters of a single instance and publishes a new snapshot if anything changed.
+    private synchronized void reloadInstance(String safeInstanceId) throws Exception {
+        Snapshot current = snapshot;
+        Path instanceDir = Paths.get(path.toString(), safeInstanceId);
 
-        Path privateParametersPath = Paths.get(instanceDir.toString(), PRIVATE_PARAMETERS_XML);
+        Map<String, ParametersFile<PrivateParametersV2>> privateParams = new HashMap<>(current.privateParameters);
+        Map<String, ParametersFile<SharedParametersV2>> sharedParams = new HashMap<>(current.sharedParameters);
 
-        if (Files.exists(privateParametersPath)) {
-            log.trace("Loading private parameters from {}", privateParametersPath);
+        loadParameters(instanceDir, PRIVATE_PARAMETERS_XML, PrivateParametersV2.class,
+                current.privateParameters, privateParams);
+        loadParameters(instanceDir, SHARED_PARAMETERS_XML, SharedParametersV2.class,
+                current.sharedParameters, sharedParams);
 
-            privateParams.put(instanceId, loadParameters(privateParametersPath, PrivateParametersV2.class,
-                    privateParameters.get(instanceId)));
-        } else {
-            log.trace("Not loading private parameters from {}, file does not exist", privateParametersPath);
+        if (!privateParams.equals(current.privateParameters) || !sharedParams.equals(current.sharedParameters)) {
+            publish(current, privateParams, sharedParams);
         }
     }
 
-    private void loadSharedParameters(Path instanceDir, Map<String, SharedParametersV2> sharedParams) throws Exception {
-        String instanceId = instanceDir.getFileName().toString();
+    // Publishes a new snapshot, advancing the version if the parameters of any instance have changed.
+    private void publish(Snapshot current, Map<String, ParametersFile<PrivateParametersV2>> privateParams,
+            Map<String, ParametersFile<SharedParametersV2>> sharedParams) {
+        boolean changed = !sameParameters(current.privateParameters, privateParams)
+                || !sameParameters(current.sharedParameters, sharedParams);
 
-        Path sharedParametersPath = Paths.get(instanceDir.toString(), SHARED_PARAMETERS_XML);
-        if (Files.exists(sharedParametersPath)) {
-            log.trace("Loading shared parameters from {}", sharedParametersPath);
+        snapshot = new Snapshot(privateParams, sharedParams, changed ? VERSIONS.incrementAndGet() : current.version);
+    }
 
-            sharedParams.put(instanceId, loadParameters(sharedParametersPath, SharedParametersV2.class,
-                    sharedParameters.get(instanceId)));
-        } else {
-            log.trace("Not loading shared parameters from {}, file does not exist", sharedParametersPath);
+    private static <T extends ConfProvider> boolean sameParameters(Map<String, ParametersFile<T>> previous,
+            Map<String, ParametersFile<T>> current) {
+        if (!previous.keySet().equals(current.keySet())) {
+            return false;
         }
+
+        return current.entrySet().stream()
+                .allMatch(e -> e.getValue().getParameters() == previous.get(e.getKey()).getParameters());
     }
 
-    // Loads the parameters from file if the file has changed.
-    // Returns the parameters or null if the file does not exist.
-    private static <T extends ConfProvider> T loadParameters(Path path, Class<T> clazz, T existingInstance)
-            throws Exception {
-        T params = existingInstance != null ? existingInstance : (T) clazz.newInstance();
+    // Puts the up-to-date parameters of the instance into the target map. The parameters are parsed only
+    // if the file is new or its content has changed since the previous load.
+    private static <T extends ConfProvider> void loadParameters(Path instanceDir, String fileName, Class<T> clazz,
+            Map<String, ParametersFile<T>> existing, Map<String, ParametersFile<T>> target) throws Exception {
+        String instanceId = instanceDir.getFileName().toString();
+        Path parametersPath = Paths.get(instanceDir.toString(), fileName);
+
+        if (!Files.exists(parametersPath)) {
+            log.trace("Not loading {} from {}, file does not exist", clazz.getSimpleName(), parametersPath);
 
-        if (params.hasChanged()) {
-            log.trace("Loading {} from {}", clazz.getSimpleName(), path);
+            target.remove(instanceId);
 
-            params.load(path.toString());
+            return;
         }
 
-        return params;
+        ParametersFile<T> previous = existing.get(instanceId);
+
+        target.put(instanceId, previous != null
+                ? previous.refresh(clazz)
+                : ParametersFile.load(parametersPath, clazz));
+    }
+
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), 0);
+
+        final Map<String, ParametersFile<PrivateParametersV2>> privateParameters;
+        final Map<String, ParametersFile<SharedParametersV2>> sharedParameters;
+        final List<SharedParametersV2> sharedList;
+        final long version;
+
+        Snapshot(Map<String, ParametersFile<PrivateParametersV2>> privateParameters,
+                Map<String, ParametersFile<SharedParametersV2>> sharedParameters, long version) {
+            this.privateParameters = Collections.unmodifiableMap(privateParameters);
+            this.sharedParameters = Collections.unmodifiableMap(sharedParameters);
+            this.sharedList = Collections.unmodifiableList(sharedParameters.values().stream()
+                    .map(ParametersFile::getParameters)
+                    .collect(Collectors.toList()));
+            this.version = version;
+        }
     }
 }
@@ -60,6 +60,7 @@ public class ConfigurationLocation {
     private final List<byte[]> verificationCerts;
 
     public static final int READ_TIMEOUT = 30000;
+    public static final int CONNECT_TIMEOUT = 30000;
 
     /**
      * @return the input stream acquired by connecting to the download url.
@@ -81,6 +82,7 @@ public class ConfigurationLocation {
     public static URLConnection getDownloadURLConnection(String urlStr) throws IOException {
         URL url = new URL(urlStr);
         URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
         connection.setReadTimeout(READ_TIMEOUT);
         return connection;
     }
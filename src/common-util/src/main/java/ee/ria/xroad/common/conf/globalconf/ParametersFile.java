@@ -0,0 +1,146 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.conf.ConfProvider;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeHex;
+
+/**
+ * Immutable holder of a parsed parameters file and the fingerprint (size, modification time and content hash)
+ * of the file it was parsed from.
+ *
+ * Refreshing a holder first compares the file size and modification time, then the content hash, and only parses
+ * the file again if the content has actually changed. Unchanged parameters (and the indexes built on them) are
+ * reused as is, changed parameters are parsed into a new instance so that readers of a previous snapshot are never
+ * affected. Parameters are restored from the {@link ParametersImage} of the file when an up-to-date image exists.
+ *
+ * @param <T> the parameters type
+ */
+@Slf4j
+final class ParametersFile<T extends ConfProvider> {
+
+    @Getter
+    private final Path path;
+
+    @Getter
+    private final T parameters;
+
+    private final long size;
+    private final long lastModified;
+
+    @Getter
+    private final String hash;
+
+    private ParametersFile(Path path, T parameters, long size, long lastModified, String hash) {
+        this.path = path;
+        this.parameters = parameters;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    /**
+     * Parses the given file.
+     *
+     * @param path the parameters file
+     * @param clazz the parameters type
+     * @param <T> the parameters type
+     * @return holder of the parsed parameters
+     * @throws Exception if the file cannot be read or parsed
+     */
+    static <T extends ConfProvider> ParametersFile<T> load(Path path, Class<T> clazz) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+        return parse(path, clazz, attributes, hash(path));
+    }
+
+    /**
+     * Returns a holder reflecting the current state of the file. Returns this instance if the file size and
+     * modification time have not changed, a holder sharing the parameters instance if only the file metadata has
+     * changed, or a holder with newly parsed parameters if the file content has changed.
+     *
+     * @param clazz the parameters type
+     * @return the up-to-date holder
+     * @throws Exception if the file cannot be read or parsed
+     */
+    ParametersFile<T> refresh(Class<T> clazz) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+        if (isSameFile(attributes)) {
+            return this;
+        }
+
+        String currentHash = hash(path);
+
+        if (currentHash.equals(hash)) {
+            log.trace("{} has been touched, but its content has not changed", path);
+
+            return new ParametersFile<>(path, parameters, attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), hash);
+        }
+
+        return parse(path, clazz, attributes, currentHash);
+    }
+
+    private boolean isSameFile(BasicFileAttributes attributes) {
+        return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+    }
+
+    private static <T extends ConfProvider> ParametersFile<T> parse(Path path, Class<T> clazz,
+            BasicFileAttributes attributes, String hash) throws Exception {
+        log.trace("Loading {} from {}", clazz.getSimpleName(), path);
+
+        T parameters = clazz.newInstance();
+
+        if (!ParametersImage.load(path, hash, parameters)) {
+            parameters.load(path.toString());
+        }
+
+        return new ParametersFile<>(path, parameters, attributes.size(),
+                attributes.lastModifiedTime().toMillis(), hash);
+    }
+
+    static String hash(Path path) throws Exception {
+        try (InputStream in = Files.newInputStream(path)) {
+            return encodeHex(calculateDigest(SHA256_ID, in));
+        } catch (IOException e) {
+            log.error("Failed to calculate hash of {}", path);
+
+            throw e;
+        }
+    }
+}
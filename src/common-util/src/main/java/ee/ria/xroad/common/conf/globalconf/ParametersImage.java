@@ -0,0 +1,394 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.conf.AbstractXmlConf;
+import ee.ria.xroad.common.conf.ConfProvider;
+import ee.ria.xroad.common.util.AtomicSave;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
+
+/**
+ * Binary image of a parsed parameters file.
+ *
+ * The configuration client writes an image next to every verified parameters XML file it saves. Other processes
+ * memory-map the image and restore the parsed configuration from it instead of validating and unmarshalling the
+ * XML. The indexes of the parameters are rebuilt from the restored configuration. The image is used only if its
+ * parameters type, layout version and source file hash match, otherwise the XML file is parsed as before.
+ *
+ * The layout version is derived from the fields of the generated parameters classes, so an image written before the
+ * schema or the classes changed is not used.
+ *
+ * Image layout: magic number, parameters class name, layout version, SHA-256 hash of the source XML file, CRC-32
+ * checksum of the content and the content, which is the serialized root element of the configuration.
+ */
+@Slf4j
+final class ParametersImage {
+
+    static final String IMAGE_SUFFIX = ".bin";
+
+    // Must be changed whenever the header of the image changes
+    private static final int MAGIC = 0x58524744; // "XRGD"
+
+    // Packages of the generated parameters classes and the identifiers they refer to
+    private static final String[] PARAMETERS_PACKAGES = {
+        "ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.",
+        "ee.ria.xroad.common.conf.globalconf.privateparameters.v2.",
+        "ee.ria.xroad.common.identifier."
+    };
+
+    // Classes outside the parameters packages that the serialized parameters consist of
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+            JAXBElement.class.getName(),
+            JAXBElement.GlobalScope.class.getName(),
+            QName.class.getName(),
+            "com.sun.org.apache.xerces.internal.jaxp.datatype.SerializedXMLGregorianCalendar",
+            "com.sun.org.apache.xerces.internal.jaxp.datatype.XMLGregorianCalendarImpl",
+            ArrayList.class.getName(),
+            Boolean.class.getName(),
+            Long.class.getName(),
+            BigInteger.class.getName(),
+            Number.class.getName(),
+            Enum.class.getName(),
+            byte[].class.getName()));
+
+    private static final Map<Class<?>, String> LAYOUT_VERSIONS = new ConcurrentHashMap<>();
+
+    private ParametersImage() {
+    }
+
+    /**
+     * @param source the parameters XML file
+     * @return the path of the image of the given file
+     */
+    static Path getImagePath(Path source) {
+        return source.resolveSibling(source.getFileName() + IMAGE_SUFFIX);
+    }
+
+    /**
+     * Writes the image of the given parameters, which must have been parsed from the given file.
+     *
+     * @param source the parameters XML file
+     * @param parameters the parameters parsed from the file
+     * @throws Exception if writing the image fails
+     */
+    static void write(Path source, AbstractXmlConf<?> parameters) throws Exception {
+        String sourceHash = ParametersFile.hash(source);
+        Path image = getImagePath(source);
+
+        log.trace("Writing image of {} to {}", source, image);
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(content)) {
+            oos.writeObject(parameters.getRoot());
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(content.toByteArray());
+
+        AtomicSave.execute(image.toString(), "img", out -> {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+            dos.writeInt(MAGIC);
+            dos.writeUTF(parameters.getClass().getName());
+            dos.writeUTF(getLayoutVersion(parameters.getClass()));
+            dos.writeUTF(sourceHash);
+            dos.writeLong(checksum.getValue());
+            content.writeTo(dos);
+            dos.flush();
+        }, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the parameters from the image of the given file, if the image exists and is up to date.
+     *
+     * @param source the parameters XML file
+     * @param sourceHash the SHA-256 hash of the file
+     * @param parameters the parameters to load
+     * @return true, if the parameters were loaded from the image; false, if the XML file needs to be parsed
+     */
+    static boolean load(Path source, String sourceHash, ConfProvider parameters) {
+        Path image = getImagePath(source);
+
+        if (!(parameters instanceof AbstractXmlConf) || !Files.isRegularFile(image)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream header = new DataInputStream(new ByteBufferInputStream(buffer));
+
+            if (!isCurrentHeader(header, parameters.getClass()) || !sourceHash.equals(header.readUTF())) {
+                log.debug("Image {} is out of date", image);
+
+                return false;
+            }
+
+            long expectedChecksum = header.readLong();
+            ByteBuffer content = buffer.slice();
+
+            CRC32 checksum = new CRC32();
+            checksum.update(content.duplicate());
+
+            if (checksum.getValue() != expectedChecksum) {
+                log.warn("Image {} is corrupted, falling back to {}", image, source);
+
+                return false;
+            }
+
+            try (ObjectInputStream in = new ImageInputStream(content)) {
+                ((AbstractXmlConf<?>) parameters).load(source.toString(), (JAXBElement<?>) in.readObject());
+            }
+
+            log.trace("Loaded {} from image {}", parameters.getClass().getSimpleName(), image);
+
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to load image {}, falling back to {}", image, source, e);
+
+            return false;
+        }
+    }
+
+    /**
+     * Returns true, if the image of the given file exists, has the current layout and is not older than the file.
+     * Unlike {@link #load(Path, String, ConfProvider)}, this does not hash the file or restore the parameters.
+     *
+     * @param source the parameters XML file
+     * @param parametersClass the parameters type
+     * @return true, if the image does not need to be written again
+     */
+    static boolean isCurrent(Path source, Class<?> parametersClass) {
+        Path image = getImagePath(source);
+
+        try {
+            if (!Files.isRegularFile(image)
+                    || Files.getLastModifiedTime(image).compareTo(Files.getLastModifiedTime(source)) < 0) {
+                return false;
+            }
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(image)))) {
+                return isCurrentHeader(in, parametersClass);
+            }
+        } catch (IOException e) {
+            log.debug("Failed to read image {}", image, e);
+
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the image of the given file, if it exists.
+     *
+     * @param source the parameters XML file
+     */
+    static void delete(Path source) {
+        try {
+            Files.deleteIfExists(getImagePath(source));
+        } catch (IOException e) {
+            log.error("Failed to delete image of {}", source, e);
+        }
+    }
+
+    private static boolean isCurrentHeader(DataInput in, Class<?> parametersClass) throws IOException {
+        return in.readInt() == MAGIC
+                && parametersClass.getName().equals(in.readUTF())
+                && getLayoutVersion(parametersClass).equals(in.readUTF());
+    }
+
+    /**
+     * Returns the layout version of the images of the given parameters type: a hash of the names and the types of
+     * the serialized fields of the parameters classes.
+     *
+     * @param parametersClass the parameters type
+     * @return the layout version
+     */
+    static String getLayoutVersion(Class<?> parametersClass) {
+        return LAYOUT_VERSIONS.computeIfAbsent(parametersClass, ParametersImage::computeLayoutVersion);
+    }
+
+    @SneakyThrows
+    private static String computeLayoutVersion(Class<?> parametersClass) {
+        StringBuilder layout = new StringBuilder();
+        Set<Class<?>> visited = new HashSet<>();
+        Deque<Class<?>> pending = new ArrayDeque<>();
+
+        addParametersClasses(getRootType(parametersClass), visited, pending);
+
+        while (!pending.isEmpty()) {
+            Class<?> type = pending.poll();
+
+            layout.append(type.getName()).append(':');
+            addParametersClasses(type.getGenericSuperclass(), visited, pending);
+
+            Arrays.stream(type.getDeclaredFields())
+                    .filter(f -> !Modifier.isStatic(f.getModifiers()) && !Modifier.isTransient(f.getModifiers()))
+                    .sorted(Comparator.comparing(Field::getName))
+                    .forEach(f -> {
+                        layout.append(f.getName()).append(' ').append(f.getGenericType().getTypeName()).append(';');
+                        addParametersClasses(f.getGenericType(), visited, pending);
+                    });
+
+            layout.append('\n');
+        }
+
+        return hexDigest(SHA256_ID, layout.toString());
+    }
+
+    // The type of the root element of the parameters, AbstractXmlConf<T>
+    private static Type getRootType(Class<?> parametersClass) {
+        for (Class<?> c = parametersClass; c != null; c = c.getSuperclass()) {
+            Type superclass = c.getGenericSuperclass();
+
+            if (superclass instanceof ParameterizedType
+                    && ((ParameterizedType) superclass).getRawType() == AbstractXmlConf.class) {
+                return ((ParameterizedType) superclass).getActualTypeArguments()[0];
+            }
+        }
+
+        throw new IllegalArgumentException(parametersClass + " is not an AbstractXmlConf");
+    }
+
+    // Adds the parameters classes that the given type refers to, in the order they are referred to
+    private static void addParametersClasses(Type type, Set<Class<?>> visited, Deque<Class<?>> pending) {
+        if (type instanceof ParameterizedType) {
+            addParametersClasses(((ParameterizedType) type).getRawType(), visited, pending);
+
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                addParametersClasses(argument, visited, pending);
+            }
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                addParametersClasses(bound, visited, pending);
+            }
+        } else if (type instanceof Class) {
+            Class<?> c = (Class<?>) type;
+
+            if (c.isArray()) {
+                addParametersClasses(c.getComponentType(), visited, pending);
+            } else if (isParametersClass(c.getName()) && visited.add(c)) {
+                pending.add(c);
+            }
+        }
+    }
+
+    private static boolean isParametersClass(String className) {
+        return Arrays.stream(PARAMETERS_PACKAGES).anyMatch(className::startsWith);
+    }
+
+    // Reads the image from a memory-mapped buffer and refuses to instantiate anything but configuration classes
+    private static final class ImageInputStream extends ObjectInputStream {
+
+        ImageInputStream(ByteBuffer buffer) throws IOException {
+            super(new ByteBufferInputStream(buffer));
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (isParametersClass(desc.getName()) || ALLOWED_CLASSES.contains(desc.getName())) {
+                return super.resolveClass(desc);
+            }
+
+            throw new InvalidClassException(desc.getName(), "Class not allowed in configuration image");
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -171,14 +171,14 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             return;
         }
 
-        try {
-            clearCache();
-            cacheCaCerts();
-            cacheKnownAddresses();
-            cacheSecurityServers();
-        } catch (Exception e) {
-            throw translateException(e);
-        }
+        buildCache();
+    }
+
+    @Override
+    public void load(String fileName, JAXBElement<?> parsedRoot) throws Exception {
+        super.load(fileName, parsedRoot);
+
+        buildCache();
     }
 
     static MemberType getOwner(SecurityServerType serverType) {
@@ -191,6 +191,17 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
 
     // ------------------------------------------------------------------------
 
+    private void buildCache() {
+        try {
+            clearCache();
+            cacheCaCerts();
+            cacheKnownAddresses();
+            cacheSecurityServers();
+        } catch (Exception e) {
+            throw translateException(e);
+        }
+    }
+
     private void clearCache() {
         subjectsAndCaCerts.clear();
         caCertsAndCertProfiles.clear();
@@ -29,10 +29,11 @@ import ee.ria.xroad.common.CodedException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.parser.AbstractContentHandler;
-import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.EntityState;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -62,6 +63,10 @@ public class SoapMessageDecoder {
     private final String baseContentType;
     private final SoapParser parser;
 
+    private MimeTokenStream multipartStream;
+    private MultipartHandler multipartHandler;
+    private boolean completed;
+
     /**
      * Callback interface for handling the outcome of the decoding process.
      */
@@ -128,6 +133,23 @@ public class SoapMessageDecoder {
      * @throws Exception if any errors occur
      */
     public void parse(InputStream soapStream) throws Exception {
+        parseSoap(soapStream);
+        parseAttachments();
+    }
+
+    /**
+     * Decodes the SOAP message from the given input stream up to and
+     * including the SOAP part, so that the callback has received the SOAP
+     * message (or fault) when this method returns. The rest of the message
+     * must then be decoded with {@link #parseAttachments()}, which reads
+     * the attachments from the same input stream. This allows the caller to
+     * act on the SOAP message before the attachments are read, without
+     * handing the stream over to another thread.
+     *
+     * @param soapStream input stream with the SOAP message data
+     * @throws Exception if any errors occur
+     */
+    public void parseSoap(InputStream soapStream) throws Exception {
         if (baseContentType == null) {
             throw new CodedException(X_INVALID_REQUEST,
                     "Could not get content type from request");
@@ -140,16 +162,47 @@ public class SoapMessageDecoder {
                     readSoapMessage(soapStream);
                     break;
                 case MULTIPART_RELATED:
-                    readMultipart(soapStream);
+                    startMultipart(soapStream);
+                    readParts(true);
                     break;
                 default:
                     throw new CodedException(X_INVALID_CONTENT_TYPE,
                             "Invalid content type: %s", baseContentType);
             }
         } catch (Exception e) {
-            callback.onError(e);
+            fail(e);
+        }
+    }
+
+    /**
+     * Decodes the rest of the message after
+     * {@link #parseSoap(InputStream)} and completes the decoding.
+     *
+     * @throws Exception if any errors occur
+     */
+    public void parseAttachments() throws Exception {
+        if (completed) {
+            return;
         }
 
+        try {
+            if (multipartStream != null) {
+                readParts(false);
+            }
+        } catch (Exception e) {
+            fail(e);
+
+            return;
+        }
+
+        completed = true;
+        callback.onCompleted();
+    }
+
+    private void fail(Exception e) throws Exception {
+        completed = true;
+
+        callback.onError(e);
         callback.onCompleted();
     }
 
@@ -173,16 +226,48 @@ public class SoapMessageDecoder {
         callback.soap((SoapMessage) soap, new HashMap<>());
     }
 
-    private void readMultipart(InputStream is) throws Exception {
+    private void startMultipart(InputStream is) throws Exception {
         log.trace("readMultipart");
 
-        MimeConfig config = new MimeConfig.Builder().setHeadlessParsing(contentType).build();
+        multipartStream = new MimeTokenStream(MimeConfig.DEFAULT);
+        multipartHandler = new MultipartHandler();
 
-        MimeStreamParser mimeStreamParser = new MimeStreamParser(config);
-        mimeStreamParser.setContentHandler(new MultipartHandler());
+        try {
+            Field field = multipartStream.parseHeadless(is, contentType);
+
+            multipartHandler.startHeader();
+            multipartHandler.field(field);
+        } catch (MimeException ex) {
+            throw new CodedException(X_MIME_PARSING_FAILED, ex);
+        }
+    }
+
+    // Pulls the parts of the multipart message, until the end of the stream or until the SOAP part has been read
+    private void readParts(boolean untilSoap) throws Exception {
         // Parse the request.
         try {
-            mimeStreamParser.parse(is);
+            for (EntityState state = multipartStream.getState(); state != EntityState.T_END_OF_STREAM;
+                    state = multipartStream.next()) {
+                switch (state) {
+                    case T_START_HEADER:
+                        multipartHandler.startHeader();
+                        break;
+                    case T_FIELD:
+                        multipartHandler.field(multipartStream.getField());
+                        break;
+                    case T_BODY:
+                        multipartHandler.body(multipartStream.getBodyDescriptor(), multipartStream.getInputStream());
+
+                        if (untilSoap && multipartHandler.soapBody != null) {
+                            multipartStream.next();
+
+                            return;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
         } catch (MimeException ex) {
             // We catch the mime parsing separately because this indicates
             // invalid request from client and we want to report it as that.
@@ -45,15 +45,31 @@ public class CachingStream extends FilterOutputStream {
     private SeekableByteChannel channel;
     private Path tempFile;
 
+    private final long limit;
+    private long written;
+
     /**
      * Constructs a new caching stream that caches data in a temporary file.
      *
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new caching stream that caches at most the given number of bytes in a temporary file.
+     * Data written beyond the limit is discarded.
+     *
+     * @param limit maximum number of bytes to cache
+     * @throws IOException if I/O errors occurred
+     */
+    public CachingStream(long limit) throws IOException {
         // Construct the parent class with null stream and replace it later.
         super(null);
 
+        this.limit = limit;
+
         tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
         channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
@@ -70,10 +86,30 @@ public class CachingStream extends FilterOutputStream {
         flush();
     }
 
+    @Override
+    public void write(int b) throws IOException {
+        if (written < limit) {
+            out.write(b);
+        }
+
+        written++;
+    }
+
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
         // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+        if (written < limit) {
+            out.write(b, off, (int) Math.min(len, limit - written));
+        }
+
+        written += len;
+    }
+
+    /**
+     * @return true if more data was written than was cached
+     */
+    public boolean isTruncated() {
+        return written > limit;
     }
 
     /**
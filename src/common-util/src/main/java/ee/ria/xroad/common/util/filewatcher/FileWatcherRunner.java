@@ -24,6 +24,8 @@
  */
 package ee.ria.xroad.common.util.filewatcher;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
@@ -31,6 +33,7 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
@@ -57,6 +60,7 @@ public final class FileWatcherRunner {
         private FileWatchListener watchListener;
         private Set<WatchEvent.Kind<Path>> eventTypes = new HashSet<>();
         private FileWatcherStartupListener startupListener;
+        private boolean daemon;
 
         public Builder watchForChangesIn(Path file) {
             this.watchPath = requireNonNull(file);
@@ -121,6 +125,16 @@ public final class FileWatcherRunner {
             return this;
         }
 
+        /**
+         * Run the watcher in a daemon thread, so that it does not prevent the JVM from exiting.
+         *
+         * @return this builder
+         */
+        public Builder inDaemonThread() {
+            this.daemon = true;
+            return this;
+        }
+
         /**
          * Build the {@link FileWatcherRunner} and start a thread that watches it
          *
@@ -136,13 +150,17 @@ public final class FileWatcherRunner {
             // AbstractPoller.register will throw if there are no events to listen to, so throw early
             checkArgument(eventTypes.size() > 0, "You have to listen to at least one type of event");
             FileWatcher watcher = new FileWatcher(this.watchPath, this.watchListener, eventTypes, this.startupListener);
-            return new FileWatcherRunner(watcher).start();
+            return new FileWatcherRunner(watcher, daemon).start();
         }
     }
 
-    private FileWatcherRunner(FileWatcher watcher) {
+    private FileWatcherRunner(FileWatcher watcher, boolean daemon) {
         this.watcher = requireNonNull(watcher);
-        this.executor = Executors.newSingleThreadExecutor();
+
+        ThreadFactory threadFactory = daemon
+                ? new ThreadFactoryBuilder().setNameFormat("file-watcher-%d").setDaemon(true).build()
+                : Executors.defaultThreadFactory();
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
     }
 
     private FileWatcherRunner start() {
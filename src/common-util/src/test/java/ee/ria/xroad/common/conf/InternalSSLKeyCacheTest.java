@@ -0,0 +1,107 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link InternalSSLKeyCache}
+ */
+public class InternalSSLKeyCacheTest {
+
+    private static final int TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String confPath;
+
+    @Before
+    public void setUp() {
+        confPath = System.getProperty(SystemProperties.CONF_PATH);
+        System.setProperty(SystemProperties.CONF_PATH, temporaryFolder.getRoot().getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        if (confPath != null) {
+            System.setProperty(SystemProperties.CONF_PATH, confPath);
+        } else {
+            System.clearProperty(SystemProperties.CONF_PATH);
+        }
+    }
+
+    @Test
+    public void shouldReloadKeyWhenFileChanges() throws Exception {
+        File sslDir = temporaryFolder.newFolder("ssl");
+        File keyFile = new File(sslDir, "internal.p12");
+        writeKeyStore(keyFile, TestCertUtil.getConsumer());
+
+        InternalSSLKey key = InternalSSLKeyCache.get();
+        assertEquals(TestCertUtil.getConsumer().certChain[0], key.getCertChain()[0]);
+        assertSame(key, InternalSSLKeyCache.get());
+
+        // replace the file the way key generation does, by moving a complete file in place
+        File newKeyFile = new File(temporaryFolder.getRoot(), "internal.p12.tmp");
+        writeKeyStore(newKeyFile, TestCertUtil.getProducer());
+        Files.move(newKeyFile.toPath(), keyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while (InternalSSLKeyCache.get() == key && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(TestCertUtil.getProducer().certChain[0], InternalSSLKeyCache.get().getCertChain()[0]);
+    }
+
+    private static void writeKeyStore(File file, TestCertUtil.PKCS12 pkcs12) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("pkcs12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(InternalSSLKey.KEY_ALIAS, pkcs12.key, InternalSSLKey.getKEY_PASSWORD(),
+                pkcs12.certChain);
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            keyStore.store(out, InternalSSLKey.getKEY_PASSWORD());
+        }
+    }
+}
@@ -26,15 +26,22 @@ package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.util.ExpectedCodedException;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 
 import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests to verify configuration directories are read correctly.
@@ -44,6 +51,9 @@ public class ConfigurationDirectoryTest {
     @Rule
     public ExpectedCodedException thrown = ExpectedCodedException.none();
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     /**
      * Test to ensure a correct configuration directory is read properly.
      *
@@ -108,4 +118,58 @@ public class ConfigurationDirectoryTest {
         ConfigurationDirectoryV2.verifyUpToDate(Paths.get("src/test/resources/globalconf_expired/foo/"
                 + ConfigurationDirectoryV2.PRIVATE_PARAMETERS_XML));
     }
+
+    /**
+     * Test to ensure that reload parses only the changed files and reuses the parameters of unchanged ones,
+     * and that the version changes only when the parameters change.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void reloadOnlyChangedParametersV2() throws Exception {
+        File confPath = tmp.newFolder("globalconf");
+        FileUtils.copyDirectory(new File("src/test/resources/globalconf_good_v2"), confPath);
+
+        ConfigurationDirectoryV2 dir = new ConfigurationDirectoryV2(confPath.getPath());
+
+        PrivateParametersV2 fooPrivate = dir.getPrivate("foo");
+        SharedParametersV2 fooShared = dir.getShared("foo");
+        SharedParametersV2 barShared = dir.getShared("bar");
+        long version = dir.getVersion();
+
+        // touching a file without changing its content does not cause it to be parsed again
+        File barSharedFile = new File(confPath, "bar/" + ConfigurationDirectoryV2.SHARED_PARAMETERS_XML);
+        barSharedFile.setLastModified(barSharedFile.lastModified() - 10000);
+
+        dir.reload();
+
+        assertSame(fooPrivate, dir.getPrivate("foo"));
+        assertSame(fooShared, dir.getShared("foo"));
+        assertSame(barShared, dir.getShared("bar"));
+        assertEquals(version, dir.getVersion());
+
+        // changing the content of one file causes only that file to be parsed again
+        File fooSharedFile = new File(confPath, "foo/" + ConfigurationDirectoryV2.SHARED_PARAMETERS_XML);
+        FileUtils.writeStringToFile(fooSharedFile, "\n<!-- changed -->\n", StandardCharsets.UTF_8, true);
+
+        dir.reload();
+
+        assertSame(fooPrivate, dir.getPrivate("foo"));
+        assertNotSame(fooShared, dir.getShared("foo"));
+        assertEquals("foo", dir.getShared("foo").getInstanceIdentifier());
+        assertSame(barShared, dir.getShared("bar"));
+        assertEquals(3, dir.getShared().size());
+        assertNotEquals(version, dir.getVersion());
+
+        version = dir.getVersion();
+
+        // removed files are dropped from the configuration
+        FileUtils.deleteQuietly(barSharedFile);
+
+        dir.reload();
+
+        assertNull(dir.getShared("bar"));
+        assertEquals(2, dir.getShared().size());
+        assertNotEquals(version, dir.getVersion());
+    }
 }
@@ -0,0 +1,229 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for binary images of parsed parameters, using a synthetic large federation.
+ */
+public class ParametersImageTest {
+
+    private static final int MEMBER_COUNT = 5000;
+    private static final int SERVER_COUNT = 2500;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path sharedParamsFile;
+
+    /**
+     * Writes shared parameters of a synthetic large federation.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void createFederation() throws Exception {
+        File instanceDir = tmp.newFolder("EE");
+        sharedParamsFile = new File(instanceDir, ConfigurationDirectoryV2.SHARED_PARAMETERS_XML).toPath();
+
+        FileUtils.writeStringToFile(sharedParamsFile.toFile(), createSharedParameters(MEMBER_COUNT, SERVER_COUNT),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test to ensure parameters restored from an image equal the parameters parsed from XML.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void restoreParametersFromImage() throws Exception {
+        SharedParametersV2 parsed = new SharedParametersV2();
+        parsed.load(sharedParamsFile.toString());
+
+        ParametersImage.write(sharedParamsFile, parsed);
+
+        assertTrue(ParametersImage.isCurrent(sharedParamsFile, SharedParametersV2.class));
+
+        SharedParametersV2 restored = new SharedParametersV2();
+        assertTrue(ParametersImage.load(sharedParamsFile, ParametersFile.hash(sharedParamsFile), restored));
+
+        // The restored configuration marshals to the same XML as the parsed one
+        assertArrayEquals(marshal(parsed), marshal(restored));
+
+        assertEquals(parsed.getInstanceIdentifier(), restored.getInstanceIdentifier());
+        assertEquals(parsed.getMembers().size(), restored.getMembers().size());
+        assertEquals(parsed.getMemberAddresses(), restored.getMemberAddresses());
+        assertEquals(parsed.getSecurityServerClients(), restored.getSecurityServerClients());
+        assertEquals(parsed.getKnownAddresses(), restored.getKnownAddresses());
+        assertEquals(parsed.getVerificationCaCerts(), restored.getVerificationCaCerts());
+        assertEquals(parsed.getServerByAuthCert().keySet(), restored.getServerByAuthCert().keySet());
+    }
+
+    /**
+     * Test to ensure an image is not used once the XML file has changed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void ignoreOutdatedImage() throws Exception {
+        SharedParametersV2 parsed = new SharedParametersV2();
+        parsed.load(sharedParamsFile.toString());
+        ParametersImage.write(sharedParamsFile, parsed);
+
+        FileUtils.writeStringToFile(sharedParamsFile.toFile(), "\n<!-- changed -->\n", StandardCharsets.UTF_8, true);
+
+        assertFalse(ParametersImage.load(sharedParamsFile, ParametersFile.hash(sharedParamsFile),
+                new SharedParametersV2()));
+
+        // parameters are parsed from XML instead
+        ParametersFile<SharedParametersV2> file = ParametersFile.load(sharedParamsFile, SharedParametersV2.class);
+
+        assertEquals(MEMBER_COUNT + 3, file.getParameters().getMembers().size());
+    }
+
+    /**
+     * Test to ensure an image written with another layout of the parameters classes is not used.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void ignoreImageOfAnotherLayout() throws Exception {
+        SharedParametersV2 parsed = new SharedParametersV2();
+        parsed.load(sharedParamsFile.toString());
+        ParametersImage.write(sharedParamsFile, parsed);
+
+        // Replace the layout version in the image header, as if the image had been written by other classes
+        Path image = ParametersImage.getImagePath(sharedParamsFile);
+        String layoutVersion = ParametersImage.getLayoutVersion(SharedParametersV2.class);
+        byte[] content = Files.readAllBytes(image);
+        int offset = new String(content, StandardCharsets.ISO_8859_1).indexOf(layoutVersion);
+
+        assertTrue(offset > 0);
+
+        content[offset] = (byte) (content[offset] == '0' ? '1' : '0');
+        Files.write(image, content);
+
+        assertFalse(ParametersImage.isCurrent(sharedParamsFile, SharedParametersV2.class));
+        assertFalse(ParametersImage.load(sharedParamsFile, ParametersFile.hash(sharedParamsFile),
+                new SharedParametersV2()));
+    }
+
+    /**
+     * Test to ensure an image is not used for parameters of another type, nor when it is corrupted.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void ignoreInvalidImage() throws Exception {
+        SharedParametersV2 parsed = new SharedParametersV2();
+        parsed.load(sharedParamsFile.toString());
+        ParametersImage.write(sharedParamsFile, parsed);
+
+        String hash = ParametersFile.hash(sharedParamsFile);
+
+        assertFalse(ParametersImage.isCurrent(sharedParamsFile, PrivateParametersV2.class));
+        assertFalse(ParametersImage.load(sharedParamsFile, hash, new PrivateParametersV2()));
+
+        Path image = ParametersImage.getImagePath(sharedParamsFile);
+        byte[] content = Files.readAllBytes(image);
+        Files.write(image, Arrays.copyOf(content, content.length / 2));
+
+        assertFalse(ParametersImage.load(sharedParamsFile, hash, new SharedParametersV2()));
+
+        // A changed byte in the content is detected by the checksum, even if the content could be deserialized
+        byte[] corrupted = content.clone();
+        corrupted[content.length - 2] ^= 1;
+        Files.write(image, corrupted);
+
+        assertFalse(ParametersImage.load(sharedParamsFile, hash, new SharedParametersV2()));
+
+        Files.write(image, content);
+
+        assertTrue(ParametersImage.load(sharedParamsFile, hash, new SharedParametersV2()));
+
+        ConfigurationDirectory.delete(sharedParamsFile.toString());
+
+        assertFalse(Files.exists(image));
+    }
+
+    private static byte[] marshal(SharedParametersV2 parameters) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parameters.save(out);
+
+        return out.toByteArray();
+    }
+
+    // Adds generated members and security servers to the shared parameters used by the other tests
+    private static String createSharedParameters(int memberCount, int serverCount) throws Exception {
+        String template = FileUtils.readFileToString(
+                new File("src/test/resources/globalconf_good_v2/EE/shared-params.xml"), StandardCharsets.UTF_8);
+
+        StringBuilder members = new StringBuilder();
+
+        for (int i = 0; i < memberCount; i++) {
+            members.append("    <member id=\"member").append(i).append("\">\n")
+                    .append("        <memberClass><code>BUSINESS</code><description>1</description></memberClass>\n")
+                    .append("        <memberCode>member").append(i).append("</memberCode>\n")
+                    .append("        <name>Generated member ").append(i).append("</name>\n")
+                    .append("        <subsystem id=\"subsystem").append(i).append("\">")
+                    .append("<subsystemCode>subsystem</subsystemCode></subsystem>\n")
+                    .append("    </member>\n");
+        }
+
+        StringBuilder servers = new StringBuilder();
+
+        for (int i = 0; i < serverCount; i++) {
+            int member = 2 * i % memberCount;
+
+            servers.append("    <securityServer>\n")
+                    .append("        <owner>member").append(member).append("</owner>\n")
+                    .append("        <serverCode>server").append(i).append("</serverCode>\n")
+                    .append("        <address>ss").append(i).append(".example.com</address>\n")
+                    .append("        <authCertHash>").append(String.format("%028d", i)).append("</authCertHash>\n")
+                    .append("        <client>subsystem").append(member).append("</client>\n")
+                    .append("        <client>member").append(member + 1).append("</client>\n")
+                    .append("        <client>subsystem").append(member + 1).append("</client>\n")
+                    .append("    </securityServer>\n");
+        }
+
+        int serversStart = template.indexOf("    <securityServer>");
+        int serversEnd = template.indexOf("    <globalGroup>");
+
+        return template.substring(0, serversStart) + members
+                + template.substring(serversStart, serversEnd) + servers + template.substring(serversEnd);
+    }
+}
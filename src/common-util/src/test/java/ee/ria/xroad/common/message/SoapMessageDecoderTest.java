@@ -0,0 +1,186 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.message;
+
+import ee.ria.xroad.common.util.MimeTypes;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static ee.ria.xroad.common.message.SoapMessageTestUtil.fileToBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests decoding SOAP messages in two steps, first the SOAP part and then the attachments.
+ */
+public class SoapMessageDecoderTest {
+
+    private static final String BOUNDARY = "jetty771207119h3h10dty";
+    private static final String CONTENT_TYPE = MimeTypes.MULTIPART_RELATED + "; boundary=" + BOUNDARY;
+
+    /**
+     * Test to ensure that the SOAP part is decoded first, and the attachments only when asked to.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void decodeSoapPartBeforeAttachments() throws Exception {
+        byte[] message = multipart(part(MimeTypes.TEXT_XML_UTF8, fileToBytes("simple.query")),
+                part(MimeTypes.TEXT_PLAIN, "first attachment".getBytes(StandardCharsets.UTF_8)),
+                part(MimeTypes.TEXT_PLAIN, "second attachment".getBytes(StandardCharsets.UTF_8)));
+
+        RecordingCallback callback = new RecordingCallback();
+        SoapMessageDecoder decoder = new SoapMessageDecoder(CONTENT_TYPE, callback);
+
+        decoder.parseSoap(new ByteArrayInputStream(message));
+
+        assertNotNull(callback.soap);
+        assertTrue(callback.attachments.isEmpty());
+        assertEquals(0, callback.completed);
+
+        decoder.parseAttachments();
+
+        assertEquals(2, callback.attachments.size());
+        assertEquals("first attachment", callback.attachments.get(0));
+        assertEquals("second attachment", callback.attachments.get(1));
+        assertNull(callback.error);
+        assertEquals(1, callback.completed);
+    }
+
+    /**
+     * Test to ensure that a fault in the first part is decoded as the SOAP part.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void decodeFaultAsFirstPart() throws Exception {
+        byte[] message = multipart(part(MimeTypes.TEXT_XML_UTF8, fileToBytes("fault.query")));
+
+        RecordingCallback callback = new RecordingCallback();
+        SoapMessageDecoder decoder = new SoapMessageDecoder(CONTENT_TYPE, callback);
+
+        decoder.parseSoap(new ByteArrayInputStream(message));
+
+        assertNotNull(callback.fault);
+        assertNull(callback.soap);
+        assertEquals(0, callback.completed);
+
+        decoder.parseAttachments();
+
+        assertNull(callback.error);
+        assertEquals(1, callback.completed);
+    }
+
+    /**
+     * Test to ensure that a message whose first part is not SOAP fails when decoding the SOAP part, and is
+     * completed only once.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void failWhenSoapPartIsMissing() throws Exception {
+        byte[] message = multipart(part(MimeTypes.TEXT_PLAIN, "blaah".getBytes(StandardCharsets.UTF_8)));
+
+        RecordingCallback callback = new RecordingCallback();
+        SoapMessageDecoder decoder = new SoapMessageDecoder(CONTENT_TYPE, callback);
+
+        decoder.parseSoap(new ByteArrayInputStream(message));
+
+        assertNull(callback.soap);
+        assertNull(callback.fault);
+        assertNotNull(callback.error);
+        assertEquals(1, callback.completed);
+
+        decoder.parseAttachments();
+
+        assertTrue(callback.attachments.isEmpty());
+        assertEquals(1, callback.completed);
+    }
+
+    private static byte[] part(String contentType, byte[] content) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        out.write(("Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(content);
+
+        return out.toByteArray();
+    }
+
+    private static byte[] multipart(byte[]... parts) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] part : parts) {
+            out.write(("--" + BOUNDARY + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.write(part);
+            out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        out.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        return out.toByteArray();
+    }
+
+    private static final class RecordingCallback implements SoapMessageDecoder.Callback {
+        private SoapMessage soap;
+        private SoapFault fault;
+        private Exception error;
+        private int completed;
+        private final List<String> attachments = new ArrayList<>();
+
+        @Override
+        public void soap(SoapMessage message, Map<String, String> headers) {
+            soap = message;
+        }
+
+        @Override
+        public void attachment(String contentType, InputStream content, Map<String, String> additionalHeaders)
+                throws Exception {
+            attachments.add(IOUtils.toString(content, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void fault(SoapFault soapFault) {
+            fault = soapFault;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed++;
+        }
+
+        @Override
+        public void onError(Exception t) {
+            error = t;
+        }
+    }
+}
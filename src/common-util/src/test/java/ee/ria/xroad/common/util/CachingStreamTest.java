@@ -0,0 +1,115 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for CachingStream
+ */
+public class CachingStreamTest {
+
+    private static final byte[] DATA = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Caches the data in a temporary folder.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, tmp.getRoot().getPath());
+    }
+
+    /**
+     * Restores the default temporary files path.
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+    }
+
+    /**
+     * Test that all the data is cached without a limit.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cacheAll() throws Exception {
+        CachingStream cache = new CachingStream();
+
+        try {
+            cache.write(DATA, 0, DATA.length);
+            cache.write('a');
+
+            assertFalse(cache.isTruncated());
+            assertEquals(DATA.length + 1, cache.getCachedContents().size());
+        } finally {
+            cache.consume();
+        }
+    }
+
+    /**
+     * Test that data beyond the limit is discarded.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cacheUpToLimit() throws Exception {
+        CachingStream cache = new CachingStream(DATA.length - 1);
+
+        try {
+            cache.write(DATA, 0, 4);
+            assertFalse(cache.isTruncated());
+
+            cache.write(DATA, 4, DATA.length - 4);
+            cache.write('a');
+
+            assertTrue(cache.isTruncated());
+
+            CacheInputStream contents = cache.getCachedContents();
+
+            assertEquals(DATA.length - 1, contents.size());
+            assertArrayEquals("012345678".getBytes(StandardCharsets.UTF_8), IOUtils.toByteArray(contents));
+        } finally {
+            cache.consume();
+        }
+    }
+}
@@ -195,6 +195,16 @@ public final class GlobalConf {
         return provider.isValid();
     }
 
+    /**
+     * Returns the version of the global configuration. The version changes
+     * whenever the loaded configuration changes or the configuration
+     * provider is replaced.
+     * @return the version of the global configuration
+     */
+    public static long getVersion() {
+        return getInstance().getVersion();
+    }
+
     /**
      * @return the instance identifier for this configuration source
      */
@@ -114,6 +114,11 @@ public class GlobalConfImpl implements GlobalConfProvider {
         }
     }
 
+    @Override
+    public long getVersion() {
+        return confDir.getVersion();
+    }
+
     @Override
     public String getInstanceIdentifier() {
         return confDir.getInstanceIdentifier();
@@ -55,6 +55,16 @@ public interface GlobalConfProvider extends ConfProvider {
      */
     boolean isValid();
 
+    /**
+     * Returns the version of the global configuration. The version changes
+     * whenever the loaded configuration changes, so it can be used to
+     * invalidate data derived from the configuration. Providers that do
+     * not track changes return a negative value unique to the provider
+     * instance, so that replacing the provider changes the version.
+     * @return the version of the global configuration
+     */
+    long getVersion();
+
     /**
      * @return the instance identifier for this configuration source
      */
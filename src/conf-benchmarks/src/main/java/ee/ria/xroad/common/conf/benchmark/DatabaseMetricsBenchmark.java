@@ -0,0 +1,126 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.benchmark;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
+import ee.ria.xroad.common.conf.serverconf.ServerConfImpl;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the overhead of recording database transactions, see
+ * {@link SystemProperties#isDatabaseMetricsEnabled()}, on transactions against an in-memory HSQLDB database.
+ * Recording is enabled when the database classes are loaded, which happens in a separate fork for every value of
+ * the parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseMetricsBenchmark {
+
+    private static final int MEMBERS = 100;
+    private static final int SUBSYSTEMS = 1;
+    private static final int GLOBAL_GROUPS = 1;
+    private static final int GLOBAL_GROUP_SIZE = 10;
+    private static final int CLIENTS = 10;
+    private static final int SERVICES = 20;
+    private static final int ACL_ENTRIES = 10;
+
+    @Param({"false", "true"})
+    public String metricsEnabled;
+
+    private SyntheticFederation federation;
+    private SyntheticServerConf serverConf;
+    private ServerConfImpl provider;
+
+    private ServiceId[] serviceIds;
+
+    /**
+     * Generates the server configuration and enables or disables recording of transactions.
+     * @throws Exception if generating the configuration fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        System.setProperty(SystemProperties.DATABASE_METRICS_ENABLED, metricsEnabled);
+
+        federation = SyntheticFederation.create(MEMBERS, SUBSYSTEMS, GLOBAL_GROUPS, GLOBAL_GROUP_SIZE);
+        serverConf = SyntheticServerConf.create(federation, CLIENTS, SERVICES, ACL_ENTRIES);
+        provider = new ServerConfImpl();
+
+        serviceIds = new ServiceId[CLIENTS * SERVICES];
+
+        for (int i = 0; i < CLIENTS; i++) {
+            for (int j = 0; j < SERVICES; j++) {
+                serviceIds[i * SERVICES + j] = serverConf.service(i, j);
+            }
+        }
+    }
+
+    /**
+     * Removes the generated configuration.
+     * @throws Exception if removing the configuration fails
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        serverConf.delete();
+        federation.delete();
+    }
+
+    /**
+     * @return result of a transaction that executes no statements
+     * @throws Exception if the transaction fails
+     */
+    @Benchmark
+    public Object emptyTransaction() throws Exception {
+        return ServerConfDatabaseCtx.doInTransaction("emptyTransaction", session -> null);
+    }
+
+    /**
+     * @return address of a random service, looked up in a transaction of its own
+     */
+    @Benchmark
+    public String getServiceAddress() {
+        return provider.getServiceAddress(serviceIds[ThreadLocalRandom.current().nextInt(serviceIds.length)]);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.benchmark;
+
+import ee.ria.xroad.common.conf.globalconf.CachingConfigurationDirectory;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfImpl;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the global configuration lookups done for every message, single-threaded. See
+ * {@link GlobalConfContendedBenchmark} for the same lookups under contention.
+ *
+ * Lookup keys are generated up front and picked at random, so that the measurements are not dominated by
+ * creating identifiers or by a single hot entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlobalConfBenchmark {
+
+    @Param({"1000", "10000"})
+    public int members;
+
+    @Param({"2"})
+    public int subsystems;
+
+    @Param({"20"})
+    public int globalGroups;
+
+    @Param({"100"})
+    public int globalGroupSize;
+
+    private SyntheticFederation federation;
+
+    private ClientId[] subsystemIds;
+    private GlobalGroupId[] globalGroupIds;
+    private X509Certificate[] authCerts;
+    private ClientId[] authCertOwners;
+
+    /**
+     * Generates the federation and loads its global configuration.
+     * @throws Exception if generating the federation fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        federation = SyntheticFederation.create(members, subsystems, globalGroups, globalGroupSize);
+
+        GlobalConf.reload(new GlobalConfImpl(
+                new CachingConfigurationDirectory(federation.getConfPath().toString(), false)));
+
+        subsystemIds = new ClientId[members];
+
+        for (int i = 0; i < members; i++) {
+            subsystemIds[i] = federation.subsystem(i, 0);
+        }
+
+        globalGroupIds = new GlobalGroupId[globalGroups];
+
+        for (int i = 0; i < globalGroups; i++) {
+            globalGroupIds[i] = federation.globalGroup(i);
+        }
+
+        authCerts = federation.getAuthCerts().toArray(new X509Certificate[0]);
+        authCertOwners = new ClientId[authCerts.length];
+
+        for (int i = 0; i < authCerts.length; i++) {
+            authCertOwners[i] = federation.member(i);
+        }
+    }
+
+    /**
+     * Removes the generated global configuration.
+     * @throws Exception if removing the configuration fails
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        federation.delete();
+    }
+
+    /**
+     * @return name of a random member
+     */
+    @Benchmark
+    public String getMemberName() {
+        return GlobalConf.getMemberName(pick(subsystemIds));
+    }
+
+    /**
+     * @return addresses of the security servers of a random subsystem
+     */
+    @Benchmark
+    public Collection<String> getProviderAddress() {
+        return GlobalConf.getProviderAddress(pick(subsystemIds));
+    }
+
+    /**
+     * @return whether a random subsystem is in a random global group
+     */
+    @Benchmark
+    public boolean isSubjectInGlobalGroup() {
+        return GlobalConf.isSubjectInGlobalGroup(pick(subsystemIds), pick(globalGroupIds));
+    }
+
+    /**
+     * @return the CA certificate of a random authentication certificate
+     * @throws Exception if the CA certificate cannot be found
+     */
+    @Benchmark
+    public X509Certificate getCaCert() throws Exception {
+        return GlobalConf.getCaCert(SyntheticFederation.INSTANCE, pick(authCerts));
+    }
+
+    /**
+     * @return whether a random authentication certificate belongs to its owner
+     * @throws Exception if the certificate cannot be checked
+     */
+    @Benchmark
+    public boolean authCertMatchesMember() throws Exception {
+        int i = ThreadLocalRandom.current().nextInt(authCerts.length);
+
+        return GlobalConf.authCertMatchesMember(authCerts[i], authCertOwners[i]);
+    }
+
+    private static <T> T pick(T[] values) {
+        return values[ThreadLocalRandom.current().nextInt(values.length)];
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.benchmark;
+
+import ee.ria.xroad.common.conf.globalconf.CachingConfigurationDirectory;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfImpl;
+import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.conf.serverconf.ServerConfImpl;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the server configuration lookups done for every message, single-threaded, against an in-memory
+ * HSQLDB database. See {@link ServerConfContendedBenchmark} for the same lookups under contention.
+ *
+ * Access is checked for the subject granted by the last access right entry of a random service, so that every
+ * check goes through all the access right entries of the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerConfBenchmark {
+
+    private static final int MEMBERS = 1000;
+    private static final int SUBSYSTEMS = 2;
+    private static final int GLOBAL_GROUPS = 20;
+    private static final int GLOBAL_GROUP_SIZE = 100;
+
+    @Param({"ServerConfImpl", "CachingServerConfImpl"})
+    public String provider;
+
+    @Param({"10"})
+    public int clients;
+
+    @Param({"20", "100"})
+    public int services;
+
+    @Param({"10"})
+    public int aclEntries;
+
+    private SyntheticFederation federation;
+    private SyntheticServerConf serverConf;
+
+    private ServiceId[] serviceIds;
+    private ClientId[] allowedSubjects;
+    private ClientId deniedSubject;
+
+    /**
+     * Generates the federation and the server configuration and loads them.
+     * @throws Exception if generating the configuration fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        federation = SyntheticFederation.create(MEMBERS, SUBSYSTEMS, GLOBAL_GROUPS, GLOBAL_GROUP_SIZE);
+
+        GlobalConf.reload(new GlobalConfImpl(
+                new CachingConfigurationDirectory(federation.getConfPath().toString(), false)));
+
+        serverConf = SyntheticServerConf.create(federation, clients, services, aclEntries);
+
+        ServerConf.reload("CachingServerConfImpl".equals(provider)
+                ? new CachingServerConfImpl() : new ServerConfImpl());
+
+        serviceIds = new ServiceId[clients * services];
+        allowedSubjects = new ClientId[clients * services];
+
+        for (int i = 0; i < clients; i++) {
+            for (int j = 0; j < services; j++) {
+                serviceIds[i * services + j] = serverConf.service(i, j);
+                allowedSubjects[i * services + j] = serverConf.allowedSubject(i, j);
+            }
+        }
+
+        deniedSubject = serverConf.deniedSubject();
+    }
+
+    /**
+     * Removes the generated configuration.
+     * @throws Exception if removing the configuration fails
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        serverConf.delete();
+        federation.delete();
+    }
+
+    /**
+     * @return whether an allowed subject may use a random service
+     */
+    @Benchmark
+    public boolean isQueryAllowed() {
+        int i = ThreadLocalRandom.current().nextInt(serviceIds.length);
+
+        return ServerConf.isQueryAllowed(allowedSubjects[i], serviceIds[i]);
+    }
+
+    /**
+     * @return whether an unknown subject may use a random service
+     */
+    @Benchmark
+    public boolean isQueryDenied() {
+        int i = ThreadLocalRandom.current().nextInt(serviceIds.length);
+
+        return ServerConf.isQueryAllowed(deniedSubject, serviceIds[i]);
+    }
+
+    /**
+     * @return address of a random service
+     */
+    @Benchmark
+    public String getServiceAddress() {
+        return ServerConf.getServiceAddress(serviceIds[ThreadLocalRandom.current().nextInt(serviceIds.length)]);
+    }
+
+    /**
+     * @return whether an allowed subject may use a random service, checked on the service resolved at once as the
+     * server proxy does
+     */
+    @Benchmark
+    public boolean resolveService() {
+        int i = ThreadLocalRandom.current().nextInt(serviceIds.length);
+
+        return ServerConf.resolveService(serviceIds[i]).isQueryAllowed(allowedSubjects[i]);
+    }
+}
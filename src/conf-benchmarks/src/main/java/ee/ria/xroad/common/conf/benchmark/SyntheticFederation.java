@@ -0,0 +1,298 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.benchmark;
+
+import ee.ria.xroad.common.conf.globalconf.ConfigurationConstants;
+import ee.ria.xroad.common.conf.globalconf.ConfigurationDirectory;
+import ee.ria.xroad.common.conf.globalconf.ConfigurationDirectoryV2;
+import ee.ria.xroad.common.conf.globalconf.ConfigurationPartMetadata;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.util.CryptoUtils;
+
+import lombok.Getter;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.certHash;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+
+/**
+ * Generates the global configuration of a synthetic federation of the given size into a temporary configuration
+ * directory.
+ *
+ * Every member has the given number of subsystems and owns one security server, which has the subsystems of the
+ * member as its clients. Global group k contains the first subsystems of members k * size ... (k + 1) * size - 1
+ * (wrapping around). The first {@link #AUTH_CERT_COUNT} security servers have real authentication certificates
+ * issued by the approved CA of the federation, the rest have random certificate hashes.
+ */
+@Getter
+public final class SyntheticFederation {
+
+    public static final String INSTANCE = "BENCH";
+    public static final String MEMBER_CLASS = "GOV";
+
+    static final int AUTH_CERT_COUNT = 16;
+
+    private static final String CA_NAME = "CN=Benchmark CA";
+    private static final String CERT_PROFILE_INFO =
+            "ee.ria.xroad.common.certificateprofile.impl.EjbcaCertificateProfileInfoProvider";
+    private static final int KEY_SIZE = 2048;
+    private static final int CERT_HASH_LENGTH = 20;
+    private static final int OCSP_FRESHNESS_SECONDS = 600;
+
+    private final int memberCount;
+    private final int subsystemsPerMember;
+    private final int globalGroupCount;
+    private final int globalGroupSize;
+
+    private final Path confPath;
+    private final X509Certificate caCert;
+    private final List<X509Certificate> authCerts;
+
+    private SyntheticFederation(int memberCount, int subsystemsPerMember, int globalGroupCount,
+            int globalGroupSize, Path confPath, X509Certificate caCert, List<X509Certificate> authCerts) {
+        this.memberCount = memberCount;
+        this.subsystemsPerMember = subsystemsPerMember;
+        this.globalGroupCount = globalGroupCount;
+        this.globalGroupSize = globalGroupSize;
+        this.confPath = confPath;
+        this.caCert = caCert;
+        this.authCerts = authCerts;
+    }
+
+    /**
+     * Generates the configuration directory of a federation.
+     * @param memberCount number of members
+     * @param subsystemsPerMember number of subsystems of every member
+     * @param globalGroupCount number of global groups
+     * @param globalGroupSize number of subsystems in every global group
+     * @return the federation
+     * @throws Exception if generating the configuration fails
+     */
+    public static SyntheticFederation create(int memberCount, int subsystemsPerMember, int globalGroupCount,
+            int globalGroupSize) throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(KEY_SIZE);
+
+        KeyPair caKeys = keyPairGenerator.generateKeyPair();
+        KeyPair serverKeys = keyPairGenerator.generateKeyPair();
+
+        X509Certificate caCert = createCert(CA_NAME, caKeys.getPublic(), CA_NAME, caKeys.getPrivate(), 1);
+
+        List<X509Certificate> authCerts = new ArrayList<>();
+
+        for (int i = 0; i < Math.min(AUTH_CERT_COUNT, memberCount); i++) {
+            authCerts.add(createCert("CN=server" + i + ", O=" + memberCode(i), serverKeys.getPublic(), CA_NAME,
+                    caKeys.getPrivate(), i + 2));
+        }
+
+        SyntheticFederation federation = new SyntheticFederation(memberCount, subsystemsPerMember,
+                globalGroupCount, globalGroupSize, Files.createTempDirectory("globalconf"), caCert,
+                Collections.unmodifiableList(authCerts));
+
+        federation.write();
+
+        return federation;
+    }
+
+    /**
+     * @param member index of the member
+     * @return identifier of the member
+     */
+    public ClientId member(int member) {
+        return ClientId.create(INSTANCE, MEMBER_CLASS, memberCode(member));
+    }
+
+    /**
+     * @param member index of the member
+     * @param subsystem index of the subsystem
+     * @return identifier of the subsystem
+     */
+    public ClientId subsystem(int member, int subsystem) {
+        return ClientId.create(INSTANCE, MEMBER_CLASS, memberCode(member), subsystemCode(subsystem));
+    }
+
+    /**
+     * @param group index of the global group
+     * @return identifier of the global group
+     */
+    public GlobalGroupId globalGroup(int group) {
+        return GlobalGroupId.create(INSTANCE, "group" + group);
+    }
+
+    /**
+     * @param group index of the global group
+     * @param index index of the group member
+     * @return the index of the member whose first subsystem is the given member of the global group
+     */
+    public int globalGroupMember(int group, int index) {
+        return (group * globalGroupSize + index) % memberCount;
+    }
+
+    /**
+     * Removes the configuration directory.
+     * @throws IOException if removing the directory fails
+     */
+    public void delete() throws IOException {
+        FileUtils.deleteDirectory(confPath.toFile());
+    }
+
+    private void write() throws Exception {
+        ConfigurationDirectory.saveInstanceIdentifier(confPath.toString(), INSTANCE);
+
+        Path sharedParams = confPath.resolve(INSTANCE).resolve(ConfigurationDirectoryV2.SHARED_PARAMETERS_XML);
+        Files.createDirectories(sharedParams.getParent());
+        Files.write(sharedParams, createSharedParameters().getBytes(StandardCharsets.UTF_8));
+
+        ConfigurationPartMetadata metadata = new ConfigurationPartMetadata();
+        metadata.setContentIdentifier(ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS);
+        metadata.setInstanceIdentifier(INSTANCE);
+        metadata.setExpirationDate(new DateTime().plusYears(1));
+
+        ConfigurationDirectory.saveMetadata(sharedParams, metadata);
+    }
+
+    private String createSharedParameters() throws Exception {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<tns:conf xmlns:id=\"http://x-road.eu/xsd/identifiers\"")
+                .append(" xmlns:tns=\"http://x-road.eu/xsd/xroad.xsd\">\n")
+                .append("<instanceIdentifier>").append(INSTANCE).append("</instanceIdentifier>\n")
+                .append("<approvedCA><name>Benchmark CA</name>")
+                .append("<topCA><cert>").append(encodeBase64(caCert.getEncoded())).append("</cert></topCA>")
+                .append("<certificateProfileInfo>").append(CERT_PROFILE_INFO).append("</certificateProfileInfo>")
+                .append("</approvedCA>\n");
+
+        for (int i = 0; i < memberCount; i++) {
+            xml.append("<member id=\"m").append(i).append("\">")
+                    .append("<memberClass><code>").append(MEMBER_CLASS).append("</code>")
+                    .append("<description>Government</description></memberClass>")
+                    .append("<memberCode>").append(memberCode(i)).append("</memberCode>")
+                    .append("<name>Member ").append(i).append("</name>");
+
+            for (int j = 0; j < subsystemsPerMember; j++) {
+                xml.append("<subsystem id=\"m").append(i).append("s").append(j).append("\">")
+                        .append("<subsystemCode>").append(subsystemCode(j)).append("</subsystemCode>")
+                        .append("</subsystem>");
+            }
+
+            xml.append("</member>\n");
+        }
+
+        Random random = new Random(memberCount);
+
+        for (int i = 0; i < memberCount; i++) {
+            xml.append("<securityServer>")
+                    .append("<owner>m").append(i).append("</owner>")
+                    .append("<serverCode>server").append(i).append("</serverCode>")
+                    .append("<address>ss").append(i).append(".benchmark.example</address>")
+                    .append("<authCertHash>").append(encodeBase64(authCertHash(i, random))).append("</authCertHash>");
+
+            for (int j = 0; j < subsystemsPerMember; j++) {
+                xml.append("<client>m").append(i).append("s").append(j).append("</client>");
+            }
+
+            xml.append("</securityServer>\n");
+        }
+
+        for (int k = 0; k < globalGroupCount; k++) {
+            xml.append("<globalGroup><groupCode>").append(globalGroup(k).getGroupCode()).append("</groupCode>")
+                    .append("<description>Group ").append(k).append("</description>");
+
+            for (int i = 0; i < globalGroupSize; i++) {
+                xml.append("<groupMember id:objectType=\"SUBSYSTEM\">")
+                        .append("<id:xRoadInstance>").append(INSTANCE).append("</id:xRoadInstance>")
+                        .append("<id:memberClass>").append(MEMBER_CLASS).append("</id:memberClass>")
+                        .append("<id:memberCode>").append(memberCode(globalGroupMember(k, i)))
+                        .append("</id:memberCode>")
+                        .append("<id:subsystemCode>").append(subsystemCode(0)).append("</id:subsystemCode>")
+                        .append("</groupMember>");
+            }
+
+            xml.append("</globalGroup>\n");
+        }
+
+        xml.append("<globalSettings><ocspFreshnessSeconds>").append(OCSP_FRESHNESS_SECONDS)
+                .append("</ocspFreshnessSeconds></globalSettings>\n")
+                .append("</tns:conf>\n");
+
+        return xml.toString();
+    }
+
+    private byte[] authCertHash(int server, Random random) throws Exception {
+        if (server < authCerts.size()) {
+            return certHash(authCerts.get(server));
+        }
+
+        byte[] hash = new byte[CERT_HASH_LENGTH];
+        random.nextBytes(hash);
+
+        return hash;
+    }
+
+    private static String memberCode(int member) {
+        return "member" + member;
+    }
+
+    private static String subsystemCode(int subsystem) {
+        return "subsystem" + subsystem;
+    }
+
+    private static X509Certificate createCert(String subject, PublicKey subjectKey, String issuer,
+            PrivateKey issuerKey, long serial) throws Exception {
+        ContentSigner signer = CryptoUtils.createContentSigner(CryptoUtils.SHA256WITHRSA_ID, issuerKey);
+
+        long now = System.currentTimeMillis();
+
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name(issuer),
+                BigInteger.valueOf(serial), new Date(now - TimeUnit.DAYS.toMillis(1)),
+                new Date(now + TimeUnit.DAYS.toMillis(365)), new X500Name(subject), subjectKey);
+
+        return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+    }
+}
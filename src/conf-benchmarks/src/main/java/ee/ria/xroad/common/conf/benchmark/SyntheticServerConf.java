@@ -0,0 +1,283 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.benchmark;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
+import ee.ria.xroad.common.conf.serverconf.model.ServiceDescriptionType;
+import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import lombok.Getter;
+import org.hibernate.Session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Properties;
+
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
+
+/**
+ * Generates the server configuration of a synthetic security server into an in-memory HSQLDB database.
+ *
+ * The security server has the first subsystems of the given number of federation members as its clients. Every
+ * client provides the given number of services and every service has the given number of access right entries:
+ * the local group of the client, a global group of the federation and subsystems of other federation members.
+ */
+@Getter
+public final class SyntheticServerConf {
+
+    public static final String SERVICE_VERSION = "v1";
+
+    private static final String CLIENT_STATUS = "registered";
+    private static final String IS_AUTHENTICATION = "NOSSL";
+    private static final int SERVICE_TIMEOUT = 60;
+    private static final int LOCAL_GROUP_SIZE = 10;
+
+    private final SyntheticFederation federation;
+    private final int clientCount;
+    private final int servicesPerClient;
+    private final int aclEntriesPerService;
+
+    private final Path databaseProperties;
+
+    private SyntheticServerConf(SyntheticFederation federation, int clientCount, int servicesPerClient,
+            int aclEntriesPerService, Path databaseProperties) {
+        this.federation = federation;
+        this.clientCount = clientCount;
+        this.servicesPerClient = servicesPerClient;
+        this.aclEntriesPerService = aclEntriesPerService;
+        this.databaseProperties = databaseProperties;
+    }
+
+    /**
+     * Creates the in-memory database and fills it with the server configuration.
+     * @param federation the federation the security server belongs to
+     * @param clientCount number of clients, at most the number of federation members
+     * @param servicesPerClient number of services of every client
+     * @param aclEntriesPerService number of access right entries of every service, at least 3
+     * @return the server configuration
+     * @throws Exception if creating the database fails
+     */
+    public static SyntheticServerConf create(SyntheticFederation federation, int clientCount,
+            int servicesPerClient, int aclEntriesPerService) throws Exception {
+        if (clientCount > federation.getMemberCount() || aclEntriesPerService < 3) {
+            throw new IllegalArgumentException("Server configuration does not fit the federation");
+        }
+
+        SyntheticServerConf serverConf = new SyntheticServerConf(federation, clientCount, servicesPerClient,
+                aclEntriesPerService, writeDatabaseProperties());
+
+        System.setProperty(SystemProperties.DATABASE_PROPERTIES, serverConf.databaseProperties.toString());
+
+        doInTransaction(session -> {
+            session.save(serverConf.createServerConf(session));
+            return null;
+        });
+
+        return serverConf;
+    }
+
+    /**
+     * @param client index of the client
+     * @return identifier of the client
+     */
+    public ClientId client(int client) {
+        return federation.subsystem(client, 0);
+    }
+
+    /**
+     * @param client index of the client
+     * @param service index of the service
+     * @return identifier of the service
+     */
+    public ServiceId service(int client, int service) {
+        return ServiceId.create(client(client), serviceCode(service), SERVICE_VERSION);
+    }
+
+    /**
+     * Returns the subsystem that is granted access by the last access right entry of the service, so that
+     * checking its access rights has to go through all the other entries of the service.
+     * @param client index of the client
+     * @param service index of the service
+     * @return identifier of the subsystem that is allowed to use the service
+     */
+    public ClientId allowedSubject(int client, int service) {
+        return federation.subsystem(consumer(client, service, aclEntriesPerService - 1),
+                federation.getSubsystemsPerMember() - 1);
+    }
+
+    /**
+     * @return identifier of a subsystem that is not allowed to use any service
+     */
+    public ClientId deniedSubject() {
+        return ClientId.create(SyntheticFederation.INSTANCE, SyntheticFederation.MEMBER_CLASS, "unknown",
+                "subsystem0");
+    }
+
+    /**
+     * Closes the database and removes its configuration.
+     * @throws IOException if removing the configuration fails
+     */
+    public void delete() throws IOException {
+        ServerConfDatabaseCtx.get().closeSessionFactory();
+
+        Files.deleteIfExists(databaseProperties);
+    }
+
+    private ServerConfType createServerConf(Session session) {
+        ServerConfType conf = new ServerConfType();
+        conf.setServerCode("server0");
+
+        ClientType owner = createClient(conf, federation.member(0));
+        conf.setOwner(owner);
+
+        for (int i = 0; i < clientCount; i++) {
+            ClientType client = createClient(conf, client(i));
+
+            ServiceDescriptionType serviceDescription = new ServiceDescriptionType();
+            serviceDescription.setClient(client);
+            serviceDescription.setUrl("http://provider" + i + ".benchmark.example/wsdl");
+            serviceDescription.setType(DescriptionType.WSDL);
+            client.getServiceDescription().add(serviceDescription);
+
+            LocalGroupType localGroup = createLocalGroup(i);
+            client.getLocalGroup().add(localGroup);
+
+            for (int j = 0; j < servicesPerClient; j++) {
+                ServiceType service = new ServiceType();
+                service.setServiceDescription(serviceDescription);
+                service.setServiceCode(serviceCode(j));
+                service.setServiceVersion(SERVICE_VERSION);
+                service.setTitle("Service " + j);
+                service.setUrl("http://provider" + i + ".benchmark.example/" + serviceCode(j));
+                service.setTimeout(SERVICE_TIMEOUT);
+                serviceDescription.getService().add(service);
+
+                EndpointType endpoint = new EndpointType(service.getServiceCode(), EndpointType.ANY_METHOD,
+                        EndpointType.ANY_PATH, true);
+                session.persist(endpoint);
+                client.getEndpoint().add(endpoint);
+
+                for (int k = 0; k < aclEntriesPerService; k++) {
+                    client.getAcl().add(createAccessRight(endpoint, aclSubject(i, j, k, localGroup)));
+                }
+            }
+        }
+
+        return conf;
+    }
+
+    private static ClientType createClient(ServerConfType conf, ClientId identifier) {
+        ClientType client = new ClientType();
+        client.setConf(conf);
+        client.setIdentifier(identifier);
+        client.setClientStatus(CLIENT_STATUS);
+        client.setIsAuthentication(IS_AUTHENTICATION);
+        conf.getClient().add(client);
+
+        return client;
+    }
+
+    private LocalGroupType createLocalGroup(int client) {
+        LocalGroupType localGroup = new LocalGroupType();
+        localGroup.setGroupCode("localGroup" + client);
+        localGroup.setDescription("Local group of client " + client);
+        localGroup.setUpdated(new Date());
+
+        for (int i = 0; i < LOCAL_GROUP_SIZE; i++) {
+            GroupMemberType member = new GroupMemberType();
+            member.setGroupMemberId(federation.subsystem((client + i) % federation.getMemberCount(), 0));
+            member.setAdded(new Date());
+            localGroup.getGroupMember().add(member);
+        }
+
+        return localGroup;
+    }
+
+    private XRoadId aclSubject(int client, int service, int entry, LocalGroupType localGroup) {
+        switch (entry) {
+            case 0:
+                return LocalGroupId.create(localGroup.getGroupCode());
+            case 1:
+                if (federation.getGlobalGroupCount() > 0) {
+                    return federation.globalGroup((client + service) % federation.getGlobalGroupCount());
+                }
+                // fall through
+            default:
+                return federation.subsystem(consumer(client, service, entry),
+                        federation.getSubsystemsPerMember() - 1);
+        }
+    }
+
+    private int consumer(int client, int service, int entry) {
+        return (int) (((long) client * servicesPerClient * aclEntriesPerService
+                + (long) service * aclEntriesPerService + entry) % federation.getMemberCount());
+    }
+
+    private static AccessRightType createAccessRight(EndpointType endpoint, XRoadId subject) {
+        AccessRightType accessRight = new AccessRightType();
+        accessRight.setEndpoint(endpoint);
+        accessRight.setSubjectId(subject);
+        accessRight.setRightsGiven(new Date());
+
+        return accessRight;
+    }
+
+    private static String serviceCode(int service) {
+        return "service" + service;
+    }
+
+    private static Path writeDatabaseProperties() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("serverconf.hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+        properties.setProperty("serverconf.hibernate.connection.driver_class", "org.hsqldb.jdbcDriver");
+        properties.setProperty("serverconf.hibernate.connection.url", "jdbc:hsqldb:mem:serverconf");
+        properties.setProperty("serverconf.hibernate.connection.username", "serverconf");
+        properties.setProperty("serverconf.hibernate.connection.password", "serverconf");
+        properties.setProperty("serverconf.hibernate.hbm2ddl.auto", "create-drop");
+
+        Path file = Files.createTempFile("serverconf", ".properties");
+
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "In-memory serverconf database for benchmarks");
+        }
+
+        return file;
+    }
+}
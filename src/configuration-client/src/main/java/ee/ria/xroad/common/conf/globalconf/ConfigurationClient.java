@@ -37,6 +37,7 @@ import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -77,7 +78,7 @@ class ConfigurationClient {
 
         // Only sync if download was successful.
         try {
-            downloadedFiles.sync();
+            downloadedFiles.sync(downloader::forgetFile);
         } catch (Exception e) {
             log.error("Failed to sync downloaded files list", e);
         }
@@ -149,17 +150,18 @@ class ConfigurationClient {
         FederationConfigurationSourceFilter filter =
                 new FederationConfigurationSourceFilterImpl(configurationAnchor.getInstanceIdentifier());
 
-        for (Set<ConfigurationSource> sources : additionalSources.values()) {
-            for (ConfigurationSource source : sources) {
-                if (!filter.shouldDownloadConfigurationFor(source.getInstanceIdentifier())) {
-                    continue;
-                }
+        List<ConfigurationSource> sources = additionalSources.values().stream()
+                .flatMap(Set::stream)
+                .filter(source -> filter.shouldDownloadConfigurationFor(source.getInstanceIdentifier()))
+                .collect(Collectors.toList());
 
-                DownloadResult result = downloader.download(
-                        source, ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS);
-                handleResult(result, source.getInstanceIdentifier().equals(
-                        configurationAnchor.getInstanceIdentifier()));
-            }
+        // The sources are downloaded in parallel, the results are handled one by one
+        Map<ConfigurationSource, DownloadResult> results =
+                downloader.downloadAll(sources, ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS);
+
+        for (Map.Entry<ConfigurationSource, DownloadResult> result : results.entrySet()) {
+            handleResult(result.getValue(), result.getKey().getInstanceIdentifier().equals(
+                    configurationAnchor.getInstanceIdentifier()));
         }
     }
 
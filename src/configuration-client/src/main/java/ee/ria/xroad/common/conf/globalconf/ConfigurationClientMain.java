@@ -171,7 +171,7 @@ public final class ConfigurationClientMain {
             }
 
             @Override
-            void persistContent(byte[] content, Path destination, ConfigurationFile file) throws Exception {
+            void persistContent(DownloadedContent content, Path destination, ConfigurationFile file) throws Exception {
                 // empty cause we don't want to persist files to disk
             }
 
@@ -179,6 +179,11 @@ public final class ConfigurationClientMain {
             void updateExpirationDate(Path destination, ConfigurationFile file) throws Exception {
                 // empty cause we don't want to persist files to disk
             }
+
+            @Override
+            void updateImage(Path destination, ConfigurationFile file) {
+                // empty cause we don't want to persist files to disk
+            }
         };
 
         client = new ConfigurationClient(getDummyDownloadedFiles(), configuration,
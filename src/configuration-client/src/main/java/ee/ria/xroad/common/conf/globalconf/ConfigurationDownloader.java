@@ -25,6 +25,8 @@
 package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.AbstractXmlConf;
 
 import lombok.Getter;
 import lombok.SneakyThrows;
@@ -35,23 +37,46 @@ import org.bouncycastle.operator.DigestCalculator;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.common.ErrorCodes.X_HTTP_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_IO_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_GLOBALCONF;
+import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
+import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.util.CryptoUtils.createDigestCalculator;
 import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
@@ -63,26 +88,73 @@ import static ee.ria.xroad.common.util.CryptoUtils.getAlgorithmId;
  *
  * When there is only one configuration location in the configuration anchor, it
  * is used. If there is more than one configuration location, then, for
- * high-availability concerns, list of configuration locations is shuffled and
- * then traversed to find the first location where configuration * can be
- * downloaded. The successful location is remembered and used first next time
- * the configuration is downloaded.
+ * high-availability concerns, the locations are ordered by the latency observed
+ * during previous downloads (locations without history are shuffled) and the
+ * successful location is remembered and used first next time the configuration
+ * is downloaded.
+ *
+ * The configuration directory is requested from the first location. If the
+ * location fails, the next one is tried immediately, and if the location has
+ * not responded within the hedge delay, the next location is requested in
+ * parallel. The first location to return a valid directory wins and the files
+ * are downloaded from it. A location that does not respond within the location
+ * timeout is abandoned.
+ *
+ * Multiple configuration sources can be downloaded in parallel, with a bounded
+ * number of sources being downloaded at a time.
  */
 @Slf4j
 class ConfigurationDownloader {
 
     public static final int READ_TIMEOUT = 30000;
 
+    private static final long UNKNOWN_LOCATION_RANK = Long.MAX_VALUE - 1;
+    private static final long FAILED_LOCATION_RANK = Long.MAX_VALUE;
+
+    private static final int MAX_LOCATION_LATENCIES = 1000;
+
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    // The directory download attempt run by the current thread
+    private static final ThreadLocal<Attempt> CURRENT_ATTEMPT = new ThreadLocal<>();
+
     protected final FileNameProvider fileNameProvider;
     protected final String[] instanceIdentifiers;
     private final int version;
 
-    private Map<ConfigurationSource, ConfigurationLocation>
-            lastSuccessfulLocation = new HashMap<>();
+    private final Map<ConfigurationSource, ConfigurationLocation>
+            lastSuccessfulLocation = new ConcurrentHashMap<>();
+
+    // Directory download latency in milliseconds of each location, keyed by
+    // the download URL, used for ordering the locations of a source. Failed
+    // locations are ranked last. The least recently measured locations are
+    // forgotten when there are more than MAX_LOCATION_LATENCIES locations.
+    // Like lastSuccessfulLocation, the latencies live as long as the
+    // configuration client, a restarted client ranks the locations again.
+    private final Map<String, Long> locationLatencies = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_LOCATION_LATENCIES;
+                }
+            });
+
+    private final ContentHashCache contentHashCache = new ContentHashCache();
+
+    private final long hedgeDelayMs =
+            SystemProperties.getConfigurationClientLocationHedgeDelayMs();
+    private final long locationTimeoutMs = TimeUnit.SECONDS.toMillis(
+            SystemProperties.getConfigurationClientLocationTimeoutSeconds());
+
+    private final ExecutorService locationExecutor =
+            createExecutor("conf-location", Integer.MAX_VALUE, new SynchronousQueue<>());
+    private final ExecutorService sourceExecutor =
+            createExecutor("conf-source", SystemProperties.getConfigurationClientDownloadParallelism(),
+                    new LinkedBlockingQueue<>());
 
     @Getter
     protected final Map<String, Set<ConfigurationSource>> additionalSources =
-            new HashMap<>();
+            new ConcurrentHashMap<>();
 
     ConfigurationDownloader(FileNameProvider fileNameProvider, int version,
             String... instanceIdentifiers) {
@@ -92,7 +164,34 @@ class ConfigurationDownloader {
     }
 
     ConfigurationParser getParser() {
-        return new ConfigurationParser(instanceIdentifiers);
+        return new ConfigurationParser(instanceIdentifiers) {
+            @Override
+            protected InputStream getInputStream() throws Exception {
+                return openDirectory(configuration.getLocation());
+            }
+        };
+    }
+
+    /**
+     * Opens the configuration directory of the location. The connection is
+     * disconnected if the directory download attempt is abandoned, so that
+     * the attempt does not stay blocked in reading until the read timeout.
+     * @param location the configuration location
+     * @return the input stream of the directory
+     */
+    InputStream openDirectory(ConfigurationLocation location) {
+        try {
+            URLConnection connection = ConfigurationLocation.getDownloadURLConnection(location.getDownloadURL());
+            Attempt attempt = CURRENT_ATTEMPT.get();
+
+            if (attempt != null) {
+                attempt.setConnection(connection);
+            }
+
+            return connection.getInputStream();
+        } catch (IOException e) {
+            throw new CodedException(X_HTTP_ERROR, e);
+        }
     }
 
     @SneakyThrows
@@ -100,6 +199,44 @@ class ConfigurationDownloader {
         return fileNameProvider.getFileName(file);
     }
 
+    /**
+     * Downloads the configuration from the given configuration sources in
+     * parallel. At most the configured number of sources are downloaded at
+     * the same time.
+     * @param sources the configuration sources
+     * @param contentIdentifiers the content identifier to include
+     * @return download results per configuration source, in the iteration
+     * order of the given sources
+     * @throws InterruptedException if the calling thread was interrupted while
+     * waiting for the downloads to complete
+     */
+    Map<ConfigurationSource, DownloadResult> downloadAll(
+            Collection<ConfigurationSource> sources,
+            String... contentIdentifiers) throws InterruptedException {
+        Map<ConfigurationSource, Future<DownloadResult>> downloads =
+                new LinkedHashMap<>();
+
+        for (ConfigurationSource source : sources) {
+            downloads.put(source, sourceExecutor.submit(
+                    () -> download(source, contentIdentifiers)));
+        }
+
+        Map<ConfigurationSource, DownloadResult> results = new LinkedHashMap<>();
+
+        try {
+            for (Map.Entry<ConfigurationSource, Future<DownloadResult>> download
+                    : downloads.entrySet()) {
+                results.put(download.getKey(), download.getValue().get());
+            }
+        } catch (ExecutionException e) {
+            throw translateException(e.getCause());
+        } finally {
+            downloads.values().forEach(f -> f.cancel(true));
+        }
+
+        return results;
+    }
+
     /**
      * Downloads the configuration from the given configuration source.
      * @param source the configuration source
@@ -109,15 +246,24 @@ class ConfigurationDownloader {
     DownloadResult download(ConfigurationSource source,
             String... contentIdentifiers) {
         DownloadResult result = new DownloadResult();
+        Deque<ConfigurationLocation> pending =
+                new ArrayDeque<>(getLocations(source));
+
+        while (!pending.isEmpty()) {
+            Configuration config =
+                    downloadDirectory(pending, contentIdentifiers, result);
+
+            if (config == null) {
+                break;
+            }
 
-        for (ConfigurationLocation location : getLocations(source)) {
             try {
-                Configuration config = download(location, contentIdentifiers);
+                downloadFiles(config);
 
-                rememberLastSuccessfulLocation(location);
+                rememberLastSuccessfulLocation(config.getLocation());
                 return result.success(config);
             } catch (Exception e) {
-                result.addFailure(location, e);
+                result.addFailure(config.getLocation(), e);
             }
         }
 
@@ -125,7 +271,7 @@ class ConfigurationDownloader {
         return result.failure();
     }
 
-    private void rememberLastSuccessfulLocation(ConfigurationLocation location) {
+    void rememberLastSuccessfulLocation(ConfigurationLocation location) {
         log.trace("rememberLastSuccessfulLocation source={} location={}", location.getSource(), location);
         lastSuccessfulLocation.put(location.getSource(), location);
     }
@@ -133,42 +279,164 @@ class ConfigurationDownloader {
     private List<ConfigurationLocation> getLocations(
             ConfigurationSource source) {
         List<ConfigurationLocation> result = new ArrayList<>();
-        List<ConfigurationLocation> randomized = new ArrayList<>();
+        List<ConfigurationLocation> ranked = new ArrayList<>();
 
         preferLastSuccessLocation(source, result);
 
-        randomized.addAll(source.getLocations());
-        Collections.shuffle(randomized);
-        result.addAll(randomized);
+        ranked.addAll(source.getLocations());
+        Collections.shuffle(ranked);
+        // stable sort, locations without history stay in random order
+        ranked.sort(Comparator.comparingLong(this::getRank));
+        result.addAll(ranked);
 
         result.removeIf(Objects::isNull);
 
-        return result;
+        // the anchor creates new location instances every time, so the
+        // locations are told apart by their download URLs
+        Map<String, ConfigurationLocation> unique = new LinkedHashMap<>();
+        result.forEach(l -> unique.putIfAbsent(l.getDownloadURL(), l));
+
+        return new ArrayList<>(unique.values());
+    }
+
+    private long getRank(ConfigurationLocation location) {
+        Long rank = locationLatencies.get(location.getDownloadURL());
+
+        return rank != null ? rank : UNKNOWN_LOCATION_RANK;
     }
 
     private void preferLastSuccessLocation(
             ConfigurationSource source, List<ConfigurationLocation> result) {
-        if (lastSuccessfulLocation != null) {
-            log.trace("preferLastSuccessLocation source={} location={}", source, lastSuccessfulLocation.get(source));
-            result.add(lastSuccessfulLocation.get(source));
-        } else {
-            log.trace("preferLastSuccessLocation lastSuccessfulLocation=null");
+        log.trace("preferLastSuccessLocation source={} location={}", source, lastSuccessfulLocation.get(source));
+        result.add(lastSuccessfulLocation.get(source));
+    }
+
+    // Races the directory download across the pending locations, returns the
+    // first successfully downloaded directory or null if all locations failed.
+    private Configuration downloadDirectory(
+            Deque<ConfigurationLocation> pending, String[] contentIdentifiers,
+            DownloadResult result) {
+        CompletionService<Configuration> completion =
+                new ExecutorCompletionService<>(locationExecutor);
+        Map<Future<Configuration>, Attempt> attempts = new HashMap<>();
+
+        try {
+            startAttempt(pending, contentIdentifiers, completion, attempts);
+
+            while (!attempts.isEmpty()) {
+                Future<Configuration> done = completion.poll(
+                        getWaitTime(attempts, !pending.isEmpty()),
+                        TimeUnit.MILLISECONDS);
+
+                if (done == null) {
+                    expireAttempts(attempts, result);
+
+                    // hedge, or replace the expired attempts
+                    startAttempt(pending, contentIdentifiers, completion, attempts);
+                    continue;
+                }
+
+                Attempt attempt = attempts.remove(done);
+
+                if (attempt == null) {
+                    continue; // completion of an expired attempt
+                }
+
+                try {
+                    Configuration configuration = done.get();
+
+                    locationLatencies.put(attempt.getLocation().getDownloadURL(),
+                            System.currentTimeMillis() - attempt.getStarted());
+
+                    return configuration;
+                } catch (ExecutionException e) {
+                    locationLatencies.put(attempt.getLocation().getDownloadURL(), FAILED_LOCATION_RANK);
+                    result.addFailure(attempt.getLocation(), toException(e.getCause()));
+
+                    // fail over to the next location immediately
+                    startAttempt(pending, contentIdentifiers, completion, attempts);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // the winner is known, abandon the remaining attempts
+            attempts.forEach((future, attempt) -> {
+                future.cancel(true);
+                attempt.abandon();
+            });
+        }
+
+        return null;
+    }
+
+    private void startAttempt(Deque<ConfigurationLocation> pending,
+            String[] contentIdentifiers,
+            CompletionService<Configuration> completion,
+            Map<Future<Configuration>, Attempt> attempts) {
+        ConfigurationLocation location = pending.poll();
+
+        if (location != null) {
+            Attempt attempt = new Attempt(location, System.currentTimeMillis());
+
+            attempts.put(completion.submit(
+                    () -> attempt.run(() -> downloadDirectory(location, contentIdentifiers))),
+                    attempt);
+        }
+    }
+
+    private long getWaitTime(Map<Future<Configuration>, Attempt> attempts,
+            boolean canHedge) {
+        long next = Long.MAX_VALUE;
+        long latestStart = 0;
+
+        for (Attempt attempt : attempts.values()) {
+            next = Math.min(next, attempt.getStarted() + locationTimeoutMs);
+            latestStart = Math.max(latestStart, attempt.getStarted());
+        }
+
+        if (canHedge) {
+            next = Math.min(next, latestStart + hedgeDelayMs);
+        }
+
+        return Math.max(0, next - System.currentTimeMillis());
+    }
+
+    private void expireAttempts(Map<Future<Configuration>, Attempt> attempts,
+            DownloadResult result) {
+        long now = System.currentTimeMillis();
+
+        for (Iterator<Map.Entry<Future<Configuration>, Attempt>> it =
+                attempts.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Future<Configuration>, Attempt> entry = it.next();
+            ConfigurationLocation location = entry.getValue().getLocation();
+
+            if (now - entry.getValue().getStarted() >= locationTimeoutMs) {
+                log.warn("Downloading configuration from {} timed out", location.getDownloadURL());
+
+                entry.getKey().cancel(true);
+                entry.getValue().abandon();
+                it.remove();
+
+                locationLatencies.put(location.getDownloadURL(), FAILED_LOCATION_RANK);
+                result.addFailure(location, new CodedException(X_NETWORK_ERROR,
+                        "Downloading configuration from %s timed out", location.getDownloadURL()));
+            }
         }
     }
 
-    Configuration download(ConfigurationLocation location,
+    Configuration downloadDirectory(ConfigurationLocation location,
             String[] contentIdentifiers) throws Exception {
         log.info("Downloading configuration from {}",
                 location.getDownloadURL());
 
-        additionalSources.clear();
+        return getParser().parse(location, contentIdentifiers);
+    }
 
-        Configuration configuration =
-                getParser().parse(location, contentIdentifiers);
+    void downloadFiles(Configuration configuration) {
+        additionalSources.clear();
 
         configuration.eachFile(this::handle);
-
-        return configuration;
     }
 
     @SneakyThrows
@@ -180,16 +448,17 @@ class ConfigurationDownloader {
 
         Path contentFileName = getFileName(file);
         if (shouldDownload(file, contentFileName)) {
-            byte[] content = downloadContent(location, file);
-
-            verifyContent(content, file);
-            handleContent(content, file);
+            try (DownloadedContent content = downloadContent(location, file)) {
+                verifyContent(content, file);
+                handleContent(content, file);
 
-            persistContent(content, contentFileName, file);
+                persistContent(content, contentFileName, file);
+            }
         } else {
             log.trace("{} is up to date", file.getContentLocation());
 
             updateExpirationDate(contentFileName, file);
+            updateImage(contentFileName, file);
         }
     }
 
@@ -201,7 +470,7 @@ class ConfigurationDownloader {
 
         if (Files.exists(file)) {
             String contentHash = configurationFile.getHash();
-            String existingHash = encodeBase64(hash(file,
+            String existingHash = encodeBase64(contentHashCache.getHash(file,
                     configurationFile.getHashAlgorithmId()));
             if (!StringUtils.equals(existingHash, contentHash)) {
                 log.trace("Downloading {} because file has changed ({} != {})",
@@ -218,24 +487,21 @@ class ConfigurationDownloader {
         return true;
     }
 
-    byte[] downloadContent(ConfigurationLocation location,
+    DownloadedContent downloadContent(ConfigurationLocation location,
             ConfigurationFile file) throws Exception {
         URLConnection connection = getDownloadURLConnection(getDownloadURL(location, file));
         log.info("Downloading content from {}", connection.getURL());
         try (InputStream in = connection.getInputStream()) {
-            return IOUtils.toByteArray(in);
+            return DownloadedContent.save(in, file.getHashAlgorithmId());
         }
     }
 
-    void verifyContent(byte[] content, ConfigurationFile file)
+    void verifyContent(DownloadedContent content, ConfigurationFile file)
             throws Exception {
-        String algoId = getAlgorithmId(file.getHashAlgorithmId());
-        log.trace("verifyContent({}, {})", file.getHash(), algoId);
-
-        DigestCalculator dc = createDigestCalculator(algoId);
-        dc.getOutputStream().write(content);
+        log.trace("verifyContent({}, {})", file.getHash(), file.getHashAlgorithmId());
 
-        byte[] hash = dc.getDigest();
+        // The hash has been calculated while the content was downloaded
+        byte[] hash = content.getHash();
         if (!Arrays.equals(hash, decodeBase64(file.getHash()))) {
             log.trace("Content {} hash {} does not match expected hash {}",
                     new Object[] {
@@ -245,18 +511,20 @@ class ConfigurationDownloader {
         }
     }
 
-    void handleContent(byte[] content, ConfigurationFile file)
+    void handleContent(DownloadedContent content, ConfigurationFile file)
             throws Exception {
         switch (file.getContentIdentifier()) {
             case ConfigurationConstants.CONTENT_ID_PRIVATE_PARAMETERS:
                 PrivateParametersV2 privateParameters = new PrivateParametersV2();
-                privateParameters.load(content);
+                privateParameters.loadContent(content.getFile());
                 handlePrivateParameters(privateParameters, file);
+                content.setParameters(privateParameters);
                 break;
             case ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS:
                 SharedParametersV2 sharedParameters = new SharedParametersV2();
-                sharedParameters.load(content);
+                sharedParameters.loadContent(content.getFile());
                 handleSharedParameters(sharedParameters, file);
+                content.setParameters(sharedParameters);
                 break;
             default: // do nothing
                 break;
@@ -294,11 +562,72 @@ class ConfigurationDownloader {
                 file);
     }
 
-    void persistContent(byte[] content, Path destination,
+    void persistContent(DownloadedContent content, Path destination,
             ConfigurationFile file) throws Exception {
         log.info("Saving {} to {}", file, destination);
 
-        ConfigurationDirectory.save(destination, content, file.getMetadata());
+        ConfigurationDirectory.save(destination, content.getFile(), file.getMetadata());
+
+        // Remember the hash of the saved content, so that it need not be calculated on the next download
+        contentHashCache.put(destination, file.getHashAlgorithmId(), content.getHash());
+
+        if (content.getParameters() != null) {
+            writeImage(destination, content.getParameters());
+        } else {
+            ParametersImage.delete(destination);
+        }
+    }
+
+    /**
+     * Writes the binary image of an up-to-date parameters file, if the image is missing or out of date (for
+     * example, after the image format has changed).
+     */
+    void updateImage(Path destination, ConfigurationFile file) {
+        AbstractXmlConf<?> parameters;
+
+        switch (file.getContentIdentifier()) {
+            case ConfigurationConstants.CONTENT_ID_PRIVATE_PARAMETERS:
+                parameters = new PrivateParametersV2();
+                break;
+            case ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS:
+                parameters = new SharedParametersV2();
+                break;
+            default:
+                return;
+        }
+
+        if (ParametersImage.isCurrent(destination, parameters.getClass())) {
+            return;
+        }
+
+        try {
+            parameters.loadContent(destination);
+        } catch (Exception e) {
+            log.error("Failed to update image of {}", destination, e);
+
+            return;
+        }
+
+        writeImage(destination, parameters);
+    }
+
+    private static void writeImage(Path destination, AbstractXmlConf<?> parameters) {
+        // The image only speeds up loading the configuration, it is not an error if it cannot be written
+        try {
+            ParametersImage.write(destination, parameters);
+        } catch (Exception e) {
+            log.error("Failed to write image of {}", destination, e);
+
+            ParametersImage.delete(destination);
+        }
+    }
+
+    /**
+     * Forgets the cached hash of a configuration file that has been deleted.
+     * @param file the deleted file
+     */
+    void forgetFile(Path file) {
+        contentHashCache.remove(file);
     }
 
     void updateExpirationDate(Path destination, ConfigurationFile file)
@@ -330,12 +659,82 @@ class ConfigurationDownloader {
 
     public static URLConnection getDownloadURLConnection(URL url) throws IOException {
         URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(ConfigurationLocation.CONNECT_TIMEOUT);
         connection.setReadTimeout(READ_TIMEOUT);
         return connection;
     }
 
     // ------------------------------------------------------------------------
 
+    private static Exception toException(Throwable t) {
+        return t instanceof Exception ? (Exception) t : new RuntimeException(t);
+    }
+
+    private static ExecutorService createExecutor(String name, int maxThreads,
+            BlockingQueue<Runnable> queue) {
+        AtomicInteger threadCount = new AtomicInteger();
+        int coreThreads = queue instanceof SynchronousQueue ? 0 : maxThreads;
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreThreads, maxThreads,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, r -> {
+                    Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(coreThreads > 0);
+
+        return executor;
+    }
+
+    private static final class Attempt {
+        @Getter
+        private final ConfigurationLocation location;
+        @Getter
+        private final long started;
+
+        private URLConnection connection;
+        private boolean abandoned;
+
+        Attempt(ConfigurationLocation location, long started) {
+            this.location = location;
+            this.started = started;
+        }
+
+        Configuration run(Callable<Configuration> download) throws Exception {
+            CURRENT_ATTEMPT.set(this);
+
+            try {
+                return download.call();
+            } finally {
+                CURRENT_ATTEMPT.remove();
+            }
+        }
+
+        synchronized void setConnection(URLConnection connection) {
+            this.connection = connection;
+
+            if (abandoned) {
+                disconnect(connection);
+            }
+        }
+
+        // Interrupting the thread does not interrupt a blocking read, closing the connection does
+        synchronized void abandon() {
+            abandoned = true;
+
+            if (connection != null) {
+                disconnect(connection);
+            }
+        }
+
+        private static void disconnect(URLConnection connection) {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+    }
+
     static byte[] hash(Path file, String algoId) throws Exception {
         DigestCalculator dc = createDigestCalculator(getAlgorithmId(algoId));
 
@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the content hashes of configuration files on disk. A cached hash is used for as long as the size and the
+ * modification time of the file stay the same, otherwise the hash is calculated again from the file content.
+ */
+@Slf4j
+class ContentHashCache {
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the hash of the given file.
+     * @param file the file
+     * @param hashAlgorithmId the identifier of the hash algorithm
+     * @return the hash of the file content
+     * @throws Exception if the file cannot be read
+     */
+    byte[] getHash(Path file, String hashAlgorithmId) throws Exception {
+        BasicFileAttributes attributes = readAttributes(file);
+        Entry entry = entries.get(file);
+
+        if (entry != null && entry.matches(attributes, hashAlgorithmId)) {
+            return entry.getHash();
+        }
+
+        log.trace("Calculating hash of {}", file);
+
+        byte[] hash = ConfigurationDownloader.hash(file, hashAlgorithmId);
+        entries.put(file, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                hashAlgorithmId, hash));
+
+        return hash;
+    }
+
+    /**
+     * Records the hash of a file whose content is known, e.g. one that has just been written.
+     * @param file the file
+     * @param hashAlgorithmId the identifier of the hash algorithm
+     * @param hash the hash of the file content
+     * @throws IOException if the file attributes cannot be read
+     */
+    void put(Path file, String hashAlgorithmId, byte[] hash) throws IOException {
+        BasicFileAttributes attributes = readAttributes(file);
+
+        entries.put(file, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                hashAlgorithmId, hash));
+    }
+
+    /**
+     * Removes the cached hash of the given file.
+     * @param file the file
+     */
+    void remove(Path file) {
+        entries.remove(file);
+    }
+
+    private static BasicFileAttributes readAttributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    @Value
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String hashAlgorithmId;
+        private final byte[] hash;
+
+        boolean matches(BasicFileAttributes attributes, String algorithmId) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && hashAlgorithmId.equals(algorithmId);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.DefaultFilepaths;
+import ee.ria.xroad.common.conf.AbstractXmlConf;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.operator.DigestCalculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static ee.ria.xroad.common.util.CryptoUtils.createDigestCalculator;
+import static ee.ria.xroad.common.util.CryptoUtils.getAlgorithmId;
+
+/**
+ * Content of a configuration file that has been streamed to a temporary file. The digest of the content is
+ * calculated while the content is being written, so the content never has to be held in memory or read again
+ * for verification. The temporary file is removed when this object is closed, unless it has been moved to its
+ * final location.
+ */
+@Slf4j
+@Getter
+class DownloadedContent implements Closeable {
+
+    private static final String TEMP_FILE_PREFIX = "conf";
+
+    private final Path file;
+    private final byte[] hash;
+
+    // The parameters parsed from the content, if the content is a parameters file
+    @Setter(AccessLevel.PACKAGE)
+    private AbstractXmlConf<?> parameters;
+
+    private DownloadedContent(Path file, byte[] hash) {
+        this.file = file;
+        this.hash = hash;
+    }
+
+    /**
+     * Writes the given stream to a temporary file, calculating the digest of the content on the fly.
+     * @param in the content stream
+     * @param hashAlgorithmId the identifier of the hash algorithm used for calculating the digest
+     * @return the downloaded content
+     * @throws Exception if writing the content fails
+     */
+    static DownloadedContent save(InputStream in, String hashAlgorithmId) throws Exception {
+        DigestCalculator dc = createDigestCalculator(getAlgorithmId(hashAlgorithmId));
+        Path tempFile = DefaultFilepaths.createTempFile(TEMP_FILE_PREFIX, null);
+
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile);
+                    OutputStream digest = dc.getOutputStream()) {
+                byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+                int count;
+
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                    digest.write(buffer, 0, count);
+                }
+            }
+
+            return new DownloadedContent(tempFile, dc.getDigest());
+        } catch (Exception e) {
+            Files.deleteIfExists(tempFile);
+
+            throw e;
+        }
+    }
+
+    /**
+     * @return a new stream for reading the content
+     * @throws IOException if the content cannot be opened
+     */
+    InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Failed to delete temporary file {}", file, e);
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -64,12 +65,21 @@ class DownloadedFiles {
         downloadedFileList.addAll(files);
     }
 
-    void sync() throws Exception {
+    /**
+     * Deletes the files in the configuration directory that were not downloaded, and saves the list of the
+     * downloaded files.
+     * @param deleted called with each deleted file
+     * @throws Exception in case of any errors
+     */
+    void sync(Consumer<Path> deleted) throws Exception {
         log.debug("sync({})", downloadedFileList);
 
         try (Stream<Path> paths = excludeMetadataAndDirs(Files.walk(confDir))) {
             paths.filter(f -> !downloadedFileList.contains(f.toString()))
-                    .forEach(this::delete);
+                    .forEach(f -> {
+                        delete(f);
+                        deleted.accept(f);
+                    });
         }
 
         save();
@@ -79,7 +89,8 @@ class DownloadedFiles {
         return stream.filter(Files::isRegularFile)
                 .filter(p -> !p.endsWith(ConfigurationDirectory.FILES))
                 .filter(p -> !p.endsWith(ConfigurationDirectory.INSTANCE_IDENTIFIER_FILE))
-                .filter(p -> !p.toString().endsWith(ConfigurationDirectory.METADATA_SUFFIX));
+                .filter(p -> !p.toString().endsWith(ConfigurationDirectory.METADATA_SUFFIX))
+                .filter(p -> !p.toString().endsWith(ParametersImage.IMAGE_SUFFIX));
     }
 
     void delete(Path path) {
@@ -29,7 +29,7 @@ import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.TestCertUtil;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.FileInputStream;
@@ -55,6 +55,14 @@ import static org.junit.Assert.fail;
 @Slf4j
 public class ConfigurationClientTest {
 
+    /**
+     * Downloaded content is streamed to temporary files.
+     */
+    @BeforeClass
+    public static void setUpTempFilesPath() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+    }
+
     /**
      * Test to ensure a simple configuration will be downloaded.
      *
@@ -187,7 +195,7 @@ public class ConfigurationClientTest {
             }
 
             @Override
-            void persistContent(byte[] content, Path destination, ConfigurationFile file) throws Exception {
+            void persistContent(DownloadedContent content, Path destination, ConfigurationFile file) throws Exception {
                 receivedParts.add(file.getContentIdentifier());
             }
 
@@ -196,10 +204,11 @@ public class ConfigurationClientTest {
             }
 
             @Override
-            byte[] downloadContent(ConfigurationLocation location, ConfigurationFile file) throws Exception {
+            DownloadedContent downloadContent(ConfigurationLocation location, ConfigurationFile file)
+                    throws Exception {
                 try (InputStream in = Files.newInputStream(
                         Paths.get(confPath, file.getInstanceIdentifier(), file.getContentLocation()))) {
-                    return IOUtils.toByteArray(in);
+                    return DownloadedContent.save(in, file.getHashAlgorithmId());
                 }
             }
         };
@@ -25,23 +25,35 @@
 package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.CryptoUtils;
 
 import lombok.Getter;
 import lombok.Value;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
+import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -51,6 +63,18 @@ import static org.junit.Assert.assertTrue;
 public class ConfigurationDownloaderTest {
     private static final int MAX_ATTEMPTS = 5;
     private static final String LOCATION_URL_SUCCESS = "http://www.example.com/SUCCESS";
+    private static final String HASH_ALGORITHM_ID = "http://www.w3.org/2001/04/xmlenc#sha512";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Downloaded content is streamed to temporary files.
+     */
+    @BeforeClass
+    public static void setUpTempFilesPath() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+    }
 
     /**
      * For better HA, the order of sources to be tried to download configuration
@@ -99,6 +123,27 @@ public class ConfigurationDownloaderTest {
         }
     }
 
+    /**
+     * Checks that the locations that failed in a previous download are tried after the locations without
+     * history, even though the source creates new location instances for every download.
+     */
+    @Test
+    public void rankFailedLocationsLastInNextDownload() {
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            ConfigurationDownloader downloader = getDownloader(LOCATION_URL_SUCCESS);
+
+            downloader.download(getSource(getAllFailedLocationUrls()));
+            resetParser(downloader);
+
+            List<String> locationUrls = getAllFailedLocationUrls();
+            locationUrls.add(LOCATION_URL_SUCCESS);
+            downloader.download(getSource(locationUrls));
+
+            assertEquals(Collections.singletonList(LOCATION_URL_SUCCESS),
+                    getParser(downloader).getConfigurationUrls());
+        }
+    }
+
     /**
      * Checks that ConfigurationDownloader uses connections that timeout
      * after a period of time.
@@ -112,6 +157,47 @@ public class ConfigurationDownloaderTest {
         assertTrue(connection.getReadTimeout() > 0);
     }
 
+    /**
+     * Checks that downloaded content is written to a temporary file and hashed on the fly.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void downloadedContentIsHashedWhileSaved() throws Exception {
+        byte[] data = "configuration content".getBytes(StandardCharsets.UTF_8);
+        Path tempFile;
+
+        try (DownloadedContent content = DownloadedContent.save(new ByteArrayInputStream(data),
+                HASH_ALGORITHM_ID)) {
+            tempFile = content.getFile();
+
+            assertArrayEquals(data, Files.readAllBytes(tempFile));
+            assertArrayEquals(CryptoUtils.calculateDigest(CryptoUtils.SHA512_ID, data), content.getHash());
+        }
+
+        assertFalse(Files.exists(tempFile));
+    }
+
+    /**
+     * Checks that the hash of an existing file is recalculated only when the file has been modified.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void existingFileHashIsCachedUntilModified() throws Exception {
+        Path file = tmp.newFile().toPath();
+        Files.write(file, "original".getBytes(StandardCharsets.UTF_8));
+
+        ContentHashCache cache = new ContentHashCache();
+        byte[] hash = cache.getHash(file, HASH_ALGORITHM_ID);
+
+        assertArrayEquals(ConfigurationDownloader.hash(file, HASH_ALGORITHM_ID), hash);
+        assertSame(hash, cache.getHash(file, HASH_ALGORITHM_ID));
+
+        Files.write(file, "modified content".getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(ConfigurationDownloader.hash(file, HASH_ALGORITHM_ID),
+                cache.getHash(file, HASH_ALGORITHM_ID));
+    }
+
     private void resetParser(ConfigurationDownloader downloader) {
         getParser(downloader).reset();
     }
@@ -267,7 +353,8 @@ public class ConfigurationDownloaderTest {
         }
 
         private ConfigurationLocation getLocation(String url) {
-            return new ConfigurationLocation(this, url, new ArrayList<>());
+            // like the anchor, creates new instances of the locations and their certificates on every call
+            return new ConfigurationLocation(this, url, Collections.singletonList(new byte[] {1}));
         }
     }
 
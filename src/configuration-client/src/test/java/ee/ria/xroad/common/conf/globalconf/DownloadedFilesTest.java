@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for DownloadedFiles
+ */
+public class DownloadedFilesTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path confDir;
+    private DownloadedFiles downloadedFiles;
+
+    /**
+     * Creates the configuration directory.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        confDir = tmp.newFolder().toPath();
+        downloadedFiles = new DownloadedFiles(confDir.toString());
+    }
+
+    /**
+     * Checks that the files not downloaded are deleted and reported as deleted.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void syncDeletesFilesNotDownloaded() throws Exception {
+        Path downloaded = createFile("EE/shared-params.xml");
+        Path removed = createFile("FI/shared-params.xml");
+
+        downloadedFiles.add(Collections.singleton(downloaded.toString()));
+
+        List<Path> deleted = new ArrayList<>();
+        downloadedFiles.sync(deleted::add);
+
+        assertTrue(Files.exists(downloaded));
+        assertFalse(Files.exists(removed));
+        assertEquals(Collections.singletonList(removed), deleted);
+    }
+
+    /**
+     * Checks that the binary images of the downloaded files survive a sync, and are deleted with their files.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void syncKeepsImagesOfDownloadedFiles() throws Exception {
+        Path downloaded = createFile("EE/shared-params.xml");
+        Path downloadedImage = createFile("EE/shared-params.xml" + ParametersImage.IMAGE_SUFFIX);
+        Path removed = createFile("FI/shared-params.xml");
+        Path removedImage = createFile("FI/shared-params.xml" + ParametersImage.IMAGE_SUFFIX);
+
+        downloadedFiles.add(Collections.singleton(downloaded.toString()));
+        downloadedFiles.sync(f -> { });
+
+        assertTrue(Files.exists(downloadedImage));
+        assertFalse(Files.exists(removed));
+        assertFalse(Files.exists(removedImage));
+    }
+
+    private Path createFile(String name) throws Exception {
+        Path file = confDir.resolve(name);
+
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[] {1});
+
+        return file;
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Value;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests parallel, hedged configuration downloads against local HTTP stub servers that inject delays and failures.
+ */
+public class ParallelConfigurationDownloadTest {
+
+    private static final int HEDGE_DELAY_MS = 200;
+    private static final int LOCATION_TIMEOUT_SECONDS = 1;
+    private static final int PARALLELISM = 2;
+
+    private static final int SLOW_RESPONSE_MS = 5000;
+    private static final int DELAYED_RESPONSE_MS = 400;
+    private static final int STALLED_BYTE_INTERVAL_MS = 50;
+
+    // Concurrency of the delayed location requests
+    private static final AtomicInteger ACTIVE_REQUESTS = new AtomicInteger();
+    private static final AtomicInteger MAX_ACTIVE_REQUESTS = new AtomicInteger();
+
+    // Counted down when the client of a stalled response has disconnected
+    private static volatile CountDownLatch stalledDisconnected = new CountDownLatch(1);
+
+    private static HttpServer server;
+    private static String baseUrl;
+
+    /**
+     * Starts the stub server.
+     * @throws IOException if the server cannot be started
+     */
+    @BeforeClass
+    public static void startServer() throws IOException {
+        System.setProperty(SystemProperties.CONFIGURATION_CLIENT_LOCATION_HEDGE_DELAY_MS,
+                String.valueOf(HEDGE_DELAY_MS));
+        System.setProperty(SystemProperties.CONFIGURATION_CLIENT_LOCATION_TIMEOUT_SECONDS,
+                String.valueOf(LOCATION_TIMEOUT_SECONDS));
+        System.setProperty(SystemProperties.CONFIGURATION_CLIENT_DOWNLOAD_PARALLELISM,
+                String.valueOf(PARALLELISM));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> respond(exchange, 200, 0));
+        server.createContext("/fail", exchange -> respond(exchange, 500, 0));
+        server.createContext("/slow", exchange -> respond(exchange, 200, SLOW_RESPONSE_MS));
+        server.createContext("/delayed", exchange -> {
+            MAX_ACTIVE_REQUESTS.accumulateAndGet(ACTIVE_REQUESTS.incrementAndGet(), Math::max);
+
+            try {
+                respond(exchange, 200, DELAYED_RESPONSE_MS);
+            } finally {
+                ACTIVE_REQUESTS.decrementAndGet();
+            }
+        });
+        server.createContext("/stalled", ParallelConfigurationDownloadTest::respondStalled);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the stub server.
+     */
+    @AfterClass
+    public static void stopServer() {
+        server.stop(0);
+
+        System.clearProperty(SystemProperties.CONFIGURATION_CLIENT_LOCATION_HEDGE_DELAY_MS);
+        System.clearProperty(SystemProperties.CONFIGURATION_CLIENT_LOCATION_TIMEOUT_SECONDS);
+        System.clearProperty(SystemProperties.CONFIGURATION_CLIENT_DOWNLOAD_PARALLELISM);
+    }
+
+    /**
+     * A location that does not respond within the hedge delay is raced by the next location.
+     */
+    @Test
+    public void hedgedRequestWinsOverSlowLocation() {
+        ConfigurationDownloader downloader = getDownloader();
+        TestConfigurationSource source = new TestConfigurationSource(Arrays.asList(url("/slow"), url("/ok")));
+
+        downloader.rememberLastSuccessfulLocation(source.getLocations().get(0));
+
+        long start = System.currentTimeMillis();
+        DownloadResult result = downloader.download(source);
+
+        assertTrue(result.isSuccess());
+        assertEquals(url("/ok"), result.getConfiguration().getLocation().getDownloadURL());
+        assertTrue(System.currentTimeMillis() - start < SLOW_RESPONSE_MS);
+    }
+
+    /**
+     * The connection of an abandoned attempt is disconnected, instead of the attempt reading until the read timeout.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void abandonedAttemptIsDisconnected() throws Exception {
+        ConfigurationDownloader downloader = getDownloader();
+        TestConfigurationSource source = new TestConfigurationSource(Arrays.asList(url("/stalled"), url("/ok")));
+
+        downloader.rememberLastSuccessfulLocation(source.getLocations().get(0));
+        stalledDisconnected = new CountDownLatch(1);
+
+        DownloadResult result = downloader.download(source);
+
+        assertTrue(result.isSuccess());
+        assertEquals(url("/ok"), result.getConfiguration().getLocation().getDownloadURL());
+        assertTrue(stalledDisconnected.await(SLOW_RESPONSE_MS / 2, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * A failing location is followed by the next location without waiting for the hedge delay.
+     */
+    @Test
+    public void failedLocationFallsOverToNextLocation() {
+        ConfigurationDownloader downloader = getDownloader();
+        TestConfigurationSource source = new TestConfigurationSource(Arrays.asList(url("/fail"), url("/ok")));
+
+        downloader.rememberLastSuccessfulLocation(source.getLocations().get(0));
+
+        DownloadResult result = downloader.download(source);
+
+        assertTrue(result.isSuccess());
+        assertEquals(url("/ok"), result.getConfiguration().getLocation().getDownloadURL());
+        assertEquals(1, result.getExceptions().size());
+    }
+
+    /**
+     * A location that does not respond within the location timeout is abandoned.
+     */
+    @Test
+    public void slowLocationTimesOut() {
+        ConfigurationDownloader downloader = getDownloader();
+        TestConfigurationSource source = new TestConfigurationSource(Arrays.asList(url("/slow")));
+
+        long start = System.currentTimeMillis();
+        DownloadResult result = downloader.download(source);
+
+        assertFalse(result.isSuccess());
+        assertTrue(System.currentTimeMillis() - start < SLOW_RESPONSE_MS);
+
+        Exception e = result.getExceptions().values().iterator().next();
+        assertTrue(e instanceof CodedException);
+        assertEquals(X_NETWORK_ERROR, ((CodedException) e).getFaultCode());
+    }
+
+    /**
+     * Multiple sources are downloaded in parallel, but no more than the configured number at a time.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void sourcesAreDownloadedWithBoundedParallelism() throws Exception {
+        ConfigurationDownloader downloader = getDownloader();
+        List<ConfigurationSource> sources = new ArrayList<>();
+
+        for (int i = 0; i < PARALLELISM * 2; i++) {
+            sources.add(new TestConfigurationSource(Arrays.asList(url("/delayed?source=" + i))));
+        }
+
+        MAX_ACTIVE_REQUESTS.set(0);
+
+        long start = System.currentTimeMillis();
+        Map<ConfigurationSource, DownloadResult> results = downloader.downloadAll(sources);
+        long duration = System.currentTimeMillis() - start;
+
+        assertEquals(sources.size(), results.size());
+        results.values().forEach(result -> assertTrue(result.isSuccess()));
+
+        assertEquals(PARALLELISM, MAX_ACTIVE_REQUESTS.get());
+        assertTrue(duration >= DELAYED_RESPONSE_MS * 2);
+        assertTrue(duration < DELAYED_RESPONSE_MS * sources.size());
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static String url(String path) {
+        return baseUrl + path;
+    }
+
+    private static void respond(HttpExchange exchange, int status, int delayMs) throws IOException {
+        try {
+            Thread.sleep(delayMs);
+
+            byte[] body = "directory".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Sends the response a byte at a time, until the client disconnects
+    private static void respondStalled(HttpExchange exchange) throws IOException {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 0);
+
+            for (int i = 0; i < SLOW_RESPONSE_MS / STALLED_BYTE_INTERVAL_MS; i++) {
+                out.write('d');
+                out.flush();
+
+                Thread.sleep(STALLED_BYTE_INTERVAL_MS);
+            }
+        } catch (IOException e) {
+            stalledDisconnected.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static ConfigurationDownloader getDownloader() {
+        return new ConfigurationDownloader(file -> null, SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION) {
+            @Override
+            ConfigurationParser getParser() {
+                return new ConfigurationParser() {
+                    @Override
+                    public Configuration parse(ConfigurationLocation location,
+                            String... contentIdentifiersToBeHandled) throws Exception {
+                        // Only the transfer is of interest here, the content is not parsed
+                        try (InputStream in = openDirectory(location)) {
+                            IOUtils.toByteArray(in);
+                        }
+
+                        return new Configuration(location);
+                    }
+                };
+            }
+        };
+    }
+
+    @Value
+    private static class TestConfigurationSource implements ConfigurationSource {
+
+        private final List<String> locationUrls;
+
+        @Override
+        public String getInstanceIdentifier() {
+            return "EE";
+        }
+
+        @Override
+        public List<ConfigurationLocation> getLocations() {
+            List<ConfigurationLocation> result = new ArrayList<>(locationUrls.size());
+
+            locationUrls.forEach(url -> result.add(new ConfigurationLocation(this, url, new ArrayList<>())));
+
+            return result;
+        }
+
+        @Override
+        public boolean hasChanged() {
+            return false;
+        }
+    }
+}
@@ -64,6 +64,20 @@ final class OpMonitorDaemonDatabaseCtx {
         return CTX.doInTransaction(callback);
     }
 
+    /**
+     * Convenience method for executing a database operation in a transaction
+     * recorded under the given operation name.
+     * @param <T> the type of result
+     * @param operation name of the operation
+     * @param callback the callback
+     * @return the result
+     * @throws Exception if an error occurs
+     */
+    static <T> T doInTransaction(String operation,
+            TransactionCallback<T> callback) throws Exception {
+        return CTX.doInTransaction(operation, callback);
+    }
+
     private static class StringValueTruncator extends EmptyInterceptor {
         private static final long serialVersionUID = 1L;
 
@@ -91,7 +91,7 @@ final class OperationalDataRecordCleaner extends UntypedActor {
     static int cleanRecords(DateTime before) throws Exception {
         log.trace("cleanRecords({})", before);
 
-        return doInTransaction(session -> {
+        return doInTransaction("cleanRecords", session -> {
             String hql =
                     "delete OperationalDataRecord r where r.monitoringDataTs < "
                     + TimeUnit.MILLISECONDS.toSeconds(before.getMillis());
@@ -59,11 +59,11 @@ final class OperationalDataRecordManager {
     }
 
     static void storeRecords(List<OperationalDataRecord> records, long timestamp) throws Exception {
-        doInTransaction(session -> storeInTransaction(session, records, timestamp));
+        doInTransaction("storeRecords", session -> storeInTransaction(session, records, timestamp));
     }
 
     static OperationalDataRecords queryAllRecords() throws Exception {
-        return doInTransaction(OperationalDataRecordManager::queryAllOperationalDataInTransaction);
+        return doInTransaction("queryAllRecords", OperationalDataRecordManager::queryAllOperationalDataInTransaction);
     }
 
     static OperationalDataRecords queryRecords(long recordsFrom, long recordsTo) throws Exception {
@@ -77,8 +77,9 @@ final class OperationalDataRecordManager {
 
     static OperationalDataRecords queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
             ClientId serviceProviderFilter, Set<String> outputFields) throws Exception {
-        OperationalDataRecords records = doInTransaction(session -> queryOperationalDataInTransaction(session,
-                recordsFrom, recordsTo, clientFilter, serviceProviderFilter, outputFields));
+        OperationalDataRecords records = doInTransaction("queryRecords",
+                session -> queryOperationalDataInTransaction(session, recordsFrom, recordsTo, clientFilter,
+                        serviceProviderFilter, outputFields));
 
         removeMonitoringDataTsIfNotSpecified(records, outputFields);
 
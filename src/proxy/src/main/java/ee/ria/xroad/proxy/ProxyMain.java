@@ -34,6 +34,7 @@ import ee.ria.xroad.common.SystemPropertiesLoader;
 import ee.ria.xroad.common.Version;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.signature.BatchSigner;
 import ee.ria.xroad.common.util.AdminPort;
@@ -44,6 +45,7 @@ import ee.ria.xroad.common.util.healthcheck.HealthCheckPort;
 import ee.ria.xroad.proxy.addon.AddOn;
 import ee.ria.xroad.proxy.clientproxy.ClientProxy;
 import ee.ria.xroad.proxy.messagelog.MessageLog;
+import ee.ria.xroad.proxy.messagelog.MessageLogSpool;
 import ee.ria.xroad.proxy.opmonitoring.OpMonitoring;
 import ee.ria.xroad.proxy.serverproxy.ServerProxy;
 import ee.ria.xroad.proxy.util.CertHashBasedOcspResponder;
@@ -198,6 +200,11 @@ public final class ProxyMain {
             SERVICES.add(new HealthCheckPort());
         }
         jobManager.registerRepeatingJob(GlobalConfUpdater.class, GLOBAL_CONF_UPDATE_REPEAT_INTERVAL);
+
+        if (MessageLogProperties.isAsyncResponseLoggingSpoolEnabled()) {
+            jobManager.registerRepeatingJob(MessageLogSpool.RetryJob.class,
+                    MessageLogProperties.getSpoolRetryInterval());
+        }
     }
 
     private static void loadConfigurations() {
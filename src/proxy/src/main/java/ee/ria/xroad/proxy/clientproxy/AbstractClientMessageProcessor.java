@@ -40,7 +40,10 @@ import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.proxy.ProxyMain;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.EqualsAndHashCode;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.protocol.HttpClientContext;
@@ -69,6 +72,16 @@ import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocket
 @Slf4j
 abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
 
+    private static final int SERVICE_ADDRESSES_CACHE_SIZE = 10000;
+
+    /**
+     * Addresses of the service providers, keyed by the global configuration version they were built from, so that
+     * a configuration change is picked up without invalidating the cache.
+     */
+    private static final Cache<ServiceAddressesKey, List<URI>> SERVICE_ADDRESSES_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(SERVICE_ADDRESSES_CACHE_SIZE)
+            .build();
+
     protected final IsAuthenticationData clientCert;
     protected final OpMonitoringData opMonitoringData;
 
@@ -137,6 +150,23 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
             throws Exception {
         log.trace("getServiceAddresses({}, {})", serviceProvider, serverId);
 
+        ServiceAddressesKey key = new ServiceAddressesKey(serviceProvider.getClientId(), serverId,
+                GlobalConf.getVersion());
+        List<URI> addresses = SERVICE_ADDRESSES_CACHE.getIfPresent(key);
+
+        if (addresses == null) {
+            addresses = Collections.unmodifiableList(buildServiceAddresses(serviceProvider, serverId));
+
+            SERVICE_ADDRESSES_CACHE.put(key, addresses);
+            ProviderAddressResolver.getInstance().prefetch(addresses);
+        }
+
+        // the caller may reorder the addresses
+        return new ArrayList<>(addresses);
+    }
+
+    private static List<URI> buildServiceAddresses(ServiceId serviceProvider, SecurityServerId serverId)
+            throws Exception {
         Collection<String> hostNames = GlobalConf.getProviderAddress(serviceProvider.getClientId());
 
         if (hostNames == null || hostNames.isEmpty()) {
@@ -193,6 +223,13 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
         IsAuthentication.verifyClientAuthentication(sender, clientCert);
     }
 
+    @Value
+    private static class ServiceAddressesKey {
+        private final ClientId provider;
+        private final SecurityServerId serverId;
+        private final long confVersion;
+    }
+
     @EqualsAndHashCode
     public static final class TargetHostsUserToken {
         private final Set<URI> targetHosts;
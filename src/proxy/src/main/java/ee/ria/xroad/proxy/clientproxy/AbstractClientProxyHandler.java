@@ -89,6 +89,9 @@ abstract class AbstractClientProxyHandler extends HandlerBase {
             processor = createRequestProcessor(target, request, response, opMonitoringData);
 
             if (processor != null) {
+                // Reject the request early if it has waited for a free thread for too long
+                ClientProxyThreadPool.checkQueueDeadline();
+
                 baseRequest.getHttpChannel().setIdleTimeout(idleTimeout);
                 handled = true;
                 processor.process();
@@ -170,6 +173,11 @@ abstract class AbstractClientProxyHandler extends HandlerBase {
 
         updateOpMonitoringResponseOutTs(opMonitoringData);
 
+        if (response.isCommitted()) {
+            // A part of the response has already been sent and the response has been aborted
+            return;
+        }
+
         sendErrorResponse(response, e);
     }
 
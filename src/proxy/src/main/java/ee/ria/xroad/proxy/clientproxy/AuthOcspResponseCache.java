@@ -0,0 +1,116 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.proxy.conf.KeyConf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caches the encoded OCSP responses of the authentication certificate chain, which are sent to the server proxy
+ * with every request, so that they are not fetched from the signer and encoded again for every request.
+ * <p>
+ * The responses are cached for the current authentication certificate chain for at most
+ * {@value #MAX_AGE_SECONDS} seconds, so that responses refreshed by the signer are picked up, and never beyond
+ * the validity of the responses.
+ */
+@Slf4j
+final class AuthOcspResponseCache {
+
+    static final long MAX_AGE_SECONDS = 60;
+
+    private static final AtomicReference<Entry> CURRENT = new AtomicReference<>();
+
+    private AuthOcspResponseCache() {
+    }
+
+    /**
+     * @return the encoded OCSP responses of the authentication certificate chain, excluding the trusted root
+     * @throws Exception if the OCSP responses cannot be retrieved
+     */
+    static List<byte[]> getEncodedResponses() throws Exception {
+        return getEncodedResponses(System.currentTimeMillis());
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return the encoded OCSP responses of the authentication certificate chain, excluding the trusted root
+     * @throws Exception if the OCSP responses cannot be retrieved
+     */
+    static List<byte[]> getEncodedResponses(long now) throws Exception {
+        List<X509Certificate> chain = KeyConf.getAuthKey().getCertChain().getAllCertsWithoutTrustedRoot();
+
+        Entry entry = CURRENT.get();
+
+        if (entry != null && now < entry.validUntil && entry.chain.equals(chain)) {
+            return entry.responses;
+        }
+
+        log.trace("Caching OCSP responses of the authentication certificate chain");
+
+        List<OCSPResp> responses = KeyConf.getAllOcspResponses(chain);
+        List<byte[]> encoded = new ArrayList<>(responses.size());
+
+        for (OCSPResp response : responses) {
+            encoded.add(response.getEncoded());
+        }
+
+        long validUntil = Math.min(now + TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS),
+                VerifiedChainCache.validUntil(chain, responses, GlobalConf.getOcspFreshnessSeconds(false)));
+
+        entry = new Entry(chain, Collections.unmodifiableList(encoded), validUntil);
+        CURRENT.set(entry);
+
+        return entry.responses;
+    }
+
+    /**
+     * Removes the cached responses.
+     */
+    static void clear() {
+        CURRENT.set(null);
+    }
+
+    private static final class Entry {
+        private final List<X509Certificate> chain;
+        private final List<byte[]> responses;
+        private final long validUntil;
+
+        Entry(List<X509Certificate> chain, List<byte[]> responses, long validUntil) {
+            this.chain = chain;
+            this.responses = responses;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -27,6 +27,7 @@ package ee.ria.xroad.proxy.clientproxy;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.cert.CertHelper;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.CertUtils;
@@ -69,6 +70,10 @@ public final class AuthTrustVerifier {
 
     public static final String ID_PROVIDERNAME = "request.providerName";
 
+    private static final int VERIFIED_CHAINS_MAXIMUM_SIZE = 1000;
+
+    private static final VerifiedChainCache VERIFIED_CHAINS = new VerifiedChainCache(VERIFIED_CHAINS_MAXIMUM_SIZE);
+
     private AuthTrustVerifier() {
     }
 
@@ -97,6 +102,16 @@ public final class AuthTrustVerifier {
 
     private static void verifyAuthCert(ClientId serviceProvider,
             X509Certificate[] certs, URI address) throws Exception {
+        // Skip building and verifying the chain if it has already been verified for the provider
+        String fingerprint = VerifiedChainCache.fingerprint(certs);
+        long confVersion = GlobalConf.getVersion();
+
+        if (VERIFIED_CHAINS.isVerified(serviceProvider, fingerprint, confVersion, System.currentTimeMillis())) {
+            log.trace("peer certificate chain has already been verified");
+
+            return;
+        }
+
         CertChain chain;
         List<OCSPResp> ocspResponses;
         try {
@@ -113,6 +128,9 @@ public final class AuthTrustVerifier {
         }
 
         CertHelper.verifyAuthCert(chain, ocspResponses, serviceProvider);
+
+        VERIFIED_CHAINS.verified(serviceProvider, fingerprint, chain.getAllCerts(), ocspResponses,
+                GlobalConf.getOcspFreshnessSeconds(false), confVersion);
     }
 
     /**
@@ -25,7 +25,6 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
-import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
 import ee.ria.xroad.common.identifier.CentralServiceId;
@@ -39,14 +38,17 @@ import ee.ria.xroad.common.message.SoapMessage;
 import ee.ria.xroad.common.message.SoapMessageDecoder;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.message.SoapUtils;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.monitoring.MessageInfo;
 import ee.ria.xroad.common.monitoring.MessageInfo.Origin;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.signature.SignatureData;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.proxy.conf.KeyConf;
 import ee.ria.xroad.proxy.messagelog.MessageLog;
+import ee.ria.xroad.proxy.messagelog.MessageLogSpool;
 import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
@@ -54,9 +56,13 @@ import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.HttpClient;
-import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.EntityTemplate;
 import org.bouncycastle.util.Arrays;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.xml.sax.Attributes;
 import org.xml.sax.helpers.AttributesImpl;
 
@@ -64,21 +70,18 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INCONSISTENT_RESPONSE;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -88,7 +91,6 @@ import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.SystemProperties.getServerProxyPort;
 import static ee.ria.xroad.common.SystemProperties.isSslEnabled;
-import static ee.ria.xroad.common.util.AbstractHttpSender.CHUNKED_LENGTH;
 import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_CONTENT_TYPE;
@@ -99,39 +101,23 @@ import static ee.ria.xroad.common.util.TimeUtils.getEpochMillisecond;
 @Slf4j
 class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
-    /**
-     * Timeout for waiting for the SOAP message to be read from the request.
-     */
     private static final int WAIT_FOR_SOAP_TIMEOUT = 30; // seconds
 
-    /**
-     * By using a count down latch we can make the main thread wait for the
-     * request handler thread to read the SOAP request, since we cannot open
-     * connection to server proxy before we haven't read the receiver name from
-     * request SOAP.
-     */
-    private final CountDownLatch requestHandlerGate = new CountDownLatch(1);
+    /** Holds the incoming request SOAP message, until the request has been sent to the server proxy. */
+    private String originalSoapAction;
+    private SoapMessageImpl requestSoap;
+    private Map<String, String> requestSoapHeaders;
 
-    /**
-     * By using a count down latch we can make the main thread wait for the
-     * HTTP sender to finish sending the entire request to the piped output
-     * stream, so we can check for errors in the handler thread before
-     * receiving the response.
-     */
-    private final CountDownLatch httpSenderGate = new CountDownLatch(1);
+    /** Holds the parts of the request needed after the request has been sent. */
+    private SoapHeader requestHeader;
+    private ServiceId requestServiceId;
+    private byte[] requestHash;
 
-    /** Holds the incoming request SOAP message. */
-    private volatile String originalSoapAction;
-    private volatile SoapMessageImpl requestSoap;
-    private volatile ServiceId requestServiceId;
+    /** Decodes the request; the SOAP part is read before connecting to the server proxy. */
+    private SoapMessageDecoder requestDecoder;
 
     /** If the request failed, will contain SOAP fault. */
-    private volatile CodedException executionException;
-
-    /** Holds the proxy message output stream and associated info. */
-    private PipedInputStream reqIns;
-    private volatile PipedOutputStream reqOuts;
-    private volatile String outputContentType;
+    private CodedException executionException;
 
     /** Holds the request to the server proxy. */
     private ProxyMessageEncoder request;
@@ -140,27 +126,13 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     /** Holds the response from server proxy. */
     private ProxyMessage response;
 
-    private static final ExecutorService SOAP_HANDLER_EXECUTOR =
-            createSoapHandlerExecutor();
-
-    private static ExecutorService createSoapHandlerExecutor() {
-        return Executors.newCachedThreadPool(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread handlerThread = new Thread(r);
-                handlerThread.setName(Thread.currentThread().getName() + "-soap");
-
-                return handlerThread;
-            }
-        });
-    }
+    /** Completes when the response has been saved to the message log, if the response is logged asynchronously. */
+    private CompletableFuture<Void> responseLogged;
 
     ClientMessageProcessor(HttpServletRequest servletRequest, HttpServletResponse servletResponse,
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
         super(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
         this.xRequestId = UUID.randomUUID().toString();
     }
 
@@ -171,17 +143,12 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         opMonitoringData.setXRequestId(xRequestId);
         updateOpMonitoringClientSecurityServerAddress();
 
-        Future<?> soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
-
         try {
-            // Wait for the request SOAP message to be parsed before we can start sending stuff.
-            waitForSoapMessage();
-
-            // If the handler thread excepted, do not continue.
-            checkError();
+            // Read the request SOAP message, the attachments are streamed to the server proxy later on.
+            readSoap();
 
             // Verify that the client is registered.
-            ClientId client = requestSoap.getClient();
+            ClientId client = requestHeader.getClient();
             verifyClientStatus(client);
 
             // Check client authentication mode.
@@ -192,15 +159,6 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             if (response != null) {
                 sendResponse();
             }
-        } catch (Exception e) {
-            if (reqIns != null) {
-                reqIns.close();
-            }
-
-            // Let's interrupt the handler thread so that it won't block forever waiting for us to do something.
-            soapHandler.cancel(true);
-
-            throw e;
         } finally {
             if (response != null) {
                 response.consume();
@@ -228,8 +186,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         try (HttpSender httpSender = createHttpSender()) {
             sendRequest(httpSender);
 
-            // Check for any errors from the handler thread once more.
-            waitForRequestSent();
+            // Check for any errors that occurred while streaming the request.
             checkError();
 
             parseResponse(httpSender);
@@ -243,29 +200,26 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     private void sendRequest(HttpSender httpSender) throws Exception {
         log.trace("sendRequest()");
 
+        URI[] addresses = prepareRequest(httpSender, requestServiceId, requestSoap.getSecurityServer());
+        // Preserve the original SOAPAction header
+        httpSender.addHeader(HEADER_ORIGINAL_SOAP_ACTION, originalSoapAction);
+
+        // Add unique id to distinguish request/response pairs
+        httpSender.addHeader(HEADER_REQUEST_ID, xRequestId);
+
         try {
-            URI[] addresses = prepareRequest(httpSender, requestServiceId, requestSoap.getSecurityServer());
-            // Preserve the original SOAPAction header
-            httpSender.addHeader(HEADER_ORIGINAL_SOAP_ACTION, originalSoapAction);
+            opMonitoringData.setRequestOutTs(getEpochMillisecond());
+            httpSender.doPost(getServiceAddress(addresses), createRequestEntity());
+            opMonitoringData.setResponseInTs(getEpochMillisecond());
+        } catch (Exception e) {
+            // Writing the request was aborted because of an error in the request itself
+            checkError();
 
-            // Add unique id to distinguish request/response pairs
-            httpSender.addHeader(HEADER_REQUEST_ID, xRequestId);
+            // Failed to connect to server proxy
+            MonitorAgent.serverProxyFailed(createRequestMessageInfo());
 
-            try {
-                opMonitoringData.setRequestOutTs(getEpochMillisecond());
-                httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
-                opMonitoringData.setResponseInTs(getEpochMillisecond());
-            } catch (Exception e) {
-                // Failed to connect to server proxy
-                MonitorAgent.serverProxyFailed(createRequestMessageInfo());
-
-                // Rethrow
-                throw e;
-            }
-        } finally {
-            if (reqIns != null) {
-                reqIns.close();
-            }
+            // Rethrow
+            throw e;
         }
     }
 
@@ -342,7 +296,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         log.trace("checkConsistency()");
 
         try {
-            SoapUtils.checkConsistency(requestSoap, response.getSoap());
+            SoapUtils.checkConsistency(requestHeader, response.getSoap().getHeader());
         } catch (CodedException e) {
             log.error("Inconsistent request-response", e);
 
@@ -359,11 +313,8 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         RequestHash requestHashFromResponse = response.getSoap().getHeader().getRequestHash();
 
         if (requestHashFromResponse != null) {
-            byte[] requestHash = requestSoap.getHash();
-
             if (log.isTraceEnabled()) {
-                log.trace("Calculated request message hash: {}\nRequest message (base64): {}",
-                        encodeBase64(requestHash), encodeBase64(requestSoap.getBytes()));
+                log.trace("Calculated request message hash: {}", encodeBase64(requestHash));
             }
 
             if (!Arrays.areEqual(requestHash, decodeBase64(requestHashFromResponse.getHash()))) {
@@ -379,7 +330,64 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     private void logResponseMessage() throws Exception {
         log.trace("logResponseMessage()");
 
-        MessageLog.log(response.getSoap(), response.getSignature(), true, xRequestId);
+        if (!MessageLogProperties.isAsyncResponseLoggingEnabled()) {
+            MessageLog.log(response.getSoap(), response.getSignature(), true, xRequestId);
+
+            return;
+        }
+
+        // The response is sent to the client while it is being logged
+        SoapMessageImpl responseSoap = response.getSoap();
+        SignatureData responseSignature = response.getSignature();
+
+        responseLogged = MessageLog.logAsync(responseSoap, responseSignature, true, xRequestId);
+
+        if (MessageLogProperties.isAsyncResponseLoggingSpoolEnabled()) {
+            responseLogged = responseLogged.exceptionally(e -> {
+                spoolResponseMessage(responseSoap, responseSignature, e);
+
+                return null;
+            });
+        }
+    }
+
+    private void spoolResponseMessage(SoapMessageImpl responseSoap, SignatureData responseSignature, Throwable e) {
+        if (!MessageLogSpool.shouldSpool(e)) {
+            log.error("Logging response message {} timed out, it may or may not have been logged", xRequestId, e);
+
+            return;
+        }
+
+        log.error("Failed to log response message {}, spooling it to be logged later", xRequestId, e);
+
+        try {
+            MessageLogSpool.spool(responseSoap, responseSignature, true, xRequestId);
+        } catch (Exception ex) {
+            log.error("Failed to spool response message {}, the response message is not logged", xRequestId, ex);
+        }
+    }
+
+    private void waitForResponseLogged() throws Exception {
+        if (responseLogged == null || MessageLogProperties.isAsyncResponseLoggingSpoolEnabled()) {
+            // Logging failures do not fail the request when the response is spooled
+            return;
+        }
+
+        log.trace("waitForResponseLogged()");
+
+        try {
+            responseLogged.get();
+        } catch (ExecutionException e) {
+            if (servletResponse.isCommitted()) {
+                // The client has already received a part of the response, abort it so that it is not
+                // taken as a successful response
+                Request.getBaseRequest(servletRequest).getHttpChannel().abort(e.getCause());
+            } else {
+                servletResponse.resetBuffer();
+            }
+
+            throw translateException(e.getCause());
+        }
     }
 
     private void sendResponse() throws Exception {
@@ -394,44 +402,65 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         try (InputStream is = response.getSoapContent()) {
             IOUtils.copy(is, servletResponse.getOutputStream());
         }
+
+        waitForResponseLogged();
     }
 
-    private void waitForSoapMessage() {
-        log.trace("waitForSoapMessage()");
+    private void readSoap() throws Exception {
+        log.trace("readSoap()");
+
+        requestDecoder = new SoapMessageDecoder(servletRequest.getContentType(), new SoapMessageHandler(),
+                new RequestSoapParserImpl());
+
+        // Cleared by whichever comes first, reading the SOAP message or the deadline
+        AtomicBoolean reading = new AtomicBoolean(true);
+        Scheduler.Task deadline = scheduleReadSoapDeadline(reading);
 
         try {
-            if (!requestHandlerGate.await(WAIT_FOR_SOAP_TIMEOUT, TimeUnit.SECONDS)) {
-                throw new CodedException(X_INTERNAL_ERROR, "Reading SOAP from request timed out");
+            originalSoapAction = validateSoapActionHeader(servletRequest.getHeader("SOAPAction"));
+            requestDecoder.parseSoap(servletRequest.getInputStream());
+        } catch (Exception ex) {
+            if (!reading.get()) {
+                throw readSoapTimedOut();
             }
-        } catch (InterruptedException e) {
-            log.error("waitForSoapMessage interrupted", e);
 
-            Thread.currentThread().interrupt();
+            throw new ClientException(translateException(ex));
+        } finally {
+            if (deadline != null) {
+                deadline.cancel();
+            }
         }
-    }
-
-    private void waitForRequestSent() {
-        log.trace("waitForRequestSent()");
 
-        try {
-            httpSenderGate.await();
-        } catch (InterruptedException e) {
-            log.error("waitForRequestSent interrupted", e);
+        if (!reading.compareAndSet(true, false)) {
+            // The request input was failed after the SOAP part, the attachments cannot be read anymore
+            throw readSoapTimedOut();
+        }
 
-            Thread.currentThread().interrupt();
+        if (requestSoap == null) {
+            throw new ClientException(X_MISSING_SOAP, "Request does not contain SOAP message");
         }
     }
 
-    private void continueProcessing() {
-        log.trace("continueProcessing()");
+    /**
+     * Fails the request input if the SOAP message has not been read within the timeout, so that a client
+     * sending the message slowly does not hold the request thread for longer.
+     */
+    private Scheduler.Task scheduleReadSoapDeadline(AtomicBoolean reading) {
+        Request baseRequest = Request.getBaseRequest(servletRequest);
 
-        requestHandlerGate.countDown();
-    }
+        if (baseRequest == null) {
+            return null;
+        }
 
-    private void continueReadingResponse() {
-        log.trace("continueReadingResponse()");
+        return baseRequest.getHttpChannel().getConnector().getScheduler().schedule(() -> {
+            if (reading.compareAndSet(true, false)) {
+                baseRequest.getHttpInput().failed(readSoapTimedOut());
+            }
+        }, WAIT_FOR_SOAP_TIMEOUT, TimeUnit.SECONDS);
+    }
 
-        httpSenderGate.countDown();
+    private static CodedException readSoapTimedOut() {
+        return new CodedException(X_INTERNAL_ERROR, "Reading SOAP from request timed out");
     }
 
     private void checkError() throws Exception {
@@ -450,34 +479,76 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         }
     }
 
+    private HttpEntity createRequestEntity() {
+        String contentType = MimeUtils.mpMixedContentType("xtop" + MimeUtils.randomBoundary());
+
+        // The request is produced only once, retrying requests is disabled in the client proxy HTTP client
+        EntityTemplate entity = new EntityTemplate(new SoapRequestProducer(contentType));
+        entity.setContentType(contentType);
+
+        return entity;
+    }
+
     @Override
     public MessageInfo createRequestMessageInfo() {
-        if (requestSoap == null) {
+        if (requestHeader == null) {
             return null;
         }
 
-        return new MessageInfo(Origin.CLIENT_PROXY, requestSoap.getClient(), requestServiceId, requestSoap.getUserId(),
-                requestSoap.getQueryId());
+        return new MessageInfo(Origin.CLIENT_PROXY, requestHeader.getClient(), requestServiceId,
+                requestHeader.getUserId(), requestHeader.getQueryId());
     }
 
-    public void handleSoap() {
-        try (SoapMessageHandler handler = new SoapMessageHandler()) {
-            SoapMessageDecoder soapMessageDecoder = new SoapMessageDecoder(servletRequest.getContentType(),
-                    handler, new RequestSoapParserImpl());
+    /**
+     * Writes the proxy message to the server proxy on the calling thread, streaming the attachments
+     * directly from the client request.
+     */
+    private class SoapRequestProducer implements ContentProducer {
+
+        private final String contentType;
+
+        SoapRequestProducer(String contentType) {
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
             try {
-                originalSoapAction = validateSoapActionHeader(servletRequest.getHeader("SOAPAction"));
-                soapMessageDecoder.parse(servletRequest.getInputStream());
+                request = new ProxyMessageEncoder(out, SoapUtils.getHashAlgoId(), MimeUtils.getBoundary(contentType));
+
+                // In SSL mode, we need to send the OCSP response of our SSL cert.
+                if (isSslEnabled()) {
+                    writeOcspResponses();
+                }
+
+                request.soap(requestSoap, requestSoapHeaders);
+
+                // The hash was calculated for the signature while writing the SOAP part
+                requestHash = requestSoap.getHash();
+
+                requestDecoder.parseAttachments();
             } catch (Exception ex) {
-                throw new ClientException(translateException(ex));
+                setError(new ClientException(translateException(ex)));
+            } finally {
+                // The request has been logged, only the header and the hash are needed for checking the response
+                requestSoap = null;
+                requestSoapHeaders = null;
             }
-        } catch (Throwable ex) {
-            setError(ex);
-        } finally {
-            continueProcessing();
-            continueReadingResponse();
+
+            if (executionException != null) {
+                // Do not complete the request, the server proxy must not process it
+                throw new IOException("Failed to write request to server proxy", executionException);
+            }
+
+            request.close();
         }
-    }
 
+        private void writeOcspResponses() throws Exception {
+            for (byte[] ocsp : AuthOcspResponseCache.getEncodedResponses()) {
+                request.ocspResponse(ocsp);
+            }
+        }
+    }
 
     private class SoapMessageHandler implements SoapMessageDecoder.Callback {
 
@@ -488,25 +559,11 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             }
 
             requestSoap = (SoapMessageImpl) message;
+            requestHeader = requestSoap.getHeader();
             requestServiceId = requestSoap.getService();
+            requestSoapHeaders = headers;
 
             updateOpMonitoringDataBySoapMessage(opMonitoringData, requestSoap);
-
-            if (request == null) {
-                request = new ProxyMessageEncoder(reqOuts, SoapUtils.getHashAlgoId());
-                outputContentType = request.getContentType();
-            }
-
-            // We have the request SOAP message, we can start sending the
-            // request to server proxy.
-            continueProcessing();
-
-            // In SSL mode, we need to send the OCSP response of our SSL cert.
-            if (isSslEnabled()) {
-                writeOcspResponses();
-            }
-
-            request.soap(requestSoap, headers);
         }
 
         @Override
@@ -526,9 +583,8 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         public void onCompleted() {
             log.trace("onCompleted()");
 
-            if (requestSoap == null) {
-                setError(new ClientException(X_MISSING_SOAP, "Request does not contain SOAP message"));
-
+            if (request == null) {
+                // Only the SOAP part has been read so far
                 return;
             }
 
@@ -564,27 +620,6 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             // Simply re-throw
             throw e;
         }
-
-        private void writeOcspResponses() throws Exception {
-            CertChain chain = KeyConf.getAuthKey().getCertChain();
-            // exclude TopCA
-            List<OCSPResp> ocspResponses = KeyConf.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot());
-
-            for (OCSPResp ocsp : ocspResponses) {
-                request.ocspResponse(ocsp);
-            }
-        }
-
-        @Override
-        public void close() {
-            if (request != null) {
-                try {
-                    request.close();
-                } catch (Exception e) {
-                    setError(e);
-                }
-            }
-        }
     }
 
     /**
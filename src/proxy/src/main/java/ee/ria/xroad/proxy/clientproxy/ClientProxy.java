@@ -54,6 +54,7 @@ import org.eclipse.jetty.server.Slf4jRequestLogWriter;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.xml.XmlConfiguration;
 
 import javax.net.ssl.KeyManager;
@@ -92,7 +93,7 @@ public class ClientProxy implements StartStop {
     private static final String CLIENT_HTTP_CONNECTOR_NAME = "ClientConnector";
     private static final String CLIENT_HTTPS_CONNECTOR_NAME = "ClientSSLConnector";
 
-    private Server server = new Server();
+    private Server server;
 
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connectionMonitor;
@@ -116,8 +117,22 @@ public class ClientProxy implements StartStop {
 
         log.debug("Configuring server from {}", file);
 
+        // The thread pool of a server cannot be replaced, so the pool size is read from the configuration
+        // applied to a server with a default pool first
+        Server configured = new Server();
+        configure(configured, file);
+
+        QueuedThreadPool pool = (QueuedThreadPool) configured.getThreadPool();
+
+        server = new Server(new ClientProxyThreadPool(pool.getMaxThreads(), pool.getMinThreads(),
+                pool.getIdleTimeout(), SystemProperties.getClientProxyHandlerQueueCapacity(),
+                SystemProperties.getClientProxyHandlerQueueDeadline()));
+        configure(server, file);
+    }
+
+    private static void configure(Server target, Path file) throws Exception {
         try (InputStream in = Files.newInputStream(file)) {
-            new XmlConfiguration(in).configure(server);
+            new XmlConfiguration(in).configure(target);
         }
     }
 
@@ -176,8 +191,7 @@ public class ClientProxy implements StartStop {
     }
 
     private static SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
-        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadSSLContext()
-        );
+        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadClientSSLContext());
     }
 
     private void createConnectors() throws Exception {
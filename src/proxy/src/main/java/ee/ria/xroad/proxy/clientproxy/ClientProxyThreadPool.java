@@ -0,0 +1,234 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_SERVER_BUSY;
+
+/**
+ * Thread pool of the client proxy with a bounded job queue. {@link #checkQueueDeadline()} lets the request
+ * handlers reject requests that have waited in the queue for longer than
+ * {@link SystemProperties#getClientProxyHandlerQueueDeadline()}, since the client has most probably timed out
+ * already. Jobs that do not fit into the queue are run by a few separate threads, which only reject their requests
+ * the same way, so that the client gets a fault instead of a dropped connection. Only if those threads are busy
+ * as well, the job is rejected and Jetty closes its connection.
+ * <p>
+ * The wait of a job is measured when the job starts, not when its request is handled. Some jobs run for a long
+ * time before handling a request, such as the selector producer and reserved threads, which are handed requests
+ * without queueing them. Those requests have not waited in the queue.
+ * <p>
+ * The pool size is configured in the Jetty configuration file of the client proxy, as before. The state of the
+ * pool is exposed over JMX, in the domain {@value #JMX_DOMAIN}: gauges {@code active}, {@code queued} and
+ * {@code threads}, meters {@code rejected} (queue full) and {@code expired} (queue deadline exceeded) and the
+ * timer {@code queueWait}.
+ */
+@Slf4j
+class ClientProxyThreadPool extends QueuedThreadPool {
+
+    static final String JMX_DOMAIN = "xroad.proxy.clientproxy";
+
+    static final int QUEUE_FULL_THREADS = 4;
+
+    /**
+     * Holds the time in nanoseconds the currently executing job waited in the queue, if it exceeded the queue
+     * deadline, until a request handler has checked it.
+     */
+    private static final ThreadLocal<Long> EXPIRED_WAIT = new ThreadLocal<>();
+
+    /** Set while a job that did not fit into the queue is executing, until a request handler has checked it. */
+    private static final ThreadLocal<Boolean> QUEUE_FULL = new ThreadLocal<>();
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+    private static final Meter REJECTED = METRICS.meter("rejected");
+    private static final Meter EXPIRED = METRICS.meter("expired");
+    private static final Timer QUEUE_WAIT = METRICS.timer("queueWait");
+
+    static {
+        JmxReporter.forRegistry(METRICS).inDomain(JMX_DOMAIN).build().start();
+    }
+
+    private final long queueDeadlineNanos;
+
+    private final ThreadPoolExecutor queueFullExecutor;
+
+    /**
+     * Creates the thread pool and registers its gauges, replacing the gauges of a previously created pool.
+     * @param maxThreads maximum number of threads, as configured for the client proxy server
+     * @param minThreads minimum number of threads, as configured for the client proxy server
+     * @param idleTimeout time in milliseconds after which idle threads are stopped
+     * @param queueCapacity maximum number of queued jobs
+     * @param queueDeadline maximum time in milliseconds a job may wait in the queue, 0 means no limit
+     */
+    ClientProxyThreadPool(int maxThreads, int minThreads, int idleTimeout, int queueCapacity, long queueDeadline) {
+        super(maxThreads, minThreads, idleTimeout,
+                new BlockingArrayQueue<>(Math.min(minThreads, queueCapacity), Math.max(minThreads, 1),
+                        queueCapacity));
+
+        this.queueDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(queueDeadline);
+        this.queueFullExecutor = new ThreadPoolExecutor(0, QUEUE_FULL_THREADS, idleTimeout, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), new ThreadFactoryBuilder().setNameFormat("clientproxy-busy-%d")
+                        .setDaemon(true).build());
+
+        setName("clientproxy");
+
+        register("active", this::getBusyThreads);
+        register("queued", this::getQueueSize);
+        register("threads", this::getThreads);
+    }
+
+    private static void register(String name, Gauge<Integer> gauge) {
+        METRICS.remove(name);
+        METRICS.register(name, gauge);
+    }
+
+    @Override
+    public void execute(Runnable job) {
+        try {
+            super.execute(new QueuedJob(job));
+        } catch (RejectedExecutionException e) {
+            REJECTED.mark();
+
+            if (!isRunning()) {
+                throw e;
+            }
+
+            try {
+                queueFullExecutor.execute(new QueueFullJob(job));
+            } catch (RejectedExecutionException busy) {
+                log.warn("Client proxy job queue is full ({} jobs), rejected job {}", getQueueSize(), job);
+
+                throw e;
+            }
+
+            log.warn("Client proxy job queue is full ({} jobs), rejecting the request of job {}", getQueueSize(),
+                    job);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        queueFullExecutor.shutdownNow();
+
+        super.doStop();
+    }
+
+    /**
+     * Checks whether the job handling the current request waited in the queue for longer than the queue deadline,
+     * or did not fit into the queue at all. Only the first request handled by a job is checked, subsequent requests
+     * of the same job (pipelined requests) have not waited.
+     * @throws CodedException if the job waited for longer than the queue deadline or the queue was full
+     */
+    static void checkQueueDeadline() {
+        if (QUEUE_FULL.get() != null) {
+            QUEUE_FULL.remove();
+
+            throw new CodedException(X_SERVER_BUSY, "Client proxy job queue is full");
+        }
+
+        Long waited = EXPIRED_WAIT.get();
+
+        if (waited == null) {
+            return;
+        }
+
+        EXPIRED_WAIT.remove();
+        EXPIRED.mark();
+
+        throw new CodedException(X_SERVER_BUSY, "Request waited %d ms for a free client proxy thread",
+                TimeUnit.NANOSECONDS.toMillis(waited));
+    }
+
+    private final class QueuedJob implements Runnable {
+        private final Runnable job;
+        private final long queuedAt = System.nanoTime();
+
+        QueuedJob(Runnable job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            long waited = System.nanoTime() - queuedAt;
+
+            QUEUE_WAIT.update(waited, TimeUnit.NANOSECONDS);
+
+            if (queueDeadlineNanos > 0 && waited > queueDeadlineNanos) {
+                EXPIRED_WAIT.set(waited);
+            }
+
+            try {
+                job.run();
+            } finally {
+                EXPIRED_WAIT.remove();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return job.toString();
+        }
+    }
+
+    private static final class QueueFullJob implements Runnable {
+        private final Runnable job;
+
+        QueueFullJob(Runnable job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            QUEUE_FULL.set(Boolean.TRUE);
+
+            try {
+                job.run();
+            } finally {
+                QUEUE_FULL.remove();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return job.toString();
+        }
+    }
+}
@@ -25,13 +25,13 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
-import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.message.RestResponse;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.monitoring.MessageInfo;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
@@ -74,6 +74,7 @@ import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INCONSISTENT_RESPONSE;
 import static ee.ria.xroad.common.ErrorCodes.X_IO_ERROR;
+import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
 import static ee.ria.xroad.common.ErrorCodes.X_MISSING_REST;
 import static ee.ria.xroad.common.ErrorCodes.X_MISSING_SIGNATURE;
 import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
@@ -324,32 +325,43 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
                 final ProxyMessageEncoder enc = new ProxyMessageEncoder(outstream,
                         CryptoUtils.DEFAULT_DIGEST_ALGORITHM_ID, getBoundary(contentType.getValue()));
 
-                final CertChain chain = KeyConf.getAuthKey().getCertChain();
-                KeyConf.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot())
-                        .forEach(resp -> enc.ocspResponse(resp));
+                for (byte[] ocsp : AuthOcspResponseCache.getEncodedResponses()) {
+                    enc.ocspResponse(ocsp);
+                }
 
                 enc.restRequest(restRequest);
 
                 //Optimize the case without request body (e.g. simple get requests)
-                //TBD: Optimize the case without body logging
                 try (InputStream in = servletRequest.getInputStream()) {
                     @SuppressWarnings("checkstyle:magicnumber")
                     byte[] buf = new byte[4096];
                     int count = in.read(buf);
-                    if (count >= 0) {
-                        final CachingStream cache = new CachingStream();
+                    if (count < 0) {
+                        enc.sign(KeyConf.getSigningCtx(senderId));
+                        MessageLog.log(restRequest, enc.getSignature(), null, true, xRequestId);
+                    } else if (!MessageLog.isBodyLogged(requestServiceId, true)) {
+                        // The body is not logged, stream it to the server proxy without caching it
+                        enc.restBody(buf, count, in);
+                        enc.sign(KeyConf.getSigningCtx(senderId));
+                        MessageLog.log(restRequest, enc.getSignature(), null, true, xRequestId);
+                    } else {
+                        // Cache only as much of the body as the message log saves
+                        final CachingStream cache = new CachingStream(MessageLogProperties.getMaxLoggableBodySize());
                         try (TeeInputStream tee = new TeeInputStream(in, cache)) {
                             cache.write(buf, 0, count);
                             enc.restBody(buf, count, tee);
                             enc.sign(KeyConf.getSigningCtx(senderId));
+
+                            if (cache.isTruncated() && !MessageLogProperties.isTruncatedBodyAllowed()) {
+                                throw new CodedException(X_LOGGING_FAILED_X,
+                                        "Message size exceeds maximum loggable size");
+                            }
+
                             MessageLog.log(restRequest, enc.getSignature(), cache.getCachedContents(), true,
                                     xRequestId);
                         } finally {
                             cache.consume();
                         }
-                    } else {
-                        enc.sign(KeyConf.getSigningCtx(senderId));
-                        MessageLog.log(restRequest, enc.getSignature(), null, true, xRequestId);
                     }
                 }
 
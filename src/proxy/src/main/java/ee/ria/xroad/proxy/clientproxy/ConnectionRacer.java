@@ -0,0 +1,324 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Races connections to a list of addresses on a shared selector thread. For every race, a connection is
+ * initiated to all the addresses and the first connection to complete wins; the other connections are
+ * closed. The selector and its thread are long-lived, so that racing does not open and close a selector
+ * for every connection.
+ */
+@Slf4j
+final class ConnectionRacer {
+
+    private static final int SELECTOR_COUNT = 2;
+
+    private static final ConnectionRacer[] INSTANCES = createInstances();
+    private static final AtomicInteger NEXT_INSTANCE = new AtomicInteger();
+
+    private final Selector selector;
+    private final Queue<Race> submitted = new ConcurrentLinkedQueue<>();
+    private final Set<Race> running = new LinkedHashSet<>();
+
+    private ConnectionRacer(String name) throws IOException {
+        selector = Selector.open();
+
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static ConnectionRacer[] createInstances() {
+        ConnectionRacer[] instances = new ConnectionRacer[SELECTOR_COUNT];
+
+        try {
+            for (int i = 0; i < instances.length; i++) {
+                instances[i] = new ConnectionRacer("connection-racer-" + i);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open selector", e);
+        }
+
+        return instances;
+    }
+
+    /**
+     * Races connections to the given addresses on one of the shared selector threads.
+     * @param addresses addresses to connect to, unresolved addresses are skipped
+     * @param connectTimeout time in milliseconds to wait for the first connection, 0 means no limit
+     * @return future of the connected blocking socket and its address, completed with null if no connection
+     * could be made in time. If the future is cancelled, the connection is closed.
+     */
+    static CompletableFuture<SocketInfo> race(URI[] addresses, int connectTimeout) {
+        ConnectionRacer racer = INSTANCES[Math.floorMod(NEXT_INSTANCE.getAndIncrement(), INSTANCES.length)];
+        Race race = new Race(addresses, connectTimeout);
+
+        racer.submitted.add(race);
+        racer.selector.wakeup();
+
+        return race.result;
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                selector.select(nextTimeout());
+
+                startSubmitted();
+                completeConnected();
+                expireTimedOut();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (Exception e) {
+                log.error("Error while racing connections", e);
+            }
+        }
+    }
+
+    private long nextTimeout() {
+        long timeout = 0;
+        long now = System.nanoTime();
+
+        for (Race race : running) {
+            if (race.deadline != 0) {
+                long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(race.deadline - now));
+                timeout = timeout == 0 ? remaining : Math.min(timeout, remaining);
+            }
+        }
+
+        return timeout;
+    }
+
+    private void startSubmitted() throws IOException {
+        List<SelectionKey> connected = new ArrayList<>();
+
+        for (Race race = submitted.poll(); race != null; race = submitted.poll()) {
+            running.add(race);
+
+            for (int i = 0; i < race.addresses.length; i++) {
+                SelectionKey key = start(race, race.addresses[i], race.socketAddresses[i]);
+
+                if (key != null && ((SocketChannel) key.channel()).isConnected()) {
+                    // connected immediately
+                    connected.add(key);
+                    break;
+                }
+            }
+
+            if (race.keys.isEmpty()) {
+                finish(race);
+            }
+        }
+
+        complete(connected);
+    }
+
+    private SelectionKey start(Race race, URI target, InetSocketAddress address) {
+        if (address.isUnresolved()) {
+            return null;
+        }
+
+        SocketChannel channel = null;
+
+        try {
+            channel = SocketChannel.open();
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+
+            SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT, new Attempt(race, target));
+            channel.connect(address);
+
+            // Only added once connecting has started, an attempt that failed at once must not keep the race open
+            race.keys.add(key);
+
+            return key;
+        } catch (Exception e) {
+            closeQuietly(channel);
+            log.trace("Error connecting to '{}': {}", target, e);
+
+            return null;
+        }
+    }
+
+    private void completeConnected() throws IOException {
+        List<SelectionKey> connected = new ArrayList<>();
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+
+            Race race = ((Attempt) key.attachment()).race;
+
+            if (race.result.isDone()) {
+                // The race was cancelled
+                finish(race);
+            } else if (key.isValid() && key.isConnectable() && finishConnect(key)) {
+                connected.add(key);
+            } else if (race.keys.isEmpty()) {
+                // All the connections of the race failed
+                finish(race);
+            }
+        }
+
+        complete(connected);
+    }
+
+    private boolean finishConnect(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Race race = ((Attempt) key.attachment()).race;
+
+        try {
+            if (channel.finishConnect()) {
+                return true;
+            }
+        } catch (Exception e) {
+            log.trace("Error connecting socket channel: {}", e);
+
+            race.keys.remove(key);
+            key.cancel();
+            closeQuietly(channel);
+        }
+
+        return false;
+    }
+
+    private void complete(List<SelectionKey> connected) throws IOException {
+        if (connected.isEmpty()) {
+            return;
+        }
+
+        // The winners must be deregistered from the selector before they can be made blocking
+        for (SelectionKey key : connected) {
+            Race race = ((Attempt) key.attachment()).race;
+            race.keys.remove(key);
+            key.cancel();
+
+            closeRemaining(race);
+        }
+
+        selector.selectNow();
+
+        for (SelectionKey key : connected) {
+            Attempt attempt = (Attempt) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+
+            try {
+                channel.configureBlocking(true);
+
+                if (attempt.race.result.complete(new SocketInfo(attempt.target, channel.socket()))) {
+                    continue;
+                }
+            } catch (Exception e) {
+                log.trace("Error completing connection to '{}': {}", attempt.target, e);
+
+                attempt.race.result.complete(null);
+            }
+
+            // Another connection of the race won, or the race was cancelled
+            closeQuietly(channel);
+        }
+    }
+
+    private void expireTimedOut() {
+        long now = System.nanoTime();
+
+        for (Race race : new ArrayList<>(running)) {
+            if (race.result.isDone() || (race.deadline != 0 && now - race.deadline >= 0)) {
+                finish(race);
+            }
+        }
+    }
+
+    /** Closes the connections of the race and completes it without a connection, if not completed. */
+    private void finish(Race race) {
+        closeRemaining(race);
+
+        race.result.complete(null);
+    }
+
+    private void closeRemaining(Race race) {
+        for (SelectionKey key : race.keys) {
+            key.cancel();
+            closeQuietly(key.channel());
+        }
+
+        race.keys.clear();
+        running.remove(race);
+    }
+
+    private static final class Race {
+        private final URI[] addresses;
+        private final InetSocketAddress[] socketAddresses;
+        private final long deadline;
+        private final List<SelectionKey> keys = new ArrayList<>();
+        private final CompletableFuture<SocketInfo> result = new CompletableFuture<>();
+
+        Race(URI[] addresses, int connectTimeout) {
+            this.addresses = addresses;
+            // resolved on the calling thread, so that the selector thread never blocks on DNS
+            this.socketAddresses = Arrays.stream(addresses)
+                    .map(ProviderAddressResolver.getInstance()::toSocketAddress)
+                    .toArray(InetSocketAddress[]::new);
+            this.deadline = connectTimeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout) : 0;
+        }
+    }
+
+    private static final class Attempt {
+        private final Race race;
+        private final URI target;
+
+        Attempt(Race race, URI target) {
+            this.race = race;
+            this.target = target;
+        }
+    }
+}
@@ -29,9 +29,9 @@ import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+import ee.ria.xroad.proxy.util.TlsHandshakeMetrics;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.base.Ticker;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpHost;
@@ -40,6 +40,7 @@ import org.apache.http.protocol.HttpContext;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
 import java.io.IOException;
@@ -49,7 +50,6 @@ import java.net.SocketException;
 import java.net.URI;
 import java.nio.channels.UnresolvedAddressException;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
@@ -62,8 +62,8 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  * The fastest target address is selected by initializing socket connection
  * to all provided addresses and choosing the first one to respond.
  *
- * If an SSL session already exists to one of the provided addresses, then
- * that address is selected immediately without previous selection algorithm.
+ * If the addresses have fresh scores in {@link ProviderAddressScores}, then
+ * the address with the best score is selected without racing the addresses.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -83,17 +83,15 @@ class FastestConnectionSelectingSSLSocketFactory
 
     private final javax.net.ssl.SSLSocketFactory socketfactory;
 
-    private final Cache<CacheKey, URI> selectedHosts;
-    private final boolean cachingEnabled;
+    private final ProviderAddressScores scores;
+    private final boolean scoringEnabled;
 
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier) null);
         this.socketfactory = sslContext.getSocketFactory();
-        this.selectedHosts = CacheBuilder.newBuilder()
-                .expireAfterWrite(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS)
-                .maximumSize(CACHE_MAXIMUM_SIZE)
-                .build();
-        this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+        this.scores = new ProviderAddressScores(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(),
+                CACHE_MAXIMUM_SIZE, Ticker.systemTicker());
+        this.scoringEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
     }
 
     @Override
@@ -111,48 +109,43 @@ class FastestConnectionSelectingSSLSocketFactory
         }
 
         // Read target addresses from the context.
-        final URI[] addressesFromContext = getAddressesFromContext(context);
-        final boolean useCache = (addressesFromContext.length > 1) && cachingEnabled;
-
-        URI[] addresses = addressesFromContext;
-
-        CacheKey cacheKey = null;
-        URI cachedURI = null;
+        final URI[] addresses = getAddressesFromContext(context);
+        final boolean useScores = (addresses.length > 1) && scoringEnabled;
 
         if (log.isTraceEnabled()) {
-            log.trace("addresses from context {} current thread id {}", addressesFromContext,
-                    Thread.currentThread().getId());
+            log.trace("addresses from context {} current thread id {}", addresses, Thread.currentThread().getId());
         }
 
-        // If URI cache is enabled, check for a previously selected host, avoiding the selection process.
-        if (useCache) {
-            cacheKey = new CacheKey(addresses);
-            cachedURI = selectedHosts.getIfPresent(cacheKey);
+        long start = System.nanoTime();
+        SocketInfo selectedSocket = null;
+
+        // If scoring is enabled, try the best scored address first, avoiding the selection process.
+        URI bestURI = useScores ? scores.select(addresses) : null;
+
+        if (bestURI != null) {
+            log.trace("Use best scored URI {}", bestURI);
 
-            if (cachedURI != null) {
-                log.trace("Use cached URI {}", cachedURI);
+            selectedSocket = connect(new URI[] {bestURI}, context, CACHED_TIMEOUT);
 
-                addresses = new URI[] {cachedURI};
+            if (selectedSocket == null) {
+                log.trace("Could not connect to {}, continue connecting to all providers", bestURI);
+
+                scores.failure(bestURI);
             }
         }
 
         // Select the fastest address if more than one address is provided.
-        SocketInfo selectedSocket = connect(addresses, context, cachedURI == null ? timeout : CACHED_TIMEOUT);
         if (selectedSocket == null) {
-            if (cachedURI != null) {
-                log.trace("Could not connect to {}, removing from cache", cachedURI);
-
-                selectedHosts.invalidate(cacheKey);
-                cachedURI = null;
-
-                log.trace("Continue connecting to all providers {}", (Object) addressesFromContext);
+            URI[] candidates = useScores ? scores.candidates(addresses) : addresses;
 
-                selectedSocket = connect(addressesFromContext, context, timeout);
+            start = System.nanoTime();
+            selectedSocket = connect(candidates, context, timeout);
 
-                if (selectedSocket == null) {
-                    throw couldNotConnectException(addresses);
+            if (selectedSocket == null) {
+                if (useScores) {
+                    Arrays.stream(candidates).forEach(scores::failure);
                 }
-            } else {
+
                 throw couldNotConnectException(addresses);
             }
         }
@@ -163,17 +156,26 @@ class FastestConnectionSelectingSSLSocketFactory
 
         //XRDDEV-248: use connection timeout as read timeout during SSL handshake
         final Socket s = selectedSocket.getSocket();
-        s.setSoTimeout(timeout);
-        s.setSoLinger(false, 0);
-        SSLSocket sslSocket = wrapToSSLSocket(s);
-        prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
+        SSLSocket sslSocket;
 
-        configureSocket(sslSocket);
+        try {
+            s.setSoTimeout(timeout);
+            s.setSoLinger(false, 0);
+            sslSocket = wrapToSSLSocket(s, selectedSocket.getUri());
+            prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
+        } catch (IOException | RuntimeException e) {
+            if (useScores) {
+                scores.failure(selectedSocket.getUri());
+            }
 
-        if (useCache && cachedURI == null) {
-            log.trace("Store the fastest provider URI to cache {}", selectedSocket.getUri());
+            throw e;
+        }
+
+        configureSocket(sslSocket);
 
-            selectedHosts.put(cacheKey, selectedSocket.getUri());
+        if (useScores) {
+            // The connection setup time, including the TLS handshake, feeds the score of the address
+            scores.success(selectedSocket.getUri(), System.nanoTime() - start);
         }
 
         return sslSocket;
@@ -222,13 +224,27 @@ class FastestConnectionSelectingSSLSocketFactory
         socket.setKeepAlive(true);
     }
 
-    private void prepareAndVerify(SSLSocket sslSocket, URI selectedAddress,
+    void prepareAndVerify(SSLSocket sslSocket, URI selectedAddress,
             HttpContext context) throws IOException {
         prepareSocket(sslSocket);
-        verify(context, sslSocket.getSession(), selectedAddress);
+
+        SSLSession session = sslSocket.getSession();
+
+        if (TlsHandshakeMetrics.clientHandshakeCompleted(session)) {
+            log.trace("Resumed TLS session to {}", selectedAddress);
+        }
+
+        // The peer is verified also on resumed sessions, a session that fails the verification is not resumed again
+        try {
+            verify(context, session, selectedAddress);
+        } catch (RuntimeException e) {
+            session.invalidate();
+
+            throw e;
+        }
     }
 
-    private SocketInfo connect(URI[] addresses, HttpContext context,
+    SocketInfo connect(URI[] addresses, HttpContext context,
             int timeout) throws IOException {
         log.trace("Connecting to hosts {} with timeout {}", Arrays.toString(addresses), timeout);
         if (addresses.length == 1) { // only one host, no need to select fastest
@@ -252,13 +268,14 @@ class FastestConnectionSelectingSSLSocketFactory
         }
     }
 
-    private SSLSocket wrapToSSLSocket(Socket socket) throws IOException {
+    private SSLSocket wrapToSSLSocket(Socket socket, URI address) throws IOException {
         if (socket instanceof SSLSocket) {
             return (SSLSocket) socket;
         }
 
+        // TLS sessions are cached and resumed per peer host and port, use the provider address as it was given
         Socket sslSocket = socketfactory.createSocket(socket,
-                socket.getInetAddress().getHostName(), socket.getPort(), SystemProperties.isUseSslSocketAutoClose());
+                address.getHost(), address.getPort(), SystemProperties.isUseSslSocketAutoClose());
         if (sslSocket instanceof SSLSocket) {
             return (SSLSocket) sslSocket;
         }
@@ -275,7 +292,7 @@ class FastestConnectionSelectingSSLSocketFactory
     }
 
     private static InetSocketAddress toAddress(URI uri) {
-        return new InetSocketAddress(uri.getHost(), uri.getPort());
+        return ProviderAddressResolver.getInstance().toSocketAddress(uri);
     }
 
     private static CodedException couldNotConnectException(URI[] addresses) {
@@ -284,32 +301,4 @@ class FastestConnectionSelectingSSLSocketFactory
                 String.format("Could not connect to any target host (%s)", Arrays.toString(addresses)));
     }
 
-    static final class CacheKey {
-        private final URI[] addresses;
-        private final int hash;
-
-        CacheKey(URI[] addresses) {
-            // address lists are small, using an sorted arraylist as a key
-            // will have a lower overhead than using a hashset or treeset
-            final URI[] tmp = addresses.clone();
-            Arrays.sort(tmp);
-            this.addresses = tmp;
-            this.hash = Arrays.hashCode(this.addresses);
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof CacheKey)) return false;
-            final CacheKey key = (CacheKey) o;
-            if (hash != key.hash) return false;
-            return Arrays.equals(addresses, key.addresses);
-        }
-
-        @Override
-        public int hashCode() {
-            return hash;
-        }
-    }
-
 }
@@ -30,22 +30,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.io.InterruptedIOException;
 import java.net.Socket;
-import java.net.StandardSocketOptions;
 import java.net.URI;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-
-import static org.apache.commons.io.IOUtils.closeQuietly;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Given a list of addresses, selects the first one to respond.
  * More specifically, we initiate a connection to all specified addresses and
- * wait for any connection events using Selector. We return the first address
- * from the selector or null, if no connections can be made.
+ * wait for the first connection to complete, using the shared selectors of
+ * {@link ConnectionRacer}. We return the first connected address or null, if
+ * no connections can be made.
  */
 @Slf4j
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
@@ -62,96 +58,18 @@ class FastestSocketSelector {
 
     SocketInfo select() throws IOException {
         log.trace("select()");
-        Selector selector = Selector.open();
-        try {
-            initConnections(selector);
-            SelectionKey key = selectFirstConnectedSocketChannel(selector);
-            if (key == null) {
-                return null;
-            }
-            final SocketChannel channel = (SocketChannel) key.channel();
-            key.cancel();
-            channel.configureBlocking(true);
-            return new SocketInfo((URI) key.attachment(), channel.socket());
-        } finally {
-            try {
-                closeSelector(selector);
-            } catch (Exception e) {
-                log.error("Error while closing selector", e);
-            }
-        }
-    }
-
-    private SelectionKey selectFirstConnectedSocketChannel(Selector selector) throws IOException {
-        log.trace("selectFirstConnectedSocketChannel()");
-
-        while (!selector.keys().isEmpty()) {
-            if (selector.select(connectTimeout) == 0) { // Block until something happens
-                return null;
-            }
-
-            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-            while (it.hasNext()) {
-                SelectionKey key = it.next();
-                if (isConnected(key)) {
-                    return key;
-                }
-                it.remove();
-            }
-        }
 
-        return null;
-    }
-
-    private boolean isConnected(SelectionKey key) {
-        if (key.isValid() && key.isConnectable()) {
-            SocketChannel channel = (SocketChannel) key.channel();
-            try {
-                return channel.finishConnect();
-            } catch (Exception e) {
-                key.cancel();
-                closeQuietly(channel);
-                log.trace("Error connecting socket channel: {}", e);
-            }
-        }
-        return false;
-    }
+        CompletableFuture<SocketInfo> race = ConnectionRacer.race(addresses, connectTimeout);
 
-    private void initConnections(Selector selector) {
-        log.trace("initConnections()");
-
-        for (URI target : addresses) {
-            final InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
-            if (address.isUnresolved()) {
-                continue;
-            }
-            SocketChannel channel = null;
-            SelectionKey key = null;
-            try {
-                channel = SocketChannel.open();
-                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
-                channel.configureBlocking(false);
-                key = channel.register(selector, SelectionKey.OP_CONNECT, target);
-                if (channel.connect(address)) {
-                    // connected immediately
-                    break;
-                }
-            } catch (Exception e) {
-                if (key != null) {
-                    key.cancel();
-                }
-                closeQuietly(channel);
-                log.trace("Error connecting to '{}': {}", target, e);
-            }
-        }
-    }
+        try {
+            return race.get();
+        } catch (InterruptedException e) {
+            race.cancel(false);
+            Thread.currentThread().interrupt();
 
-    private static void closeSelector(Selector selector) throws IOException {
-        for (SelectionKey key : selector.keys()) {
-            if (key.isValid()) {
-                closeQuietly(key.channel());
-            }
+            throw new InterruptedIOException("Interrupted while connecting");
+        } catch (ExecutionException e) {
+            throw new IOException("Error while connecting", e.getCause());
         }
-        selector.close();
     }
 }
@@ -0,0 +1,218 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the host names of the security servers the client proxy connects to ahead of the connections, so that
+ * the requests do not block on DNS.
+ * <p>
+ * Host names are resolved in the background when their provider addresses are prefetched, and refreshed every
+ * {@link SystemProperties#getClientProxyDnsRefreshInterval()} seconds while they are in use. The resolver of the
+ * JVM does not expose the TTLs of the records, so the refresh interval acts as the TTL of the resolved addresses.
+ * If a refresh fails, the last good addresses are used until a refresh succeeds. A host name that has not been
+ * resolved yet is resolved when connecting, as without this resolver.
+ */
+@Slf4j
+final class ProviderAddressResolver {
+
+    /**
+     * Resolves all the addresses of a host name.
+     */
+    interface Resolver {
+        /**
+         * @param host the host name
+         * @return the addresses of the host
+         * @throws UnknownHostException if the host name cannot be resolved
+         */
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    /** Host names that have not been used for this many refresh intervals are no longer refreshed. */
+    private static final int IDLE_REFRESH_INTERVALS = 10;
+
+    private static final ProviderAddressResolver INSTANCE = new ProviderAddressResolver(InetAddress::getAllByName,
+            TimeUnit.SECONDS.toMillis(SystemProperties.getClientProxyDnsRefreshInterval()));
+
+    private final Resolver resolver;
+    private final long refreshIntervalMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param resolver the resolver of host names
+     * @param refreshIntervalMillis interval of refreshing the resolved addresses, 0 disables the resolver
+     */
+    ProviderAddressResolver(Resolver resolver, long refreshIntervalMillis) {
+        this.resolver = resolver;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+
+        if (refreshIntervalMillis > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("provider-address-resolver-%d").setDaemon(true).build());
+            executor.scheduleWithFixedDelay(this::refresh, refreshIntervalMillis, refreshIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    static ProviderAddressResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolves the host names of the given addresses in the background, unless they have been resolved already.
+     * @param addresses the provider addresses
+     */
+    void prefetch(Collection<URI> addresses) {
+        if (executor == null) {
+            return;
+        }
+
+        for (URI address : addresses) {
+            String host = address.getHost();
+
+            if (!entries.containsKey(host)) {
+                executor.execute(() -> {
+                    if (!entries.containsKey(host)) {
+                        resolve(host);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns the socket address to connect to for the given provider address. The last resolved address of the
+     * host is used if there is one, otherwise the host name is resolved now.
+     * @param address the provider address
+     * @return the socket address, unresolved if the host name could not be resolved
+     */
+    InetSocketAddress toSocketAddress(URI address) {
+        String host = address.getHost();
+
+        if (executor == null) {
+            return new InetSocketAddress(host, address.getPort());
+        }
+
+        Entry entry = entries.get(host);
+
+        if (entry == null) {
+            entry = resolve(host);
+        }
+
+        if (entry == null) {
+            return InetSocketAddress.createUnresolved(host, address.getPort());
+        }
+
+        entry.lastUsed = System.currentTimeMillis();
+
+        return new InetSocketAddress(entry.addresses[0], address.getPort());
+    }
+
+    /**
+     * Refreshes the resolved addresses of the host names in use, and forgets the host names no longer in use.
+     */
+    void refresh() {
+        long idleSince = System.currentTimeMillis() - IDLE_REFRESH_INTERVALS * refreshIntervalMillis;
+
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().lastUsed < idleSince) {
+                log.trace("Forgetting addresses of {}, not used recently", e.getKey());
+
+                entries.remove(e.getKey(), e.getValue());
+            } else {
+                resolve(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * Stops refreshing the resolved addresses.
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private Entry resolve(String host) {
+        try {
+            InetAddress[] addresses = resolver.resolve(host);
+
+            if (addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+
+            Entry previous = entries.get(host);
+            Entry entry = new Entry(addresses, previous != null ? previous.lastUsed : System.currentTimeMillis());
+
+            entries.put(host, entry);
+
+            return entry;
+        } catch (UnknownHostException e) {
+            Entry previous = entries.get(host);
+
+            if (previous != null) {
+                log.warn("Could not resolve {}, using the previously resolved addresses", host);
+            } else {
+                log.warn("Could not resolve {}", host);
+            }
+
+            return previous;
+        } catch (RuntimeException e) {
+            log.error("Error resolving {}", host, e);
+
+            return entries.get(host);
+        }
+    }
+
+    private static final class Entry {
+        private final InetAddress[] addresses;
+        private volatile long lastUsed;
+
+        Entry(InetAddress[] addresses, long lastUsed) {
+            this.addresses = addresses;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
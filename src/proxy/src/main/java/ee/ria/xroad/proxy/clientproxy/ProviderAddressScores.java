@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps scores of service provider addresses, fed by the connections made to them, so that the best address
+ * can be selected without racing connections to all the addresses. The score of an address is the exponentially
+ * weighted moving average (EWMA) of its connection setup latency, penalized by the EWMA of its error rate.
+ * <p>
+ * A failing address is ejected for an exponentially growing period, starting from {@value #MIN_EJECTION_SECONDS}
+ * seconds and up to {@value #MAX_EJECTION_SECONDS} seconds, and is not selected or raced while ejected.
+ * Addresses are raced when none of them has a fresh score. Otherwise the best scored address is selected, except
+ * occasionally an address without a fresh score is selected instead, or the addresses are raced when all of them
+ * have fresh scores, to explore addresses that have become faster.
+ */
+final class ProviderAddressScores {
+
+    /** Weight of a new sample in the moving averages. */
+    private static final double ALPHA = 0.3;
+
+    /** Latency multiplier of an address that always fails. */
+    private static final double ERROR_PENALTY = 10;
+
+    private static final double EXPLORATION_PROBABILITY = 0.05;
+
+    private static final long MIN_EJECTION_SECONDS = 1;
+    private static final long MAX_EJECTION_SECONDS = 300;
+
+    private final Ticker ticker;
+    private final long scoreTtlNanos;
+    private final Cache<URI, Score> scores;
+
+    /**
+     * @param scoreTtlSeconds time in seconds a score is used without racing the addresses again
+     * @param maximumSize maximum number of addresses to keep scores for
+     * @param ticker time source
+     */
+    ProviderAddressScores(long scoreTtlSeconds, long maximumSize, Ticker ticker) {
+        this.ticker = ticker;
+        this.scoreTtlNanos = TimeUnit.SECONDS.toNanos(scoreTtlSeconds);
+        this.scores = CacheBuilder.newBuilder()
+                .expireAfterAccess(Math.max(scoreTtlSeconds, MAX_EJECTION_SECONDS), TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Selects the best of the given addresses.
+     * @param addresses the addresses of a service provider
+     * @return the address with the best score, an address to explore, or null if the addresses should be raced
+     */
+    URI select(URI[] addresses) {
+        long now = ticker.read();
+        URI best = null;
+        double bestScore = Double.MAX_VALUE;
+        List<URI> unscored = new ArrayList<>();
+
+        for (URI address : addresses) {
+            Score score = scores.getIfPresent(address);
+
+            if (score == null) {
+                unscored.add(address);
+                continue;
+            }
+
+            synchronized (score) {
+                if (score.isEjected(now)) {
+                    continue;
+                }
+
+                if (!score.measured || now - score.updated > scoreTtlNanos) {
+                    unscored.add(address);
+                } else if (score.value() < bestScore) {
+                    best = address;
+                    bestScore = score.value();
+                }
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (best == null || random.nextDouble() >= EXPLORATION_PROBABILITY) {
+            return best;
+        }
+
+        // Only the address that is connected to gets scored, so an unscored address is explored by selecting it
+        return unscored.isEmpty() ? null : unscored.get(random.nextInt(unscored.size()));
+    }
+
+    /**
+     * @param addresses the addresses of a service provider
+     * @return the addresses that are not ejected, or all the addresses if all of them are ejected
+     */
+    URI[] candidates(URI[] addresses) {
+        long now = ticker.read();
+
+        URI[] candidates = Arrays.stream(addresses)
+                .filter(address -> !isEjected(address, now))
+                .toArray(URI[]::new);
+
+        return candidates.length > 0 ? candidates : addresses;
+    }
+
+    /**
+     * Records a successful connection to the address.
+     * @param address the address
+     * @param latencyNanos connection setup time
+     */
+    void success(URI address, long latencyNanos) {
+        Score score = getScore(address);
+
+        synchronized (score) {
+            score.latency = score.measured ? ALPHA * latencyNanos + (1 - ALPHA) * score.latency : latencyNanos;
+            score.measured = true;
+            score.errorRate = (1 - ALPHA) * score.errorRate;
+            score.failures = 0;
+            score.ejectedUntil = 0;
+            score.updated = ticker.read();
+        }
+    }
+
+    /**
+     * Records a failed connection to the address, and ejects the address.
+     * @param address the address
+     */
+    void failure(URI address) {
+        Score score = getScore(address);
+
+        synchronized (score) {
+            long now = ticker.read();
+            long ejection = TimeUnit.SECONDS.toNanos(
+                    Math.min(MIN_EJECTION_SECONDS << Math.min(score.failures, Long.SIZE - 2), MAX_EJECTION_SECONDS));
+
+            score.errorRate = ALPHA + (1 - ALPHA) * score.errorRate;
+            score.failures++;
+            score.ejectedUntil = now + ejection;
+            score.updated = now;
+        }
+    }
+
+    private boolean isEjected(URI address, long now) {
+        Score score = scores.getIfPresent(address);
+
+        if (score == null) {
+            return false;
+        }
+
+        synchronized (score) {
+            return score.isEjected(now);
+        }
+    }
+
+    private Score getScore(URI address) {
+        return scores.asMap().computeIfAbsent(address, a -> new Score());
+    }
+
+    private static final class Score {
+        private boolean measured;
+        private double latency;
+        private double errorRate;
+        private int failures;
+        private long ejectedUntil;
+        private long updated;
+
+        boolean isEjected(long now) {
+            return failures > 0 && now - ejectedUntil < 0;
+        }
+
+        double value() {
+            return latency * (1 + ERROR_PENALTY * errorRate);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import java.io.ByteArrayOutputStream;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeHex;
+
+/**
+ * Cache of the service provider authentication certificate chains that have been verified, so that repeated TLS
+ * handshakes with the same peer skip building and verifying the chain and its OCSP responses.
+ * <p>
+ * An entry is keyed by the service provider and the fingerprint of the peer certificate chain. It is valid until
+ * the earliest of the next update or the end of the freshness period of the OCSP responses and the expiry of the
+ * certificates in the chain, and only for the global configuration version the chain was verified against.
+ */
+final class VerifiedChainCache {
+
+    private final Cache<Key, Entry> entries;
+
+    /**
+     * @param maximumSize maximum number of verified chains to keep
+     */
+    VerifiedChainCache(long maximumSize) {
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * @param provider the service provider
+     * @param fingerprint fingerprint of the peer certificate chain
+     * @param confVersion current global configuration version
+     * @param now current time in milliseconds
+     * @return true if the chain has been verified for the provider and the verification is still valid
+     */
+    boolean isVerified(ClientId provider, String fingerprint, long confVersion, long now) {
+        Key key = new Key(provider, fingerprint);
+        Entry entry = entries.getIfPresent(key);
+
+        if (entry == null) {
+            return false;
+        }
+
+        if (entry.getConfVersion() != confVersion || now >= entry.getValidUntil()) {
+            entries.asMap().remove(key, entry);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Records a successful verification of the chain.
+     * @param provider the service provider
+     * @param fingerprint fingerprint of the peer certificate chain
+     * @param chain all the certificates of the verified chain
+     * @param ocspResponses the OCSP responses the chain was verified with
+     * @param ocspFreshnessSeconds OCSP freshness period the responses were verified with
+     * @param confVersion global configuration version the chain was verified against
+     * @throws Exception if the OCSP responses cannot be read
+     */
+    void verified(ClientId provider, String fingerprint, List<X509Certificate> chain, List<OCSPResp> ocspResponses,
+            int ocspFreshnessSeconds, long confVersion) throws Exception {
+        long validUntil = validUntil(chain, ocspResponses, ocspFreshnessSeconds);
+
+        entries.put(new Key(provider, fingerprint), new Entry(validUntil, confVersion));
+    }
+
+    /**
+     * @param certs the peer certificates
+     * @return the SHA-256 fingerprint of the peer certificate chain
+     * @throws Exception if the certificates cannot be encoded
+     */
+    static String fingerprint(X509Certificate[] certs) throws Exception {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+        for (X509Certificate cert : certs) {
+            encoded.write(cert.getEncoded());
+        }
+
+        return encodeHex(calculateDigest(SHA256_ID, encoded.toByteArray()));
+    }
+
+    /**
+     * @param chain the certificates of a verified chain
+     * @param ocspResponses the OCSP responses the chain was verified with
+     * @param ocspFreshnessSeconds OCSP freshness period
+     * @return time in milliseconds from which the verification is no longer valid
+     * @throws Exception if the OCSP responses cannot be read
+     */
+    static long validUntil(List<X509Certificate> chain, List<OCSPResp> ocspResponses, int ocspFreshnessSeconds)
+            throws Exception {
+        long validUntil = Long.MAX_VALUE;
+
+        for (X509Certificate cert : chain) {
+            validUntil = Math.min(validUntil, cert.getNotAfter().getTime());
+        }
+
+        for (OCSPResp response : ocspResponses) {
+            for (SingleResp singleResp : ((BasicOCSPResp) response.getResponseObject()).getResponses()) {
+                validUntil = Math.min(validUntil,
+                        singleResp.getThisUpdate().getTime() + TimeUnit.SECONDS.toMillis(ocspFreshnessSeconds));
+
+                if (singleResp.getNextUpdate() != null) {
+                    validUntil = Math.min(validUntil, singleResp.getNextUpdate().getTime());
+                }
+            }
+        }
+
+        return validUntil;
+    }
+
+    @Value
+    private static class Key {
+        private final ClientId provider;
+        private final String fingerprint;
+    }
+
+    @Value
+    private static class Entry {
+        private final long validUntil;
+        private final long confVersion;
+    }
+}
@@ -25,11 +25,14 @@
 package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.message.RestResponse;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.FindByQueryId;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.RestLogMessage;
 import ee.ria.xroad.common.messagelog.SoapLogMessage;
@@ -42,12 +45,17 @@ import ee.ria.xroad.common.util.JobManager;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.dispatch.ExecutionContexts;
+import akka.dispatch.OnComplete;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.Await;
+import scala.concurrent.Future;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.LogRecord;
 
@@ -66,7 +74,7 @@ public final class MessageLog {
 
     public static final String LOG_MANAGER = "LogManager";
 
-    private static final String LOG_MANAGER_IMPL_CLASS = SystemProperties.PREFIX + "proxy.messageLogManagerImpl";
+    static final String LOG_MANAGER_IMPL_CLASS = SystemProperties.PREFIX + "proxy.messageLogManagerImpl";
     public static final String CONTROL_AWARE_DISPATCHER = "akka.control-aware-dispatcher";
 
     private static ActorRef logManager;
@@ -107,6 +115,65 @@ public final class MessageLog {
         }
     }
 
+    /**
+     * Save the message and signature to message log without waiting for the log manager. Attachments are not logged.
+     *
+     * @param message    the message
+     * @param signature  the signature
+     * @param clientSide whether this message is logged by the client proxy
+     * @param xRequestId (optional) additional request if to distinguish request/response pairs
+     * @return future that completes when the message has been saved, or completes exceptionally with
+     * a coded exception if saving failed
+     */
+    public static CompletableFuture<Void> logAsync(SoapMessageImpl message, SignatureData signature,
+            boolean clientSide, String xRequestId) {
+        CompletableFuture<Void> logged = new CompletableFuture<>();
+
+        try {
+            askAsync(new SoapLogMessage(message, signature, clientSide, xRequestId)).onComplete(
+                    new OnComplete<Object>() {
+                        @Override
+                        public void onComplete(Throwable failure, Object result) {
+                            Throwable error = failure == null && result instanceof Exception
+                                    ? (Exception) result : failure;
+
+                            if (error != null) {
+                                logged.completeExceptionally(translateWithPrefix(X_LOGGING_FAILED_X, error));
+                            } else {
+                                logged.complete(null);
+                            }
+                        }
+                    }, ExecutionContexts.sameThreadExecutionContext());
+        } catch (Exception e) {
+            logged.completeExceptionally(translateWithPrefix(X_LOGGING_FAILED_X, e));
+        }
+
+        return logged;
+    }
+
+    /**
+     * Tells whether the message log would save the body of a message exchanged with the given service, according
+     * to the configured log manager and the body logging settings, so that a body that is not saved does not need
+     * to be cached for logging.
+     * @param service the service of the message
+     * @param clientside true if the message is logged by the client proxy
+     * @return true if the message body would be saved
+     */
+    public static boolean isBodyLogged(ServiceId service, boolean clientside) {
+        // The default log manager saves nothing, not even the body
+        if (NullLogManager.class.isAssignableFrom(getLogManagerImpl())
+                || MessageLogProperties.getMaxLoggableBodySize() <= 0) {
+            return false;
+        }
+
+        Collection<ClientId> overrides = clientside
+                ? MessageLogProperties.getMessageBodyLoggingRemoteProducerOverrides()
+                : MessageLogProperties.getMessageBodyLoggingLocalProducerOverrides();
+
+        return MessageLogProperties.isMessageBodyLoggingEnabled()
+                != MessageLogProperties.isMessageBodyLoggingOverridden(service.getClientId(), overrides);
+    }
+
     /**
      * Save the message and signature to message log. The message body is saved from an input stream.
      */
@@ -198,6 +265,12 @@ public final class MessageLog {
         }
     }
 
+    private static Future<Object> askAsync(Object message) {
+        assertInitialized();
+
+        return Patterns.ask(logManager, message, new Timeout(ASK_TIMEOUT, TimeUnit.SECONDS));
+    }
+
     private static Object ask(Object message) throws Exception {
         assertInitialized();
 
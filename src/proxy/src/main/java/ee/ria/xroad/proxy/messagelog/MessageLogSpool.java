@@ -0,0 +1,274 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.message.SaxSoapParserImpl;
+import ee.ria.xroad.common.message.Soap;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.signature.SignatureData;
+
+import akka.pattern.AskTimeoutException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable spool of SOAP messages that could not be saved to the message log. Spooled messages are saved to the
+ * message log by {@link RetryJob}, in the order they were spooled. Spool files that cannot be read are moved
+ * aside with the suffix {@value #FAILED_FILE_SUFFIX}, so that they do not block the messages spooled after them.
+ * <p>
+ * Only messages that the message log has definitely failed to save are spooled (see {@link #shouldSpool}), since
+ * saving a spooled message that the message log has saved already would log it twice.
+ */
+@Slf4j
+public final class MessageLogSpool {
+
+    private static final String SPOOL_FILE_GLOB = "*.spool";
+    private static final String SPOOL_FILE_SUFFIX = ".spool";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String FAILED_FILE_SUFFIX = ".failed";
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /**
+     * Saves a spooled message to the message log.
+     */
+    interface Saver {
+        /**
+         * @param message    the message
+         * @param signature  the signature
+         * @param clientSide whether this message is logged by the client proxy
+         * @param xRequestId (optional) additional request if to distinguish request/response pairs
+         * @throws Exception if saving the message failed
+         */
+        void save(SoapMessageImpl message, SignatureData signature, boolean clientSide, String xRequestId)
+                throws Exception;
+    }
+
+    private MessageLogSpool() {
+    }
+
+    /**
+     * Tells whether a message should be spooled after the message log failed to save it. A message is not spooled
+     * if the log manager did not reply in time, since it may still save the message.
+     *
+     * @param failure the failure of saving the message
+     * @return true if the message log definitely did not save the message
+     */
+    public static boolean shouldSpool(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof AskTimeoutException) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the message and signature to the spool, so that they are saved to the message log later.
+     *
+     * @param message    the message
+     * @param signature  the signature
+     * @param clientSide whether this message is logged by the client proxy
+     * @param xRequestId (optional) additional request if to distinguish request/response pairs
+     * @throws IOException if writing the spool file failed
+     */
+    public static void spool(SoapMessageImpl message, SignatureData signature, boolean clientSide,
+            String xRequestId) throws IOException {
+        spool(Paths.get(MessageLogProperties.getSpoolPath()), message, signature, clientSide, xRequestId);
+    }
+
+    static void spool(Path dir, SoapMessageImpl message, SignatureData signature, boolean clientSide,
+            String xRequestId) throws IOException {
+        Files.createDirectories(dir);
+
+        // File names sort in the order the messages were spooled, also within the same millisecond
+        String name = String.format("%020d-%020d-%s", System.currentTimeMillis(), SEQUENCE.getAndIncrement(),
+                UUID.randomUUID());
+        Path tempFile = dir.resolve(name + TEMP_FILE_SUFFIX);
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tempFile))) {
+            writeString(out, message.getContentType());
+            writeBytes(out, message.getBytes());
+            writeString(out, signature.getSignatureXml());
+            writeString(out, signature.getHashChainResult());
+            writeString(out, signature.getHashChain());
+            out.writeBoolean(clientSide);
+            writeString(out, xRequestId);
+        }
+
+        Files.move(tempFile, dir.resolve(name + SPOOL_FILE_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Saves the spooled messages in the given directory, stopping at the first message that could not be saved.
+     *
+     * @param dir   the spool directory
+     * @param saver saves a message to the message log
+     * @return the number of messages saved
+     * @throws Exception if reading the spool or saving a message failed
+     */
+    static int saveSpooled(Path dir, Saver saver) throws Exception {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+
+        List<Path> files = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SPOOL_FILE_GLOB)) {
+            stream.forEach(files::add);
+        }
+
+        Collections.sort(files);
+
+        int saved = 0;
+
+        for (Path file : files) {
+            SpooledMessage spooled;
+
+            try {
+                spooled = read(file);
+            } catch (Exception e) {
+                quarantine(file, e);
+
+                continue;
+            }
+
+            // A message that could not be saved is retried later, before the messages spooled after it
+            saver.save(spooled.message, spooled.signature, spooled.clientSide, spooled.xRequestId);
+
+            Files.delete(file);
+            saved++;
+        }
+
+        return saved;
+    }
+
+    private static SpooledMessage read(Path file) throws Exception {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            String contentType = readString(in);
+            Soap soap = new SaxSoapParserImpl().parse(contentType, new ByteArrayInputStream(readBytes(in)));
+            SignatureData signature = new SignatureData(readString(in), readString(in), readString(in));
+            boolean clientSide = in.readBoolean();
+            String xRequestId = readString(in);
+
+            if (!(soap instanceof SoapMessageImpl)) {
+                throw new IOException("Spooled message is not a SOAP request or response");
+            }
+
+            return new SpooledMessage((SoapMessageImpl) soap, signature, clientSide, xRequestId);
+        }
+    }
+
+    private static void quarantine(Path file, Exception cause) throws IOException {
+        log.error("Could not read spooled message {}, moving it aside", file, cause);
+
+        Files.move(file, file.resolveSibling(file.getFileName() + FAILED_FILE_SUFFIX));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] value = readBytes(in);
+
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > in.available()) {
+            throw new EOFException("Spool file is truncated or corrupted");
+        }
+
+        byte[] value = new byte[length];
+        in.readFully(value);
+
+        return value;
+    }
+
+    @RequiredArgsConstructor
+    private static final class SpooledMessage {
+        private final SoapMessageImpl message;
+        private final SignatureData signature;
+        private final boolean clientSide;
+        private final String xRequestId;
+    }
+
+    /**
+     * Periodically saves the spooled messages to the message log.
+     */
+    @DisallowConcurrentExecution
+    public static class RetryJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+            try {
+                int saved = saveSpooled(Paths.get(MessageLogProperties.getSpoolPath()), MessageLog::log);
+
+                if (saved > 0) {
+                    log.info("Saved {} spooled messages to the message log", saved);
+                }
+            } catch (Exception e) {
+                log.error("Saving spooled messages to the message log failed, retrying later", e);
+            }
+        }
+    }
+}
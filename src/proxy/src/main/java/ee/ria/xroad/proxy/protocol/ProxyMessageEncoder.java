@@ -140,7 +140,18 @@ public class ProxyMessageEncoder implements ProxyMessageConsumer {
     @Override
     public void ocspResponse(OCSPResp resp) {
         try {
-            byte[] responseEncoded = resp.getEncoded();
+            ocspResponse(resp.getEncoded());
+        } catch (Exception ex) {
+            throw translateException(ex);
+        }
+    }
+
+    /**
+     * Encode an already encoded OCSP response
+     * @param responseEncoded the encoded OCSP response
+     */
+    public void ocspResponse(byte[] responseEncoded) {
+        try {
             log.trace("writeOcspResponse({} bytes)", responseEncoded.length);
             mpEncoder.startPart(MimeTypes.OCSP_RESPONSE);
             mpEncoder.write(responseEncoded);
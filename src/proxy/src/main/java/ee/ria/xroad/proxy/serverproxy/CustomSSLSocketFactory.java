@@ -25,6 +25,7 @@
 package ee.ria.xroad.proxy.serverproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.conf.serverconf.IsCertificateIndex;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
@@ -44,7 +45,6 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
-import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
 
@@ -96,7 +96,7 @@ class CustomSSLSocketFactory extends SSLConnectionSocketFactory {
         log.trace("Verifying service TLS certificate...");
 
         ClientId client = service.getClientId();
-        List<X509Certificate> isCerts = ServerConf.getIsCerts(client);
+        IsCertificateIndex isCerts = ServerConf.getIsCertificateIndex(client);
         if (isCerts.isEmpty()) {
             throw new Exception(String.format(
                     "Client '%s' has no IS certificates", client));
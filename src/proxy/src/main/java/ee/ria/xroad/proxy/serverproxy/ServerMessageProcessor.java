@@ -29,6 +29,7 @@ import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.cert.CertHelper;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.ResolvedService;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
@@ -117,6 +118,7 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private String originalSoapAction;
     private ProxyMessage requestMessage;
     private ServiceId requestServiceId;
+    private ResolvedService requestService;
     private SoapMessageImpl responseSoap;
     private SoapFault responseFault;
     private String xRequestId;
@@ -278,6 +280,9 @@ class ServerMessageProcessor extends MessageProcessorBase {
                 requestServiceId = soapMessage.getService();
 
                 verifySecurityServer();
+
+                requestService = ServerConf.resolveService(requestServiceId);
+
                 verifyClientStatus();
 
                 responseSigningCtx = KeyConf.getSigningCtx(requestServiceId.getClientId());
@@ -326,7 +331,7 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private void verifyClientStatus() {
         ClientId client = requestServiceId.getClientId();
 
-        String status = ServerConf.getMemberStatus(client);
+        String status = requestService.getProviderStatus();
 
         if (!ClientType.STATUS_REGISTERED.equals(status)) {
             throw new CodedException(X_UNKNOWN_MEMBER, "Client '%s' not found", client);
@@ -375,23 +380,23 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private void verifyAccess() throws Exception {
         log.trace("verifyAccess()");
 
-        if (!ServerConf.serviceExists(requestServiceId)) {
+        if (!requestService.exists()) {
             throw new CodedException(X_UNKNOWN_SERVICE, "Unknown service: %s", requestServiceId);
         }
 
-        DescriptionType descriptionType = ServerConf.getDescriptionType(requestServiceId);
+        DescriptionType descriptionType = requestService.getDescriptionType();
         if (descriptionType != null && descriptionType != DescriptionType.WSDL) {
             throw new CodedException(X_INVALID_SERVICE_TYPE,
                     "Service is a REST service and cannot be called using SOAP interface");
         }
 
-        verifySecurityCategory(requestServiceId);
+        verifySecurityCategory(requestService);
 
-        if (!ServerConf.isQueryAllowed(requestMessage.getSoap().getClient(), requestServiceId)) {
+        if (!requestService.isQueryAllowed(requestMessage.getSoap().getClient())) {
             throw new CodedException(X_ACCESS_DENIED, "Request is not allowed: %s", requestServiceId);
         }
 
-        String disabledNotice = ServerConf.getDisabledNotice(requestServiceId);
+        String disabledNotice = requestService.getDisabledNotice();
 
         if (disabledNotice != null) {
             throw new CodedException(X_SERVICE_DISABLED, "Service %s is disabled: %s", requestServiceId,
@@ -399,8 +404,8 @@ class ServerMessageProcessor extends MessageProcessorBase {
         }
     }
 
-    private void verifySecurityCategory(ServiceId service) throws Exception {
-        Collection<SecurityCategoryId> required = ServerConf.getRequiredCategories(service);
+    private void verifySecurityCategory(ResolvedService service) throws Exception {
+        Collection<SecurityCategoryId> required = service.getRequiredCategories();
 
         if (required == null || required.isEmpty()) {
             // Service requires nothing, we are satisfied.
@@ -617,14 +622,14 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
             log.trace("processRequest({})", requestServiceId);
 
-            String address = ServerConf.getServiceAddress(requestServiceId);
+            String address = requestService.getAddress();
 
             if (address == null || address.isEmpty()) {
                 throw new CodedException(X_SERVICE_MISSING_URL, "Service address not specified for '%s'",
                         requestServiceId);
             }
 
-            int timeout = TimeUtils.secondsToMillis(ServerConf.getServiceTimeout(requestServiceId));
+            int timeout = TimeUtils.secondsToMillis(requestService.getTimeout());
 
             sender.setConnectionTimeout(timeout);
             sender.setSocketTimeout(timeout);
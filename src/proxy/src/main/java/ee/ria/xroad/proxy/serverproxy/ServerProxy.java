@@ -34,6 +34,7 @@ import ee.ria.xroad.common.util.StartStop;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.proxy.antidos.AntiDosConnector;
 import ee.ria.xroad.proxy.util.SSLContextUtil;
+import ee.ria.xroad.proxy.util.TlsHandshakeMetrics;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -64,9 +65,6 @@ public class ServerProxy implements StartStop {
 
     private static final int IDLE_MONITOR_INTERVAL = 100;
 
-    // SSL session timeout in seconds
-    private static final int SSL_SESSION_TIMEOUT = 600;
-
     private static final int CONNECTOR_SO_LINGER_MILLIS = SystemProperties.getServerProxyConnectorSoLinger();
     private static final String CLIENT_PROXY_CONNECTOR_NAME = "ClientProxyConnector";
 
@@ -224,12 +222,17 @@ public class ServerProxy implements StartStop {
         cf.setIncludeProtocols(CryptoUtils.SSL_PROTOCOL);
         cf.setIncludeCipherSuites(SystemProperties.getXroadTLSCipherSuites());
         cf.setSessionCachingEnabled(true);
-        cf.setSslSessionTimeout(SSL_SESSION_TIMEOUT);
+        cf.setSslSessionCacheSize(SystemProperties.getServerProxyTlsSessionCacheSize());
+        cf.setSslSessionTimeout(SystemProperties.getServerProxyTlsSessionTimeout());
         cf.setSslContext(SSLContextUtil.createXroadSSLContext());
 
-        return SystemProperties.isAntiDosEnabled()
+        ServerConnector connector = SystemProperties.isAntiDosEnabled()
                 ? new AntiDosConnector(server, ACCEPTOR_COUNT, cf)
                 : new ServerConnector(server, ACCEPTOR_COUNT, -1, cf);
+
+        connector.addBean(TlsHandshakeMetrics.serverHandshakeListener());
+
+        return connector;
     }
 
 }
@@ -24,12 +24,14 @@
  */
 package ee.ria.xroad.proxy.util;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.AuthTrustManager;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.conf.AuthKeyManager;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 
 import java.security.KeyManagementException;
@@ -53,4 +55,21 @@ public final class SSLContextUtil {
                 new SecureRandom());
         return ctx;
     }
+
+    /**
+     * Creates SSLContext used for connecting to other security servers. The client session cache is sized for
+     * resuming the TLS sessions to the other security servers instead of doing full handshakes.
+     * @return the SSL context for connections to other security servers
+     * @throws KeyManagementException if initializing the context with the authentication key fails
+     * @throws NoSuchAlgorithmException if the SSL protocol is not supported
+     */
+    public static SSLContext createXroadClientSSLContext() throws KeyManagementException, NoSuchAlgorithmException {
+        SSLContext ctx = createXroadSSLContext();
+
+        SSLSessionContext sessions = ctx.getClientSessionContext();
+        sessions.setSessionCacheSize(SystemProperties.getClientProxyTlsSessionCacheSize());
+        sessions.setSessionTimeout(SystemProperties.getClientProxyTlsSessionTimeout());
+
+        return ctx;
+    }
 }
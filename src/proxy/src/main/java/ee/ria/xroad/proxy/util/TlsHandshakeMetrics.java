@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Counts the full and the resumed TLS handshakes between security servers. The counters are exposed over JMX,
+ * in the domain {@value #JMX_DOMAIN}: meters {@code client.full}, {@code client.resumed}, {@code server.full}
+ * and {@code server.resumed}.
+ * <p>
+ * A session is marked when its first handshake completes, so a handshake that completes with an already marked
+ * session has resumed it.
+ */
+public final class TlsHandshakeMetrics {
+
+    static final String JMX_DOMAIN = "xroad.proxy.tls";
+
+    private static final String MARKER = TlsHandshakeMetrics.class.getName();
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+    private static final Meter CLIENT_FULL = METRICS.meter("client.full");
+    private static final Meter CLIENT_RESUMED = METRICS.meter("client.resumed");
+    private static final Meter SERVER_FULL = METRICS.meter("server.full");
+    private static final Meter SERVER_RESUMED = METRICS.meter("server.resumed");
+
+    static {
+        JmxReporter.forRegistry(METRICS).inDomain(JMX_DOMAIN).build().start();
+    }
+
+    private TlsHandshakeMetrics() {
+    }
+
+    /**
+     * Records a completed handshake of a connection to another security server.
+     * @param session the session of the connection
+     * @return true if the handshake resumed a previous session
+     */
+    public static boolean clientHandshakeCompleted(SSLSession session) {
+        return handshakeCompleted(session, CLIENT_FULL, CLIENT_RESUMED);
+    }
+
+    /**
+     * @return listener that records the completed handshakes of a server proxy connector, to be added as a bean
+     * to the connector
+     */
+    public static SslHandshakeListener serverHandshakeListener() {
+        return new SslHandshakeListener() {
+            @Override
+            public void handshakeSucceeded(Event event) {
+                handshakeCompleted(event.getSSLEngine().getSession(), SERVER_FULL, SERVER_RESUMED);
+            }
+        };
+    }
+
+    private static boolean handshakeCompleted(SSLSession session, Meter full, Meter resumed) {
+        // A failed handshake leaves an invalid placeholder session, which is not counted
+        if (!session.isValid()) {
+            return false;
+        }
+
+        if (session.getValue(MARKER) != null) {
+            resumed.mark();
+
+            return true;
+        }
+
+        session.putValue(MARKER, Boolean.TRUE);
+        full.mark();
+
+        return false;
+    }
+}
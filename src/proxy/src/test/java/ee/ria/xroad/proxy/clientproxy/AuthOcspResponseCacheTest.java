@@ -0,0 +1,137 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.cert.CertChain;
+import ee.ria.xroad.common.conf.globalconf.AuthKey;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.proxy.conf.KeyConf;
+import ee.ria.xroad.proxy.testsuite.EmptyKeyConf;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test AuthOcspResponseCache
+ */
+public class AuthOcspResponseCacheTest {
+
+    private static final long MAX_AGE = TimeUnit.SECONDS.toMillis(AuthOcspResponseCache.MAX_AGE_SECONDS);
+
+    private AuthKeyConf keyConf;
+    private long now;
+
+    /**
+     * Sets up the key configuration with the consumer authentication certificate.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        GlobalConf.reload(new EmptyGlobalConf());
+
+        keyConf = new AuthKeyConf();
+        keyConf.cert = TestCertUtil.getConsumer().certChain[0];
+        KeyConf.reload(keyConf);
+
+        now = keyConf.cert.getNotBefore().getTime() + TimeUnit.DAYS.toMillis(1);
+        keyConf.thisUpdate = now;
+
+        AuthOcspResponseCache.clear();
+    }
+
+    @Test
+    public void responsesAreCachedForAtMostMaxAge() throws Exception {
+        List<byte[]> responses = AuthOcspResponseCache.getEncodedResponses(now);
+
+        assertEquals(1, responses.size());
+        assertSame(responses, AuthOcspResponseCache.getEncodedResponses(now + MAX_AGE - 1));
+        assertEquals(1, keyConf.fetches);
+
+        AuthOcspResponseCache.getEncodedResponses(now + MAX_AGE);
+        assertEquals(2, keyConf.fetches);
+    }
+
+    @Test
+    public void responsesAreCachedForAtMostOcspValidity() throws Exception {
+        keyConf.nextUpdate = now + 1000;
+
+        List<byte[]> responses = AuthOcspResponseCache.getEncodedResponses(now);
+
+        assertSame(responses, AuthOcspResponseCache.getEncodedResponses(now + 999));
+        assertEquals(1, keyConf.fetches);
+
+        AuthOcspResponseCache.getEncodedResponses(now + 1000);
+        assertEquals(2, keyConf.fetches);
+    }
+
+    @Test
+    public void authCertChainChangeInvalidatesResponses() throws Exception {
+        AuthOcspResponseCache.getEncodedResponses(now);
+
+        keyConf.cert = TestCertUtil.getProducer().certChain[0];
+
+        AuthOcspResponseCache.getEncodedResponses(now);
+        assertEquals(2, keyConf.fetches);
+    }
+
+    private static final class AuthKeyConf extends EmptyKeyConf {
+        private X509Certificate cert;
+        private long thisUpdate;
+        private Long nextUpdate;
+        private int fetches;
+
+        @Override
+        public AuthKey getAuthKey() {
+            try {
+                return new AuthKey(CertChain.create("EE", new X509Certificate[] {cert, TestCertUtil.getCaCert()}),
+                        null);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public OCSPResp getOcspResponse(X509Certificate ocspCert) throws Exception {
+            fetches++;
+
+            return OcspTestUtils.createOCSPResponse(ocspCert, TestCertUtil.getCaCert(),
+                    TestCertUtil.getOcspSigner().certChain[0], TestCertUtil.getOcspSigner().key,
+                    CertificateStatus.GOOD, new Date(thisUpdate), nextUpdate != null ? new Date(nextUpdate) : null);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.CodedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ee.ria.xroad.common.ErrorCodes.X_SERVER_BUSY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test ClientProxyThreadPool
+ */
+public class ClientProxyThreadPoolTest {
+
+    private static final long QUEUE_DEADLINE = 100;
+    private static final int IDLE_TIMEOUT = 60000;
+
+    private ClientProxyThreadPool pool;
+
+    /**
+     * Starts a pool with a single thread and room for a single queued job.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        pool = new ClientProxyThreadPool(1, 1, IDLE_TIMEOUT, 1, QUEUE_DEADLINE);
+        pool.start();
+    }
+
+    /**
+     * Stops the pool.
+     * @throws Exception in case of any errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        pool.stop();
+    }
+
+    @Test
+    public void rejectRequestsWhenQueueIsFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch queuedJobDone = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch rejectedJobDone = new CountDownLatch(1);
+
+        pool.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        pool.execute(queuedJobDone::countDown);
+        assertEquals(1, pool.getQueueSize());
+
+        // The job does not fit into the queue, it is run only to reject its request with a fault
+        pool.execute(() -> {
+            try {
+                ClientProxyThreadPool.checkQueueDeadline();
+            } catch (Throwable t) {
+                error.set(t);
+            } finally {
+                rejectedJobDone.countDown();
+            }
+        });
+
+        assertTrue(rejectedJobDone.await(5, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof CodedException);
+        assertEquals(X_SERVER_BUSY, ((CodedException) error.get()).getFaultCode());
+
+        release.countDown();
+        assertTrue(queuedJobDone.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectJobsWhenQueueFullThreadsAreBusy() throws Exception {
+        CountDownLatch running = new CountDownLatch(1 + ClientProxyThreadPool.QUEUE_FULL_THREADS);
+        CountDownLatch release = new CountDownLatch(1);
+
+        pool.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        pool.execute(() -> await(release));
+
+        for (int i = 0; i < ClientProxyThreadPool.QUEUE_FULL_THREADS; i++) {
+            pool.execute(() -> {
+                running.countDown();
+                await(release);
+            });
+        }
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        try {
+            pool.execute(release::countDown);
+            fail("Expected the job to be rejected");
+        } catch (RejectedExecutionException expected) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void acceptJobsWithinQueueDeadline() throws Exception {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        pool.execute(() -> {
+            try {
+                ClientProxyThreadPool.checkQueueDeadline();
+            } catch (Throwable t) {
+                error.set(t);
+            } finally {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNull(error.get());
+
+        // Outside of the pool, there is nothing to check
+        ClientProxyThreadPool.checkQueueDeadline();
+    }
+
+    @Test
+    public void rejectRequestsOfJobsQueuedPastDeadline() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        pool.execute(() -> {
+            running.countDown();
+            sleep(3 * QUEUE_DEADLINE);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        pool.execute(() -> {
+            try {
+                ClientProxyThreadPool.checkQueueDeadline();
+            } catch (Throwable t) {
+                error.set(t);
+            }
+
+            try {
+                // Subsequent requests of the same job have not waited
+                ClientProxyThreadPool.checkQueueDeadline();
+            } catch (Throwable t) {
+                error.set(new AssertionError("Subsequent request rejected", t));
+            } finally {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof CodedException);
+        assertEquals(X_SERVER_BUSY, ((CodedException) error.get()).getFaultCode());
+    }
+
+    @Test
+    public void acceptRequestsOfLongRunningJobs() throws Exception {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Like the selector producer, which handles requests long after it was started
+        pool.execute(() -> {
+            sleep(3 * QUEUE_DEADLINE);
+
+            try {
+                ClientProxyThreadPool.checkQueueDeadline();
+            } catch (Throwable t) {
+                error.set(t);
+            } finally {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNull(error.get());
+    }
+
+    @Test
+    public void acceptRequestsHandedToIdleReservedThreads() throws Exception {
+        ClientProxyThreadPool reservingPool = new ClientProxyThreadPool(4, 1, IDLE_TIMEOUT, 1, QUEUE_DEADLINE);
+        reservingPool.setReservedThreads(1);
+        reservingPool.start();
+
+        try {
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            CountDownLatch done = new CountDownLatch(1);
+
+            Runnable request = () -> {
+                try {
+                    ClientProxyThreadPool.checkQueueDeadline();
+                } catch (Throwable t) {
+                    error.set(t);
+                } finally {
+                    done.countDown();
+                }
+            };
+
+            // The first attempt starts a reserved thread, which then idles for longer than the queue deadline
+            assertFalse(reservingPool.tryExecute(request));
+            sleep(3 * QUEUE_DEADLINE);
+
+            assertTrue(reservingPool.tryExecute(request));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertNull(error.get());
+        } finally {
+            reservingPool.stop();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
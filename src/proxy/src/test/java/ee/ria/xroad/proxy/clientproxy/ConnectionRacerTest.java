@@ -0,0 +1,119 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test ConnectionRacer
+ */
+public class ConnectionRacerTest {
+
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private ServerSocket listener;
+    private URI listening;
+    private URI closed;
+
+    /**
+     * Opens a local listener, and finds a local port without a listener.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        listening = new URI("https://127.0.0.1:" + listener.getLocalPort());
+
+        try (ServerSocket unused = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            closed = new URI("https://127.0.0.1:" + unused.getLocalPort());
+        }
+    }
+
+    /**
+     * Closes the listener.
+     * @throws Exception in case of any errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        listener.close();
+    }
+
+    @Test
+    public void selectListeningAddress() throws Exception {
+        URI unresolved = new URI("https://host.invalid:443");
+
+        for (int i = 0; i < 10; i++) {
+            SocketInfo info = ConnectionRacer.race(new URI[] {closed, unresolved, listening}, CONNECT_TIMEOUT).get();
+
+            assertNotNull(info);
+            assertEquals(listening, info.getUri());
+            assertTrue(info.getSocket().isConnected());
+            assertTrue(info.getSocket().getChannel().isBlocking());
+
+            info.getSocket().close();
+
+            try (Socket accepted = listener.accept()) {
+                assertTrue(accepted.isConnected());
+            }
+        }
+    }
+
+    @Test
+    public void returnNullWhenNoConnectionCanBeMade() throws Exception {
+        URI unreachable = new URI("https://255.255.255.255:443");
+
+        // Well before the connect timeout
+        assertNull(ConnectionRacer.race(new URI[] {closed, new URI("https://host.invalid:443"), unreachable},
+                CONNECT_TIMEOUT).get(CONNECT_TIMEOUT / 2, TimeUnit.MILLISECONDS));
+
+        // Connecting to a broadcast address fails at once, the race must not wait for it without a timeout
+        assertNull(ConnectionRacer.race(new URI[] {unreachable}, 0).get(CONNECT_TIMEOUT / 2, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void selectWithFastestSocketSelector() throws Exception {
+        SocketInfo info = new FastestSocketSelector(new URI[] {closed, listening}, CONNECT_TIMEOUT).select();
+
+        assertNotNull(info);
+        assertEquals(listening, info.getUri());
+
+        info.getSocket().close();
+    }
+}
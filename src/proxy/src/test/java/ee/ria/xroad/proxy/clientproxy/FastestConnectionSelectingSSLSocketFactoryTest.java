@@ -0,0 +1,112 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.ID_TARGETS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test FastestConnectionSelectingSSLSocketFactory
+ */
+public class FastestConnectionSelectingSSLSocketFactoryTest {
+
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    private URI[] addresses;
+    private HttpContext context;
+
+    /**
+     * Creates the addresses and the context.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        addresses = new URI[] {new URI("https://10.0.0.1:5500"), new URI("https://10.0.0.2:5500")};
+
+        context = new BasicHttpContext();
+        context.setAttribute(ID_TARGETS, addresses);
+    }
+
+    @Test
+    public void connectScoredAddressWithoutRacing() throws Exception {
+        RecordingSocketFactory factory = new RecordingSocketFactory();
+
+        connect(factory);
+        connect(factory);
+
+        assertEquals(2, factory.connects.size());
+
+        // The first connection races the addresses, the second one connects to a single address
+        assertArrayEquals(addresses, factory.connects.get(0));
+        assertEquals(1, factory.connects.get(1).length);
+    }
+
+    private void connect(FastestConnectionSelectingSSLSocketFactory factory) throws Exception {
+        try (Socket socket = factory.connectSocket(CONNECT_TIMEOUT, null, null, null, null, context)) {
+            // Only the addresses connected to are of interest
+        }
+    }
+
+    /**
+     * Records the addresses connected to, and connects the first of them without a network connection.
+     */
+    private static final class RecordingSocketFactory extends FastestConnectionSelectingSSLSocketFactory {
+        private final List<URI[]> connects = new ArrayList<>();
+
+        RecordingSocketFactory() throws Exception {
+            super(SSLContext.getDefault());
+        }
+
+        @Override
+        SocketInfo connect(URI[] targets, HttpContext httpContext, int timeout) throws IOException {
+            connects.add(targets);
+
+            return new SocketInfo(targets[0], SSLSocketFactory.getDefault().createSocket());
+        }
+
+        @Override
+        void prepareAndVerify(SSLSocket sslSocket, URI selectedAddress, HttpContext httpContext) {
+            // The unconnected socket is not verified
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test ProviderAddressResolver
+ */
+public class ProviderAddressResolverTest {
+
+    private static final long REFRESH_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final String HOST = "ss1.example.com";
+
+    private StubResolver dns;
+    private ProviderAddressResolver resolver;
+    private URI address;
+
+    /**
+     * Creates the resolver with a stub DNS.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        dns = new StubResolver();
+        dns.answer(HOST, "10.0.0.1");
+
+        resolver = new ProviderAddressResolver(dns, REFRESH_INTERVAL);
+        address = new URI("https", null, HOST, 5500, "/", null, null);
+    }
+
+    /**
+     * Stops the resolver.
+     */
+    @After
+    public void tearDown() {
+        resolver.shutdown();
+    }
+
+    @Test
+    public void resolveOnceAndServeCachedAddress() throws Exception {
+        assertResolvesTo("10.0.0.1");
+        assertResolvesTo("10.0.0.1");
+
+        assertEquals(1, dns.queries.get());
+    }
+
+    @Test
+    public void refreshUpdatesAddress() throws Exception {
+        assertResolvesTo("10.0.0.1");
+
+        dns.answer(HOST, "10.0.0.2");
+        resolver.refresh();
+
+        assertResolvesTo("10.0.0.2");
+        assertEquals(2, dns.queries.get());
+    }
+
+    @Test
+    public void keepLastGoodAddressWhenRefreshFails() throws Exception {
+        assertResolvesTo("10.0.0.1");
+
+        dns.fail(HOST);
+        resolver.refresh();
+
+        assertResolvesTo("10.0.0.1");
+    }
+
+    @Test
+    public void unknownHostIsUnresolved() {
+        dns.fail(HOST);
+
+        InetSocketAddress socketAddress = resolver.toSocketAddress(address);
+
+        assertTrue(socketAddress.isUnresolved());
+        assertEquals(HOST, socketAddress.getHostString());
+        assertEquals(5500, socketAddress.getPort());
+    }
+
+    @Test
+    public void slowRefreshDoesNotBlockConnecting() throws Exception {
+        assertResolvesTo("10.0.0.1");
+
+        dns.answer(HOST, "10.0.0.2");
+        dns.block();
+
+        Thread refresher = new Thread(resolver::refresh);
+        refresher.start();
+
+        assertTrue(dns.blocked.await(10, TimeUnit.SECONDS));
+        assertResolvesTo("10.0.0.1");
+
+        dns.unblock();
+        refresher.join();
+
+        assertResolvesTo("10.0.0.2");
+    }
+
+    @Test
+    public void prefetchResolvesInBackground() throws Exception {
+        dns.answer("ss2.example.com", "10.0.0.3");
+        dns.block();
+
+        resolver.prefetch(Arrays.asList(address, new URI("https", null, "ss2.example.com", 5500, "/", null, null)));
+
+        assertTrue(dns.blocked.await(10, TimeUnit.SECONDS));
+        assertEquals(0, dns.queries.get());
+
+        dns.unblock();
+
+        // the hosts are resolved in order, so the first one has been stored once the second one is queried
+        for (int i = 0; i < 1000 && dns.queries.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+
+        assertResolvesTo("10.0.0.1");
+        assertEquals(2, dns.queries.get());
+    }
+
+    private void assertResolvesTo(String ip) throws UnknownHostException {
+        InetSocketAddress socketAddress = resolver.toSocketAddress(address);
+
+        assertEquals(InetAddress.getByName(ip), socketAddress.getAddress());
+        assertEquals(5500, socketAddress.getPort());
+    }
+
+    private static final class StubResolver implements ProviderAddressResolver.Resolver {
+        private final Map<String, String> answers = new ConcurrentHashMap<>();
+        private final AtomicInteger queries = new AtomicInteger();
+
+        private volatile CountDownLatch blocked = new CountDownLatch(1);
+        private volatile CountDownLatch released = new CountDownLatch(0);
+
+        void answer(String host, String ip) {
+            answers.put(host, ip);
+        }
+
+        void fail(String host) {
+            answers.remove(host);
+        }
+
+        void block() {
+            blocked = new CountDownLatch(1);
+            released = new CountDownLatch(1);
+        }
+
+        void unblock() {
+            released.countDown();
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            blocked.countDown();
+
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            String ip = answers.get(host);
+
+            if (ip == null) {
+                throw new UnknownHostException(host);
+            }
+
+            queries.incrementAndGet();
+
+            return new InetAddress[] {InetAddress.getByName(ip)};
+        }
+    }
+}
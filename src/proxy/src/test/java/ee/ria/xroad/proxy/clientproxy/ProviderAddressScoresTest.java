@@ -0,0 +1,193 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test ProviderAddressScores
+ */
+public class ProviderAddressScoresTest {
+
+    private static final int SCORE_TTL = 60;
+    private static final int SELECTIONS = 1000;
+
+    private FakeTicker ticker;
+    private ProviderAddressScores scores;
+
+    private URI fast;
+    private URI slow;
+    private URI[] addresses;
+
+    /**
+     * Creates the scores and the addresses.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        ticker = new FakeTicker();
+        scores = new ProviderAddressScores(SCORE_TTL, 100, ticker);
+
+        fast = new URI("https://10.0.0.1:5500");
+        slow = new URI("https://10.0.0.2:5500");
+        addresses = new URI[] {slow, fast};
+    }
+
+    @Test
+    public void raceUntilAnAddressIsScored() {
+        assertNull(scores.select(addresses));
+
+        scores.success(fast, millis(10));
+        assertEquals(fast, selectMostOften());
+
+        scores.success(slow, millis(50));
+        assertEquals(fast, selectMostOften());
+    }
+
+    @Test
+    public void exploreUnscoredAddresses() {
+        scores.success(fast, millis(10));
+
+        int explored = 0;
+
+        for (int i = 0; i < SELECTIONS; i++) {
+            URI selected = scores.select(addresses);
+
+            assertNotNull(selected);
+
+            if (slow.equals(selected)) {
+                explored++;
+            }
+        }
+
+        assertTrue(explored > 0);
+        assertTrue(explored < SELECTIONS / 2);
+    }
+
+    @Test
+    public void raceWhenScoresAreStale() {
+        scores.success(fast, millis(10));
+        scores.success(slow, millis(50));
+
+        ticker.advance(SCORE_TTL + 1, TimeUnit.SECONDS);
+
+        assertNull(scores.select(addresses));
+    }
+
+    @Test
+    public void preferAddressWithoutErrors() {
+        scores.success(fast, millis(10));
+        scores.success(slow, millis(15));
+
+        scores.failure(fast);
+        ticker.advance(2, TimeUnit.SECONDS);
+        scores.success(fast, millis(10));
+
+        // The error rate of the fast address outweighs its latency advantage
+        assertEquals(slow, selectMostOften());
+    }
+
+    @Test
+    public void ejectFailingAddressWithBackOff() {
+        scores.success(fast, millis(10));
+        scores.success(slow, millis(50));
+
+        scores.failure(fast);
+        assertEquals(slow, selectMostOften());
+        assertArrayEquals(new URI[] {slow}, scores.candidates(addresses));
+
+        // First ejection lasts a second
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertArrayEquals(addresses, scores.candidates(addresses));
+
+        // Second ejection lasts two seconds
+        scores.failure(fast);
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertArrayEquals(new URI[] {slow}, scores.candidates(addresses));
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertArrayEquals(addresses, scores.candidates(addresses));
+
+        // Success ends the back-off
+        scores.success(fast, millis(10));
+        scores.failure(fast);
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertArrayEquals(addresses, scores.candidates(addresses));
+    }
+
+    @Test
+    public void raceAllAddressesWhenAllAreEjected() {
+        scores.failure(fast);
+        scores.failure(slow);
+
+        assertNull(scores.select(addresses));
+        assertArrayEquals(addresses, scores.candidates(addresses));
+    }
+
+    /** Returns the most often selected address, selections without an address (exploration) are ignored. */
+    private URI selectMostOften() {
+        int fastCount = 0;
+        int slowCount = 0;
+
+        for (int i = 0; i < SELECTIONS; i++) {
+            URI selected = scores.select(addresses);
+
+            if (fast.equals(selected)) {
+                fastCount++;
+            } else if (slow.equals(selected)) {
+                slowCount++;
+            }
+        }
+
+        return fastCount > slowCount ? fast : slow;
+    }
+
+    private static long millis(long value) {
+        return TimeUnit.MILLISECONDS.toNanos(value);
+    }
+
+    static class FakeTicker extends Ticker {
+        long ticks = 0;
+
+        @Override
+        public long read() {
+            return ticks;
+        }
+
+        void advance(long t, TimeUnit unit) {
+            ticks += unit.toNanos(t);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test VerifiedChainCache
+ */
+public class VerifiedChainCacheTest {
+
+    private static final int FRESHNESS_SECONDS = 3600;
+
+    private static final ClientId PROVIDER = ClientId.create("EE", "BUSINESS", "producer");
+
+    private X509Certificate cert;
+    private List<X509Certificate> chain;
+    private String fingerprint;
+
+    private VerifiedChainCache cache;
+
+    /**
+     * Loads the test certificates.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        cert = TestCertUtil.getProducer().certChain[0];
+        chain = Arrays.asList(cert, TestCertUtil.getCaCert());
+        fingerprint = VerifiedChainCache.fingerprint(new X509Certificate[] {cert});
+
+        cache = new VerifiedChainCache(10);
+    }
+
+    @Test
+    public void fingerprintDependsOnAllCertificates() throws Exception {
+        assertEquals(fingerprint, VerifiedChainCache.fingerprint(new X509Certificate[] {cert}));
+        assertNotEquals(fingerprint,
+                VerifiedChainCache.fingerprint(new X509Certificate[] {cert, TestCertUtil.getCaCert()}));
+    }
+
+    @Test
+    public void validUntilEarliestOfNextUpdateFreshnessAndCertExpiry() throws Exception {
+        long certExpiry = Math.min(cert.getNotAfter().getTime(), TestCertUtil.getCaCert().getNotAfter().getTime());
+        long thisUpdate = certExpiry - TimeUnit.DAYS.toMillis(1);
+
+        // Freshness period ends first
+        assertEquals(thisUpdate + TimeUnit.SECONDS.toMillis(FRESHNESS_SECONDS),
+                VerifiedChainCache.validUntil(chain, ocsp(thisUpdate, null), FRESHNESS_SECONDS));
+
+        // Next update is before the end of the freshness period
+        assertEquals(thisUpdate + 1000,
+                VerifiedChainCache.validUntil(chain, ocsp(thisUpdate, thisUpdate + 1000), FRESHNESS_SECONDS));
+
+        // Certificate expires before the end of the freshness period
+        long lateThisUpdate = certExpiry - 1000;
+
+        assertEquals(certExpiry,
+                VerifiedChainCache.validUntil(chain, ocsp(lateThisUpdate, null), FRESHNESS_SECONDS));
+    }
+
+    @Test
+    public void verifiedChainIsCachedUntilValidUntil() throws Exception {
+        List<OCSPResp> responses = ocsp(cert.getNotBefore().getTime(), null);
+        long validUntil = VerifiedChainCache.validUntil(chain, responses, FRESHNESS_SECONDS);
+
+        assertFalse(cache.isVerified(PROVIDER, fingerprint, 1, validUntil - 1));
+
+        cache.verified(PROVIDER, fingerprint, chain, responses, FRESHNESS_SECONDS, 1);
+
+        assertTrue(cache.isVerified(PROVIDER, fingerprint, 1, validUntil - 1));
+        assertFalse(cache.isVerified(ClientId.create("EE", "BUSINESS", "consumer"), fingerprint, 1,
+                validUntil - 1));
+
+        assertFalse(cache.isVerified(PROVIDER, fingerprint, 1, validUntil));
+
+        // Expired entries are removed
+        assertFalse(cache.isVerified(PROVIDER, fingerprint, 1, validUntil - 1));
+    }
+
+    @Test
+    public void globalConfChangeInvalidatesVerifiedChain() throws Exception {
+        List<OCSPResp> responses = ocsp(cert.getNotBefore().getTime(), null);
+        long now = VerifiedChainCache.validUntil(chain, responses, FRESHNESS_SECONDS) - 1;
+
+        cache.verified(PROVIDER, fingerprint, chain, responses, FRESHNESS_SECONDS, 1);
+
+        assertFalse(cache.isVerified(PROVIDER, fingerprint, 2, now));
+        assertFalse(cache.isVerified(PROVIDER, fingerprint, 1, now));
+    }
+
+    private List<OCSPResp> ocsp(long thisUpdate, Long nextUpdate) throws Exception {
+        return Collections.singletonList(OcspTestUtils.createOCSPResponse(cert, TestCertUtil.getCaCert(),
+                TestCertUtil.getOcspSigner().certChain[0], TestCertUtil.getOcspSigner().key, CertificateStatus.GOOD,
+                new Date(thisUpdate), nextUpdate != null ? new Date(nextUpdate) : null));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import akka.pattern.AskTimeoutException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
+import static ee.ria.xroad.common.ErrorCodes.translateWithPrefix;
+import static ee.ria.xroad.common.message.SoapMessageTestUtil.QUERY_DIR;
+import static ee.ria.xroad.common.message.SoapMessageTestUtil.createRequest;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests spooling messages that could not be saved to the message log, and saving them later.
+ */
+public class MessageLogSpoolTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path dir;
+    private SoapMessageImpl message;
+    private SignatureData signature;
+
+    /**
+     * Creates the spool directory and the message.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.newFolder().toPath();
+        message = createRequest("simple.query");
+        signature = new SignatureData("<signature/>", null, null);
+    }
+
+    @Test
+    public void saveSpooledMessagesInOrder() throws Exception {
+        MessageLogSpool.spool(dir, message, signature, true, "first");
+        MessageLogSpool.spool(dir, message, new SignatureData("<batch/>", "<result/>", "<chain/>"), false, null);
+
+        List<Object[]> saved = new ArrayList<>();
+
+        assertEquals(2, MessageLogSpool.saveSpooled(dir, (m, s, clientSide, xRequestId) ->
+                saved.add(new Object[] {m, s, clientSide, xRequestId})));
+
+        assertEquals(2, saved.size());
+        assertArrayEquals(message.getBytes(), ((SoapMessageImpl) saved.get(0)[0]).getBytes());
+        assertEquals(signature, saved.get(0)[1]);
+        assertEquals(true, saved.get(0)[2]);
+        assertEquals("first", saved.get(0)[3]);
+        assertEquals(new SignatureData("<batch/>", "<result/>", "<chain/>"), saved.get(1)[1]);
+        assertEquals(false, saved.get(1)[2]);
+        assertEquals(null, saved.get(1)[3]);
+
+        assertEquals(0, MessageLogSpool.saveSpooled(dir, (m, s, clientSide, xRequestId) -> fail("Saved twice")));
+    }
+
+    @Test
+    public void keepMessagesUntilSaved() throws Exception {
+        MessageLogSpool.spool(dir, message, signature, true, "first");
+
+        try {
+            MessageLogSpool.saveSpooled(dir, (m, s, clientSide, xRequestId) -> {
+                throw new CodedException(X_LOGGING_FAILED_X, "Message log is down");
+            });
+            fail("Expected saving to fail");
+        } catch (CodedException expected) {
+            // expected
+        }
+
+        List<String> saved = new ArrayList<>();
+
+        assertEquals(1, MessageLogSpool.saveSpooled(dir, (m, s, clientSide, xRequestId) -> saved.add(xRequestId)));
+        assertEquals("first", saved.get(0));
+    }
+
+    @Test
+    public void moveUnreadableFilesAside() throws Exception {
+        // Sorts before the message spooled by the test
+        Path corrupted = dir.resolve("0-corrupted.spool");
+        Files.write(corrupted, new byte[] {0, 0, 0x7f, 1, 2});
+
+        Path fault = dir.resolve("1-fault.spool");
+        writeSpoolFile(fault, MimeTypes.TEXT_XML_UTF8, Files.readAllBytes(Paths.get(QUERY_DIR, "fault.query")));
+
+        MessageLogSpool.spool(dir, message, signature, true, "valid");
+
+        List<String> saved = new ArrayList<>();
+
+        assertEquals(1, MessageLogSpool.saveSpooled(dir, (m, s, clientSide, xRequestId) -> saved.add(xRequestId)));
+        assertEquals("valid", saved.get(0));
+
+        assertFalse(Files.exists(corrupted));
+        assertFalse(Files.exists(fault));
+        assertTrue(Files.exists(dir.resolve("0-corrupted.spool.failed")));
+        assertTrue(Files.exists(dir.resolve("1-fault.spool.failed")));
+    }
+
+    @Test
+    public void spoolOnlyDefiniteFailures() {
+        assertTrue(MessageLogSpool.shouldSpool(new CodedException(X_LOGGING_FAILED_X, "Saving failed")));
+        assertFalse(MessageLogSpool.shouldSpool(
+                translateWithPrefix(X_LOGGING_FAILED_X, new AskTimeoutException("Timed out"))));
+    }
+
+    // Writes a spool file in the format of MessageLogSpool, without a signature
+    private static void writeSpoolFile(Path file, String contentType, byte[] content) throws Exception {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            byte[] contentTypeBytes = contentType.getBytes(StandardCharsets.UTF_8);
+
+            out.writeInt(contentTypeBytes.length);
+            out.write(contentTypeBytes);
+            out.writeInt(content.length);
+            out.write(content);
+            out.writeInt(-1);
+            out.writeInt(-1);
+            out.writeInt(-1);
+            out.writeBoolean(true);
+            out.writeInt(-1);
+        }
+    }
+}
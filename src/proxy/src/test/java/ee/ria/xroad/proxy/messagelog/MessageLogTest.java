@@ -0,0 +1,116 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.messagelog.AbstractLogManager;
+import ee.ria.xroad.common.messagelog.LogMessage;
+import ee.ria.xroad.common.messagelog.LogRecord;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.TimestampRecord;
+import ee.ria.xroad.common.util.JobManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests deciding whether message bodies are logged.
+ */
+public class MessageLogTest {
+
+    private static final ServiceId SERVICE = ServiceId.create(ClientId.create("EE", "BUSINESS", "producer"),
+            "getState");
+
+    /**
+     * Enables logging message bodies.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty(MessageLogProperties.MESSAGE_BODY_LOGGING_ENABLED, "true");
+    }
+
+    /**
+     * Restores the default settings.
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(MessageLogProperties.MESSAGE_BODY_LOGGING_ENABLED);
+        System.clearProperty(MessageLog.LOG_MANAGER_IMPL_CLASS);
+    }
+
+    @Test
+    public void bodyNotLoggedByNullLogManager() {
+        assertFalse(MessageLog.isBodyLogged(SERVICE, true));
+
+        System.setProperty(MessageLog.LOG_MANAGER_IMPL_CLASS, NullLogManager.class.getName());
+
+        assertFalse(MessageLog.isBodyLogged(SERVICE, true));
+        assertFalse(MessageLog.isBodyLogged(SERVICE, false));
+    }
+
+    @Test
+    public void bodyLoggedBySavingLogManager() {
+        System.setProperty(MessageLog.LOG_MANAGER_IMPL_CLASS, SavingLogManager.class.getName());
+
+        assertTrue(MessageLog.isBodyLogged(SERVICE, true));
+        assertTrue(MessageLog.isBodyLogged(SERVICE, false));
+
+        System.setProperty(MessageLogProperties.MESSAGE_BODY_LOGGING_ENABLED, "false");
+
+        assertFalse(MessageLog.isBodyLogged(SERVICE, true));
+    }
+
+    /**
+     * Log manager that is taken to save messages, it is never started.
+     */
+    public static class SavingLogManager extends AbstractLogManager {
+
+        SavingLogManager(JobManager jobManager) {
+            super(jobManager);
+        }
+
+        @Override
+        protected void log(LogMessage message) {
+            // never started
+        }
+
+        @Override
+        protected LogRecord findByQueryId(String queryId, Date startTime, Date endTime) {
+            return null;
+        }
+
+        @Override
+        protected TimestampRecord timestamp(Long messageRecordId) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.util.CryptoUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import java.net.InetAddress;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test TlsHandshakeMetrics with loopback TLS endpoints
+ */
+public class TlsHandshakeMetricsTest {
+
+    private static final char[] PASSWORD = "test".toCharArray();
+
+    private SSLServerSocket serverSocket;
+    private Thread server;
+
+    private SSLContext clientContext;
+
+    /**
+     * Starts a loopback TLS server that completes the handshake of every accepted connection.
+     * @throws Exception in case of any errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        TestCertUtil.PKCS12 producer = TestCertUtil.getProducer();
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("producer", producer.key, PASSWORD, producer.certChain);
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+
+        SSLContext serverContext = SSLContext.getInstance(CryptoUtils.SSL_PROTOCOL);
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, new SecureRandom());
+
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory()
+                .createServerSocket(0, 0, InetAddress.getLoopbackAddress());
+
+        server = new Thread(this::serve, "tls-loopback-server");
+        server.setDaemon(true);
+        server.start();
+
+        clientContext = SSLContext.getInstance(CryptoUtils.SSL_PROTOCOL);
+        clientContext.init(null, new TrustManager[] {new TrustAllManager()}, new SecureRandom());
+    }
+
+    /**
+     * Stops the loopback TLS server.
+     * @throws Exception in case of any errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        server.join();
+    }
+
+    @Test
+    public void secondConnectionToSamePeerResumesSession() throws Exception {
+        assertFalse(TlsHandshakeMetrics.clientHandshakeCompleted(handshake()));
+        assertTrue(TlsHandshakeMetrics.clientHandshakeCompleted(handshake()));
+    }
+
+    @Test
+    public void invalidatedSessionIsNotResumed() throws Exception {
+        SSLSession session = handshake();
+
+        assertFalse(TlsHandshakeMetrics.clientHandshakeCompleted(session));
+
+        session.invalidate();
+
+        assertFalse(TlsHandshakeMetrics.clientHandshakeCompleted(handshake()));
+    }
+
+    private SSLSession handshake() throws Exception {
+        try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory()
+                .createSocket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            socket.startHandshake();
+
+            return socket.getSession();
+        }
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                socket.startHandshake();
+                socket.getInputStream().read();
+            } catch (Exception e) {
+                // the client has closed the connection or the server socket has been closed
+            }
+        }
+    }
+
+    private static final class TrustAllManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            // trust all
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            // trust all
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+import ee.ria.xroad.common.util.UriUtils;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Access rights of a service provider, compiled into a structure that answers access checks without database access.
+ *
+ * The access right entries are grouped by subject and service code, and the endpoints of every group are merged
+ * by method. The endpoint paths of every method are indexed in a {@link PathGlobTrie}. Local groups are expanded
+ * to their members when the index is compiled. Membership in global groups is defined by the global configuration,
+ * which changes independently of the server configuration, so it is checked when the index is queried.
+ *
+ * The index gives the same decisions as checking the access right entries one by one. The only exception is a
+ * request without a path, which never matches an endpoint path pattern other than {@link EndpointType#ANY_PATH}.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class AccessRightIndex {
+
+    private static final AccessRightIndex UNKNOWN_PROVIDER =
+            new AccessRightIndex(false, Collections.emptyMap(), Collections.emptyMap());
+
+    private final boolean providerExists;
+    private final Map<ClientId, Map<String, Endpoints>> clients;
+    private final Map<GlobalGroupId, Map<String, Endpoints>> globalGroups;
+
+    // Codes of the services that a subject may invoke with any method and path
+    private final Map<ClientId, Set<String>> clientServiceCodes;
+    private final Map<GlobalGroupId, Set<String>> globalGroupServiceCodes;
+
+    private AccessRightIndex(boolean providerExists, Map<ClientId, Map<String, Endpoints>> clients,
+            Map<GlobalGroupId, Map<String, Endpoints>> globalGroups) {
+        this.providerExists = providerExists;
+        this.clients = clients;
+        this.globalGroups = globalGroups;
+        this.clientServiceCodes = unrestrictedServiceCodes(clients);
+        this.globalGroupServiceCodes = unrestrictedServiceCodes(globalGroups);
+    }
+
+    /**
+     * Compiles the access rights of the given service provider. Must be called within the session the provider
+     * was loaded in, because the access rights and local groups of the provider are loaded lazily.
+     * @param provider the service provider, or null if the provider does not exist
+     * @return the compiled access rights
+     */
+    public static AccessRightIndex compile(ClientType provider) {
+        if (provider == null) {
+            return UNKNOWN_PROVIDER;
+        }
+
+        Map<ClientId, Map<String, Endpoints>> clients = new HashMap<>();
+        Map<GlobalGroupId, Map<String, Endpoints>> globalGroups = new LinkedHashMap<>();
+
+        for (AccessRightType accessRight : provider.getAcl()) {
+            EndpointType endpoint = accessRight.getEndpoint();
+            XRoadId subjectId = accessRight.getSubjectId();
+
+            if (subjectId instanceof GlobalGroupId) {
+                add(globalGroups, (GlobalGroupId) subjectId, endpoint);
+            } else if (subjectId instanceof LocalGroupId) {
+                LocalGroupType group = findLocalGroup(provider, ((LocalGroupId) subjectId).getGroupCode());
+
+                if (group != null) {
+                    for (GroupMemberType member : group.getGroupMember()) {
+                        add(clients, member.getGroupMemberId(), endpoint);
+                    }
+                }
+            } else if (subjectId instanceof ClientId) {
+                add(clients, (ClientId) subjectId, endpoint);
+            }
+            // Other subjects are never equal to a client identifier
+        }
+
+        return new AccessRightIndex(true, clients, globalGroups);
+    }
+
+    /**
+     * Returns true, if the client is allowed to invoke the service of the provider using the given method and path.
+     * @param client the client, may be null
+     * @param serviceCode code of the service
+     * @param method HTTP method of the request, may be null
+     * @param path path of the request, may be null
+     * @return true, if the query is allowed
+     */
+    public boolean isAllowed(ClientId client, String serviceCode, String method, String path) {
+        if (client == null || !providerExists) {
+            return false;
+        }
+
+        final String normalizedPath = normalizePath(path);
+
+        Map<String, Endpoints> services = clients.get(client);
+        Endpoints endpoints = services != null ? services.get(serviceCode) : null;
+
+        if (endpoints != null && endpoints.matches(method, normalizedPath)) {
+            return true;
+        }
+
+        for (Map.Entry<GlobalGroupId, Map<String, Endpoints>> group : globalGroups.entrySet()) {
+            endpoints = group.getValue().get(serviceCode);
+
+            if (endpoints != null && endpoints.matches(method, normalizedPath)
+                    && GlobalConf.isSubjectInGlobalGroup(client, group.getKey())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the codes of the services that the client is allowed to invoke without method and path restrictions,
+     * that is, the services for which {@link #isAllowed(ClientId, String, String, String)} without method and path
+     * returns true. The membership of the client is checked once per global group instead of once per service.
+     * @param client the client, may be null
+     * @return the codes of the allowed services
+     */
+    public Set<String> getAllowedServiceCodes(ClientId client) {
+        if (client == null || !providerExists) {
+            return Collections.emptySet();
+        }
+
+        Set<String> direct = clientServiceCodes.getOrDefault(client, Collections.emptySet());
+        Set<String> allowed = direct;
+
+        for (Map.Entry<GlobalGroupId, Set<String>> group : globalGroupServiceCodes.entrySet()) {
+            if (!allowed.containsAll(group.getValue())
+                    && GlobalConf.isSubjectInGlobalGroup(client, group.getKey())) {
+                if (allowed == direct) {
+                    allowed = new HashSet<>(direct);
+                }
+
+                allowed.addAll(group.getValue());
+            }
+        }
+
+        return allowed == direct ? direct : Collections.unmodifiableSet(allowed);
+    }
+
+    /**
+     * Normalizes and percent-decodes the path of a request before it is matched against endpoint paths.
+     * @param path the path, may be null
+     * @return the normalized path, or null if the path is null
+     */
+    static String normalizePath(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        return UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
+    }
+
+    // Only the first local group with the given code is used, as in ServerConfImpl
+    private static LocalGroupType findLocalGroup(ClientType provider, String groupCode) {
+        return provider.getLocalGroup().stream()
+                .filter(g -> StringUtils.equals(groupCode, g.getGroupCode()))
+                .findFirst().orElse(null);
+    }
+
+    private static <K> Map<K, Set<String>> unrestrictedServiceCodes(Map<K, Map<String, Endpoints>> index) {
+        Map<K, Set<String>> result = new LinkedHashMap<>();
+
+        index.forEach((subject, services) -> {
+            Set<String> codes = new HashSet<>();
+
+            services.forEach((serviceCode, endpoints) -> {
+                if (endpoints.matches(null, null)) {
+                    codes.add(serviceCode);
+                }
+            });
+
+            if (!codes.isEmpty()) {
+                result.put(subject, Collections.unmodifiableSet(codes));
+            }
+        });
+
+        return result;
+    }
+
+    private static <K> void add(Map<K, Map<String, Endpoints>> index, K subject, EndpointType endpoint) {
+        index.computeIfAbsent(subject, s -> new HashMap<>())
+                .computeIfAbsent(endpoint.getServiceCode(), s -> new Endpoints())
+                .add(endpoint);
+    }
+
+    // Endpoints of a service that a subject has access to, merged by method
+    private static final class Endpoints {
+        private final Paths anyMethod = new Paths();
+        private final Map<String, Paths> byMethod = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        void add(EndpointType endpoint) {
+            if (EndpointType.ANY_METHOD.equals(endpoint.getMethod())) {
+                anyMethod.add(endpoint.getPath());
+            } else {
+                byMethod.computeIfAbsent(endpoint.getMethod(), m -> new Paths()).add(endpoint.getPath());
+            }
+        }
+
+        boolean matches(String method, String normalizedPath) {
+            if (anyMethod.matches(normalizedPath)) {
+                return true;
+            }
+
+            Paths paths = method != null ? byMethod.get(method) : null;
+
+            return paths != null && paths.matches(normalizedPath);
+        }
+    }
+
+    private static final class Paths {
+        private boolean anyPath;
+        private final PathGlobTrie globs = new PathGlobTrie();
+
+        void add(String path) {
+            if (EndpointType.ANY_PATH.equals(path)) {
+                anyPath = true;
+            } else {
+                globs.add(path);
+            }
+        }
+
+        boolean matches(String normalizedPath) {
+            if (anyPath) {
+                return true;
+            }
+
+            return normalizedPath != null && globs.matches(normalizedPath);
+        }
+    }
+}
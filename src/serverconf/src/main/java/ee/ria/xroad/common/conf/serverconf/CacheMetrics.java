@@ -0,0 +1,81 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Exposes statistics of the server conf caches over JMX, in the domain {@value #JMX_DOMAIN}.
+ * Every cache has gauges named {@code <cache>.<statistic>}.
+ */
+final class CacheMetrics {
+
+    static final String JMX_DOMAIN = "xroad.serverconf";
+
+    private static final double NANOS_IN_MILLISECOND = 1_000_000d;
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    static {
+        JmxReporter.forRegistry(METRICS).inDomain(JMX_DOMAIN).build().start();
+    }
+
+    private CacheMetrics() {
+    }
+
+    /**
+     * Registers the statistics of the given cache, replacing the statistics of a previous cache with the same name.
+     * The cache must record statistics.
+     * @param name name of the cache
+     * @param cache the cache
+     */
+    static synchronized void register(String name, Cache<?, ?> cache) {
+        String prefix = name + ".";
+
+        METRICS.removeMatching((metricName, metric) -> metricName.startsWith(prefix));
+
+        register(prefix + "size", cache, s -> cache.size());
+        register(prefix + "hitCount", cache, CacheStats::hitCount);
+        register(prefix + "missCount", cache, CacheStats::missCount);
+        register(prefix + "hitRate", cache, CacheStats::hitRate);
+        register(prefix + "loadSuccessCount", cache, CacheStats::loadSuccessCount);
+        register(prefix + "loadExceptionCount", cache, CacheStats::loadExceptionCount);
+        register(prefix + "averageLoadTimeMillis", cache, s -> s.averageLoadPenalty() / NANOS_IN_MILLISECOND);
+        register(prefix + "totalLoadTimeMillis", cache,
+                s -> TimeUnit.NANOSECONDS.toMillis(s.totalLoadTime()));
+        register(prefix + "evictionCount", cache, CacheStats::evictionCount);
+    }
+
+    private static <T> void register(String metricName, Cache<?, ?> cache, Function<CacheStats, T> statistic) {
+        METRICS.register(metricName, (Gauge<T>) () -> statistic.apply(cache.stats()));
+    }
+}
@@ -25,86 +25,393 @@
 package ee.ria.xroad.common.conf.serverconf;
 
 import ee.ria.xroad.common.SystemProperties;
-import ee.ria.xroad.common.conf.globalconf.GlobalConf;
-import ee.ria.xroad.common.conf.globalconf.TimeBasedObjectCache;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.identifier.ServiceId;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static ee.ria.xroad.common.ErrorCodes.translateException;
 
 /**
  * Caching implementation for ServerConf
- * The long lasting and frequently used operations
- * getTspUrl, getMemberStatus and getIsAuthentication are cached
- * Performance improvent was measured to be significant.
+ * The long lasting and frequently used operations are cached in concurrent caches keyed by the identifiers they
+ * take. Performance improvent was measured to be significant.
+ *
+ * Cached values are reloaded in the background once they are older than the server conf cache period, so that
+ * requests keep being served from the cache while a value is reloaded. A value that has not been used during two
+ * cache periods expires and is loaded again when it is needed. Statistics of the caches are exposed over JMX,
+ * see {@link CacheMetrics}.
+ *
+ * If the database tracks the version of the configuration, the version is polled at the server conf version poll
+ * interval instead and cached values are kept until the version changes, so that changes take effect within the
+ * poll interval. See {@link SystemProperties#getServerConfVersionPollInterval()}.
+ *
+ * The configuration is written by other processes, so the Hibernate second-level cache (if enabled) is evicted
+ * together with the caches when the version changes, or once per cache period if the version is not tracked.
+ *
+ * Access rights of service providers are cached compiled, see {@link AccessRightIndex}.
+ * Resolved services are cached as a whole, see {@link #resolveService(ServiceId)}.
+ * IS certificates are cached as fingerprints, see {@link IsCertificateIndex}.
+ * Allowed services are computed from the cached access rights and services of the provider, see
+ * {@link #getAllowedServicesByDescriptionType(ClientId, ClientId, DescriptionType)}.
  */
+@Slf4j
 public class CachingServerConfImpl extends ServerConfImpl {
 
     public static final String TSP_URL = "tsp_url";
     public static final String MEMBER_STATUS = "member_status";
     public static final String AUTHENTICATION = "authentication";
+    public static final String IDENTIFIER = "identifier";
+    public static final String SERVICE_ADDRESS = "service_address";
+    public static final String SERVICE_TIMEOUT = "service_timeout";
+    public static final String SSL_AUTHENTICATION = "ssl_authentication";
+    public static final String DISABLED_NOTICE = "disabled_notice";
+    public static final String REQUIRED_CATEGORIES = "required_categories";
+    public static final String DESCRIPTION_TYPE = "description_type";
+    public static final String ACCESS_RIGHTS = "access_rights";
+    public static final String RESOLVED_SERVICE = "resolved_service";
+    public static final String IS_CERTIFICATES = "is_certificates";
+    public static final String PROVIDER_SERVICES = "provider_services";
+
+    private static final int MAX_CACHE_SIZE = 10000;
+    private static final int REFRESH_THREADS = 2;
+
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newFixedThreadPool(REFRESH_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("serverconf-cache-refresh-%d").setDaemon(true).build());
+
+    private static final ScheduledExecutorService VERSION_POLLER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("serverconf-version-poller").setDaemon(true).build());
 
     private final int expireSeconds;
-    private final TimeBasedObjectCache cache;
-    private volatile SecurityServerId serverId;
+    private final boolean versioned;
+    private final List<LoadingCache<?, ?>> caches = new ArrayList<>();
+
+    private volatile long confVersion;
+
+    private final LoadingCache<String, SecurityServerId> identifier;
+    private final LoadingCache<String, List<String>> tspUrl;
+    private final LoadingCache<ClientId, Optional<String>> memberStatus;
+    private final LoadingCache<ClientId, Optional<IsAuthentication>> isAuthentication;
+    private final LoadingCache<ServiceId, Optional<String>> serviceAddress;
+    private final LoadingCache<ServiceId, Integer> serviceTimeout;
+    private final LoadingCache<ServiceId, Boolean> sslAuthentication;
+    private final LoadingCache<ServiceId, Optional<String>> disabledNotice;
+    private final LoadingCache<ServiceId, List<SecurityCategoryId>> requiredCategories;
+    private final LoadingCache<ServiceId, Optional<DescriptionType>> descriptionType;
+    private final LoadingCache<ClientId, AccessRightIndex> accessRights;
+    private final LoadingCache<ServiceId, ResolvedService> services;
+    private final LoadingCache<ClientId, IsCertificateIndex> isCertificates;
+    private final LoadingCache<ProviderServicesKey, Map<String, List<ServiceId>>> providerServices;
 
     /**
-     * Constructor, creates time based object cache with expireSeconds paramter
+     * Constructor, creates the caches with the server conf cache period, or starts polling the configuration
+     * version if the database tracks it
      */
     public CachingServerConfImpl() {
         super();
         expireSeconds = SystemProperties.getServerConfCachePeriod();
-        cache = new TimeBasedObjectCache(expireSeconds);
+
+        int pollInterval = SystemProperties.getServerConfVersionPollInterval();
+        Long version = pollInterval > 0 && expireSeconds > 0 ? readConfVersion() : null;
+
+        versioned = version != null;
+        confVersion = versioned ? version : 0;
+
+        identifier = createCache(IDENTIFIER, key -> super.getIdentifier());
+        tspUrl = createCache(TSP_URL, key -> Collections.unmodifiableList(super.getTspUrl()));
+        memberStatus = createCache(MEMBER_STATUS, id -> Optional.ofNullable(super.getMemberStatus(id)));
+        isAuthentication = createCache(AUTHENTICATION, id -> Optional.ofNullable(super.getIsAuthentication(id)));
+        serviceAddress = createCache(SERVICE_ADDRESS, id -> Optional.ofNullable(super.getServiceAddress(id)));
+        serviceTimeout = createCache(SERVICE_TIMEOUT, super::getServiceTimeout);
+        sslAuthentication = createCache(SSL_AUTHENTICATION, super::isSslAuthentication);
+        disabledNotice = createCache(DISABLED_NOTICE, id -> Optional.ofNullable(super.getDisabledNotice(id)));
+        requiredCategories = createCache(REQUIRED_CATEGORIES,
+                id -> Collections.unmodifiableList(new ArrayList<>(super.getRequiredCategories(id))));
+        descriptionType = createCache(DESCRIPTION_TYPE, id -> Optional.ofNullable(super.getDescriptionType(id)));
+        accessRights = createCache(ACCESS_RIGHTS, this::compileAccessRights);
+        services = createCache(RESOLVED_SERVICE, super::resolveService);
+        isCertificates = createCache(IS_CERTIFICATES, super::getIsCertificateIndex);
+        providerServices = createCache(PROVIDER_SERVICES, key -> groupByServiceCode(
+                super.getServicesByDescriptionType(key.getProvider(), key.getDescriptionType())));
+
+        if (versioned) {
+            VersionPoller.start(this, CachingServerConfImpl::checkVersion, pollInterval);
+        } else if (expireSeconds > 0) {
+            VersionPoller.start(this, CachingServerConfImpl::evictDatabaseCache, expireSeconds * 1000L);
+        } else if (pollInterval > 0) {
+            VersionPoller.start(this, CachingServerConfImpl::evictDatabaseCache, pollInterval);
+        }
     }
 
     @Override
     public SecurityServerId getIdentifier() {
-        SecurityServerId id = serverId;
-        if (id == null) {
-            return getAndCacheServerId(null);
-        } else {
-            if (GlobalConf.getServerOwner(id) == null) {
-                // Globalconf and the cached value disagree on server owner (maybe changed)
-                return getAndCacheServerId(id);
-            } else {
-                return id;
-            }
-        }
+        return get(identifier, IDENTIFIER);
     }
 
-    @SuppressWarnings("checkstyle:innerassignment")
-    private synchronized SecurityServerId getAndCacheServerId(final SecurityServerId current) {
-        SecurityServerId id = serverId;
-        if (id == current) { //intentional reference equality test (for double-checked locking)
-            serverId = id = super.getIdentifier();
-        }
-        return id;
+    @Override
+    public List<String> getTspUrl() {
+        return get(tspUrl, TSP_URL);
+    }
+
+    @Override
+    public String getMemberStatus(ClientId clientId) {
+        return get(memberStatus, clientId).orElse(null);
+    }
+
+    @Override
+    public IsAuthentication getIsAuthentication(ClientId clientId) {
+        return get(isAuthentication, clientId).orElse(null);
+    }
+
+    @Override
+    public IsCertificateIndex getIsCertificateIndex(ClientId client) {
+        return get(isCertificates, client);
+    }
+
+    @Override
+    public String getServiceAddress(ServiceId service) {
+        return get(serviceAddress, service).orElse(null);
     }
 
     @Override
-    public synchronized List<String> getTspUrl() {
-        if (!cache.isValid(TSP_URL)) {
-            cache.setValue(TSP_URL, super.getTspUrl());
+    public int getServiceTimeout(ServiceId service) {
+        return get(serviceTimeout, service);
+    }
+
+    @Override
+    public boolean isSslAuthentication(ServiceId service) {
+        return get(sslAuthentication, service);
+    }
+
+    @Override
+    public String getDisabledNotice(ServiceId service) {
+        return get(disabledNotice, service).orElse(null);
+    }
+
+    @Override
+    public List<SecurityCategoryId> getRequiredCategories(ServiceId service) {
+        return get(requiredCategories, service);
+    }
+
+    @Override
+    public DescriptionType getDescriptionType(ServiceId service) {
+        return get(descriptionType, service).orElse(null);
+    }
+
+    @Override
+    public boolean isQueryAllowed(ClientId client, ServiceId service, String method, String path) {
+        if (client == null) {
+            return false;
         }
 
-        return (List<String>)cache.getValue(TSP_URL);
+        AccessRightIndex index = get(accessRights, service.getClientId());
+
+        try {
+            return index.isAllowed(client, service.getServiceCode(), method, path);
+        } catch (Exception e) {
+            throw translateException(e);
+        }
     }
 
+    /**
+     * Returns the allowed services using the cached access rights and services of the service provider. Only the
+     * membership of the client in global groups is checked for every call, because it is defined by the global
+     * configuration.
+     */
     @Override
-    public synchronized String getMemberStatus(ClientId clientId) {
-        String key = MEMBER_STATUS + clientId;
-        if (!cache.isValid(key)) {
-            cache.setValue(key, super.getMemberStatus(clientId));
+    public List<ServiceId> getAllowedServicesByDescriptionType(ClientId serviceProvider, ClientId client,
+            DescriptionType descriptionType) {
+        Set<String> allowed;
+
+        try {
+            allowed = get(accessRights, serviceProvider).getAllowedServiceCodes(client);
+        } catch (Exception e) {
+            throw translateException(e);
+        }
+
+        if (allowed.isEmpty()) {
+            return Collections.emptyList();
         }
-        return (String)cache.getValue(key);
+
+        List<ServiceId> result = new ArrayList<>();
+
+        get(providerServices, new ProviderServicesKey(serviceProvider, descriptionType)).forEach((code, services) -> {
+            if (allowed.contains(code)) {
+                result.addAll(services);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the cached resolved service. The access rights of the resolved service are checked with the cached
+     * access rights of the service provider, so they do not expire together with the resolved service.
+     */
+    @Override
+    public ResolvedService resolveService(ServiceId service) {
+        return get(services, service);
     }
 
     @Override
-    public synchronized IsAuthentication getIsAuthentication(ClientId clientId) {
-        String key = AUTHENTICATION + clientId;
-        if (!cache.isValid(key)) {
-            cache.setValue(key, super.getIsAuthentication(clientId));
+    protected ResolvedService.AccessCheck getAccessCheck(ClientType provider, ServiceId service) {
+        return (client, method, path) -> isQueryAllowed(client, service, method, path);
+    }
+
+    /**
+     * Invalidates the caches if the version of the configuration has changed since the last check.
+     */
+    void checkVersion() {
+        Long version = readConfVersion();
+
+        if (version != null && version != confVersion) {
+            log.debug("Server conf version changed from {} to {}, invalidating caches", confVersion, version);
+
+            // The database cache is evicted before the version is updated, so that a load that passes the version
+            // check cannot have read stale entities. The version is updated before invalidating, so that loads in
+            // progress notice the change.
+            evictDatabaseCache();
+            confVersion = version;
+            caches.forEach(LoadingCache::invalidateAll);
+        }
+    }
+
+    /**
+     * Evicts the entities and queries cached by the serverconf session factory, so that the next loads read the
+     * configuration from the database.
+     */
+    void evictDatabaseCache() {
+        try {
+            ServerConfDatabaseCtx.get().getSessionFactory().getCache().evictAllRegions();
+        } catch (Exception e) {
+            log.warn("Could not evict server conf database cache", e);
+        }
+    }
+
+    private Long readConfVersion() {
+        try {
+            return getConfVersion();
+        } catch (Exception e) {
+            log.warn("Could not read server conf version", e);
+
+            return null;
+        }
+    }
+
+    private <K, V> V loadCurrent(Function<K, V> loader, K key) {
+        while (true) {
+            long version = confVersion;
+            V value = loader.apply(key);
+
+            // a value loaded while the caches were invalidated may be stale, load it again
+            if (version == confVersion) {
+                return value;
+            }
+        }
+    }
+
+    private <K, V> LoadingCache<K, V> createCache(String name, Function<K, V> loader) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+
+        if (versioned) {
+            builder.maximumSize(MAX_CACHE_SIZE);
+        } else if (expireSeconds > 0) {
+            builder.maximumSize(MAX_CACHE_SIZE)
+                    .refreshAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                    .expireAfterWrite(2L * expireSeconds, TimeUnit.SECONDS);
+        } else {
+            // caching is disabled
+            builder.maximumSize(0);
+        }
+
+        LoadingCache<K, V> cache = builder.build(CacheLoader.asyncReloading(
+                CacheLoader.from(key -> loadCurrent(loader, key)), REFRESH_EXECUTOR));
+
+        caches.add(cache);
+        CacheMetrics.register(name, cache);
+
+        return cache;
+    }
+
+    private static Map<String, List<ServiceId>> groupByServiceCode(List<ServiceId> services) {
+        Map<String, List<ServiceId>> result = new LinkedHashMap<>();
+
+        for (ServiceId service : services) {
+            result.computeIfAbsent(service.getServiceCode(), code -> new ArrayList<>(1)).add(service);
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static <K, V> V get(LoadingCache<K, V> cache, K key) {
+        try {
+            return cache.getUnchecked(key);
+        } catch (UncheckedExecutionException e) {
+            throw translateException(e.getCause());
+        }
+    }
+
+    @Value
+    private static class ProviderServicesKey {
+        ClientId provider;
+        DescriptionType descriptionType;
+    }
+
+    /**
+     * Checks the configuration version or evicts the database cache periodically for as long as the caching server
+     * conf is in use.
+     */
+    private static final class VersionPoller implements Runnable {
+
+        private final WeakReference<CachingServerConfImpl> conf;
+        private final Consumer<CachingServerConfImpl> task;
+        private volatile ScheduledFuture<?> future;
+
+        private VersionPoller(CachingServerConfImpl conf, Consumer<CachingServerConfImpl> task) {
+            this.conf = new WeakReference<>(conf);
+            this.task = task;
+        }
+
+        static void start(CachingServerConfImpl conf, Consumer<CachingServerConfImpl> task, long interval) {
+            VersionPoller poller = new VersionPoller(conf, task);
+            poller.future = VERSION_POLLER.scheduleWithFixedDelay(poller, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            CachingServerConfImpl current = conf.get();
+
+            if (current != null) {
+                task.accept(current);
+            } else if (future != null) {
+                future.cancel(false);
+            }
         }
-        return (IsAuthentication)cache.getValue(key);
     }
 }
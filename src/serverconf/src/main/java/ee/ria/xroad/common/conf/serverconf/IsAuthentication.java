@@ -29,9 +29,6 @@ import ee.ria.xroad.common.identifier.ClientId;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.security.cert.X509Certificate;
-import java.util.List;
-
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
 
@@ -84,7 +81,7 @@ public enum IsAuthentication {
                 return;
             }
 
-            List<X509Certificate> isCerts = ServerConf.getIsCerts(client);
+            IsCertificateIndex isCerts = ServerConf.getIsCertificateIndex(client);
             if (isCerts.isEmpty()) {
                 throw new CodedException(X_SSL_AUTH_FAILED,
                         "Client (%s) has no IS certificates", client);
@@ -0,0 +1,91 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static ee.ria.xroad.common.ErrorCodes.translateException;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
+
+/**
+ * IS certificates of a client, indexed by their SHA-256 fingerprints. Checking whether a certificate is one of the
+ * IS certificates is a single hash lookup, the stored certificates are not parsed. Instances are immutable and can be
+ * shared between threads.
+ */
+public final class IsCertificateIndex {
+
+    private final Set<String> fingerprints;
+
+    private IsCertificateIndex(Set<String> fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Creates an index of the given DER encoded certificates.
+     * @param certificates the DER encoded certificates
+     * @return the index
+     */
+    public static IsCertificateIndex of(Collection<byte[]> certificates) {
+        Set<String> fingerprints = new HashSet<>();
+
+        for (byte[] certificate : certificates) {
+            fingerprints.add(fingerprint(certificate));
+        }
+
+        return new IsCertificateIndex(Collections.unmodifiableSet(fingerprints));
+    }
+
+    /**
+     * @return true, if the client has no IS certificates
+     */
+    public boolean isEmpty() {
+        return fingerprints.isEmpty();
+    }
+
+    /**
+     * @param certificate the certificate
+     * @return true, if the certificate is one of the IS certificates of the client
+     */
+    public boolean contains(X509Certificate certificate) {
+        try {
+            return fingerprints.contains(fingerprint(certificate.getEncoded()));
+        } catch (Exception e) {
+            throw translateException(e);
+        }
+    }
+
+    private static String fingerprint(byte[] certificate) {
+        try {
+            return hexDigest(SHA256_ID, certificate);
+        } catch (Exception e) {
+            throw translateException(e);
+        }
+    }
+}
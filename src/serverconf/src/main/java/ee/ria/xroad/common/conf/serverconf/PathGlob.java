@@ -34,7 +34,7 @@ import java.util.regex.Pattern;
  * Helper class to compile a glob patter to equivalent regular expression
  */
 public final class PathGlob {
-    private static final String REGEX_META = ".^$+{[]|()";
+    private static final String REGEX_META = ".^$+?{[]|()";
     public static final int MAXIMUM_CACHE_SIZE = 1000;
 
     private static final Cache<String, Pattern> PATTERN_CACHE =
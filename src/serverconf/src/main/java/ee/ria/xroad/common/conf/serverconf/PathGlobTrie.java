@@ -0,0 +1,236 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a path against a set of path globs at once. See {@link PathGlob} for the glob syntax.
+ *
+ * The globs are split into '/' separated segments and indexed in a trie. A glob segment is either a literal, a
+ * single '*' that matches any one path segment, or '**' as the last segment of the glob, which matches the rest of
+ * the path. A path is matched segment by segment following all matching branches of the trie simultaneously, so the
+ * matching time depends on the length of the path and not on the number of globs.
+ *
+ * Globs that use wildcards within a segment (for example /foo/bar*) or '**' before the last segment are matched
+ * one by one with the equivalent regular expressions. The result is always the same as with
+ * {@link PathGlob#matches(String, String)}.
+ *
+ * Instances are not thread-safe while globs are being added, but can be shared between threads afterwards.
+ */
+public final class PathGlobTrie {
+
+    private static final char SEPARATOR = '/';
+    private static final char ESCAPE = '\\';
+    private static final char WILDCARD = '*';
+
+    private final Node root = new Node();
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    /**
+     * Adds a glob to the trie.
+     * @param glob the path glob
+     */
+    public void add(String glob) {
+        String[] segments = split(glob);
+
+        if (!isIndexable(segments)) {
+            patterns.add(PathGlob.compile(glob));
+
+            return;
+        }
+
+        Node node = root;
+
+        for (String segment : segments) {
+            if (isAnyRest(segment)) {
+                node.anyRest = true;
+
+                return;
+            } else if (isAnySegment(segment)) {
+                if (node.anySegment == null) {
+                    node.anySegment = new Node();
+                }
+
+                node = node.anySegment;
+            } else {
+                node = node.literals.computeIfAbsent(unescape(segment), s -> new Node());
+            }
+        }
+
+        node.terminal = true;
+    }
+
+    /**
+     * Returns true if the path matches any of the globs added to the trie.
+     * @param path the path
+     * @return true, if the path matches
+     */
+    public boolean matches(String path) {
+        if (matchesTrie(split(path))) {
+            return true;
+        }
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean matchesTrie(String[] segments) {
+        List<Node> current = new ArrayList<>();
+        List<Node> next = new ArrayList<>();
+        current.add(root);
+
+        for (String segment : segments) {
+            for (Node node : current) {
+                // a trailing '**' matches the remaining segments, of which there is at least one
+                if (node.anyRest) {
+                    return true;
+                }
+
+                Node literal = node.literals.get(segment);
+
+                if (literal != null) {
+                    next.add(literal);
+                }
+
+                if (node.anySegment != null) {
+                    next.add(node.anySegment);
+                }
+            }
+
+            if (next.isEmpty()) {
+                return false;
+            }
+
+            List<Node> swap = current;
+            current = next;
+            next = swap;
+            next.clear();
+        }
+
+        for (Node node : current) {
+            if (node.terminal) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // The separator is never escaped, so both globs and paths can be split on it
+    private static String[] split(String value) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int end;
+
+        while ((end = value.indexOf(SEPARATOR, start)) != -1) {
+            segments.add(value.substring(start, end));
+            start = end + 1;
+        }
+
+        segments.add(value.substring(start));
+
+        return segments.toArray(new String[0]);
+    }
+
+    private static boolean isIndexable(String[] segments) {
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+
+            if (countWildcards(segment) > 0 && !isAnySegment(segment)
+                    && !(isAnyRest(segment) && i == segments.length - 1)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isAnySegment(String segment) {
+        return segment.length() == 1 && segment.charAt(0) == WILDCARD;
+    }
+
+    private static boolean isAnyRest(String segment) {
+        return segment.length() > 1 && countWildcards(segment) == segment.length();
+    }
+
+    private static int countWildcards(String segment) {
+        int count = 0;
+
+        for (int i = 0; i < segment.length(); i++) {
+            char ch = segment.charAt(i);
+
+            if (ch == ESCAPE && isEscapable(segment, i + 1)) {
+                i++;
+            } else if (ch == WILDCARD) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static String unescape(String segment) {
+        if (segment.indexOf(ESCAPE) == -1) {
+            return segment;
+        }
+
+        StringBuilder b = new StringBuilder(segment.length());
+
+        for (int i = 0; i < segment.length(); i++) {
+            char ch = segment.charAt(i);
+
+            if (ch == ESCAPE && isEscapable(segment, i + 1)) {
+                i++;
+                ch = segment.charAt(i);
+            }
+
+            b.append(ch);
+        }
+
+        return b.toString();
+    }
+
+    // Only '*' and '\' can be escaped, a backslash followed by any other character is a literal backslash
+    private static boolean isEscapable(String segment, int index) {
+        return index < segment.length() && (segment.charAt(index) == WILDCARD || segment.charAt(index) == ESCAPE);
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private Node anySegment;
+        private boolean anyRest;
+        private boolean terminal;
+    }
+}
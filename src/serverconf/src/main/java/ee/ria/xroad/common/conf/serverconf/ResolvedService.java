@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityCategoryId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+
+/**
+ * Server configuration of a service as needed by the server proxy for processing a request to the service,
+ * resolved at once instead of by separate {@link ServerConf} calls. Instances are immutable.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class ResolvedService {
+
+    /**
+     * Checks the access rights of the resolved service.
+     */
+    @FunctionalInterface
+    interface AccessCheck {
+        boolean isAllowed(ClientId client, String method, String path);
+    }
+
+    private final ServiceId serviceId;
+
+    /**
+     * Status of the service provider, null if the provider does not exist.
+     */
+    private final String providerStatus;
+
+    @Getter(AccessLevel.NONE)
+    private final boolean exists;
+
+    /**
+     * Type of the service description, null if the service does not exist.
+     */
+    private final DescriptionType descriptionType;
+
+    /**
+     * Notice about the service being disabled, null if the service is enabled.
+     */
+    private final String disabledNotice;
+
+    private final Collection<SecurityCategoryId> requiredCategories;
+
+    /**
+     * URL of the service, null if the service does not exist.
+     */
+    private final String address;
+
+    /**
+     * Timeout of the service in seconds.
+     */
+    private final int timeout;
+
+    @Getter(AccessLevel.NONE)
+    private final AccessCheck accessCheck;
+
+    /**
+     * @return true, if the service exists in the configuration
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    /**
+     * @param client the client identifier
+     * @return true, if the client is allowed to invoke the service
+     */
+    public boolean isQueryAllowed(ClientId client) {
+        return isQueryAllowed(client, null, null);
+    }
+
+    /**
+     * @param client the client identifier
+     * @param method HTTP method of the request
+     * @param path path of the request
+     * @return true, if the client is allowed to invoke the service using the given method and path
+     */
+    public boolean isQueryAllowed(ClientId client, String method, String path) {
+        return accessCheck.isAllowed(client, method, path);
+    }
+}
@@ -192,6 +192,16 @@ public class ServerConf {
         return getInstance().getAllowedServicesByDescriptionType(serviceProvider, client, descriptionType);
     }
 
+    /**
+     * @param service the service identifier
+     * @return everything the server proxy needs to know about the service
+     */
+    public static ResolvedService resolveService(ServiceId service) {
+        log.trace("resolveService({})", service);
+
+        return getInstance().resolveService(service);
+    }
+
     /**
      * @param service the service identifier
      * @return set of security category codes required by this service.
@@ -246,6 +256,18 @@ public class ServerConf {
         return getInstance().getIsCerts(client);
     }
 
+    /**
+     * @param client the client identifier
+     * @return the certificates that are allowed to be used to authenticate the client information system, indexed
+     * for fast lookup
+     * @throws Exception if an error occurs
+     */
+    public static IsCertificateIndex getIsCertificateIndex(ClientId client) throws Exception {
+        log.trace("getIsCertificateIndex({})", client);
+
+        return getInstance().getIsCertificateIndex(client);
+    }
+
     /**
      * @return the list of certificates that are allowed to be used to
      * authenticate all client information systems.
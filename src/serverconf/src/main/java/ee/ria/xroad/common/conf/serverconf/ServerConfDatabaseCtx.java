@@ -65,4 +65,17 @@ public final class ServerConfDatabaseCtx {
         return CTX.doInTransaction(callback);
     }
 
+    /**
+     * Executes the unit of work transactionally, recorded under the given operation name.
+     * @param operation name of the operation
+     * @param callback the unit of work callback
+     * @param <T> the type of the result
+     * @return the result of the callback
+     * @throws Exception if an error occurs
+     */
+    public static <T> T doInTransaction(String operation, TransactionCallback<T> callback)
+            throws Exception {
+        return CTX.doInTransaction(operation, callback);
+    }
+
 }
@@ -26,13 +26,16 @@ package ee.ria.xroad.common.conf.serverconf;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.InternalSSLKey;
+import ee.ria.xroad.common.conf.InternalSSLKeyCache;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.dao.CertificateDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.dao.ConfVersionDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServerConfDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDescriptionDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.CertificateType;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
 import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
@@ -48,16 +51,16 @@ import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.identifier.XRoadId;
-import ee.ria.xroad.common.util.UriUtils;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Session;
 
-import java.net.URI;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_SERVERCONF;
@@ -76,7 +79,7 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public SecurityServerId getIdentifier() {
-        return tx(session -> {
+        return tx("getIdentifier", session -> {
             ServerConfType confType = getConf();
             ClientType owner = confType.getOwner();
             if (owner == null) {
@@ -88,13 +91,13 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public boolean serviceExists(ServiceId service) {
-        return tx(session -> new ServiceDAOImpl().serviceExists(session,
+        return tx("serviceExists", session -> new ServiceDAOImpl().serviceExists(session,
                 service));
     }
 
     @Override
     public String getServiceAddress(ServiceId service) {
-        return tx(session -> {
+        return tx("getServiceAddress", session -> {
             ServiceType serviceType = getService(session, service);
             if (serviceType != null) {
                 return serviceType.getUrl();
@@ -106,7 +109,7 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public int getServiceTimeout(ServiceId service) {
-        return tx(session -> {
+        return tx("getServiceTimeout", session -> {
             ServiceType serviceType = getService(session, service);
             if (serviceType != null) {
                 return serviceType.getTimeout();
@@ -118,42 +121,46 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public List<ServiceId> getAllServices(ClientId serviceProvider) {
-        return tx(session -> new ServiceDAOImpl().getServices(session,
+        return tx("getAllServices", session -> new ServiceDAOImpl().getServices(session,
                 serviceProvider));
     }
 
     @Override
     public List<ServiceId> getServicesByDescriptionType(ClientId serviceProvider, DescriptionType descriptionType) {
-        return tx(session -> new ServiceDAOImpl().getServicesByDescriptionType(session,
+        return tx("getServicesByDescriptionType", session -> new ServiceDAOImpl().getServicesByDescriptionType(session,
                 serviceProvider, descriptionType));
     }
 
     @Override
     public List<ServiceId> getAllowedServices(ClientId serviceProvider, ClientId client) {
-        return tx(session -> {
-            List<ServiceId> allServices =
-                    new ServiceDAOImpl().getServices(session, serviceProvider);
-            return allServices.stream()
-                    .filter(s -> internalIsQueryAllowed(session, client, s, null, null))
-                    .collect(Collectors.toList());
-        });
+        return getAllowedServicesByDescriptionType(serviceProvider, client, null);
     }
 
+    /**
+     * Returns the allowed services in one pass over the access rights of the service provider, see
+     * {@link AccessRightIndex#getAllowedServiceCodes(ClientId)}.
+     */
     @Override
     public List<ServiceId> getAllowedServicesByDescriptionType(ClientId serviceProvider, ClientId client,
                                                                DescriptionType descriptionType) {
-        return tx(session -> {
-            List<ServiceId> allServices =
-                    new ServiceDAOImpl().getServicesByDescriptionType(session, serviceProvider, descriptionType);
-            return allServices.stream()
-                    .filter(s -> internalIsQueryAllowed(session, client, s, null, null))
+        return tx("getAllowedServicesByDescriptionType", session -> {
+            Set<String> allowed = AccessRightIndex.compile(getClient(session, serviceProvider))
+                    .getAllowedServiceCodes(client);
+
+            if (allowed.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            return new ServiceDAOImpl().getServicesByDescriptionType(session, serviceProvider, descriptionType)
+                    .stream()
+                    .filter(s -> allowed.contains(s.getServiceCode()))
                     .collect(Collectors.toList());
         });
     }
 
     @Override
     public boolean isSslAuthentication(ServiceId service) {
-        return tx(session -> {
+        return tx("isSslAuthentication", session -> {
             ServiceType serviceType = getService(session, service);
             if (serviceType != null) {
                 return ObjectUtils.defaultIfNull(
@@ -167,14 +174,14 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public List<ClientId> getMembers() {
-        return tx(session -> getConf().getClient().stream()
+        return tx("getMembers", session -> getConf().getClient().stream()
                 .map(c -> c.getIdentifier())
                 .collect(Collectors.toList()));
     }
 
     @Override
     public String getMemberStatus(ClientId memberId) {
-        return tx(session -> {
+        return tx("getMemberStatus", session -> {
             ClientType client = getClient(session, memberId);
             if (client != null) {
                 return client.getClientStatus();
@@ -186,7 +193,7 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public IsAuthentication getIsAuthentication(ClientId client) {
-        return tx(session -> {
+        return tx("getIsAuthentication", session -> {
             ClientType clientType = getClient(session, client);
             if (clientType != null) {
                 String isAuth = clientType.getIsAuthentication();
@@ -203,14 +210,22 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public List<X509Certificate> getIsCerts(ClientId client) throws Exception {
-        return tx(session -> new ClientDAOImpl().getIsCerts(session,
+        return tx("getIsCerts", session -> new ClientDAOImpl().getIsCerts(session,
                 client).stream().map(c -> readCertificate(c.getData()))
                 .collect(Collectors.toList()));
     }
 
+    @Override
+    public IsCertificateIndex getIsCertificateIndex(ClientId client) {
+        return tx("getIsCertificateIndex", session -> IsCertificateIndex.of(
+                new ClientDAOImpl().getIsCerts(session, client).stream()
+                        .map(CertificateType::getData)
+                        .collect(Collectors.toList())));
+    }
+
     @Override
     public List<X509Certificate> getAllIsCerts() {
-        return tx(session -> new CertificateDAOImpl()
+        return tx("getAllIsCerts", session -> new CertificateDAOImpl()
                 .findAll(session)
                 .stream()
                 .map(c -> readCertificate(c.getData()))
@@ -219,33 +234,33 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public String getDisabledNotice(ServiceId service) {
-        return tx(session -> {
-            ServiceDescriptionType serviceDescriptionType = getServiceDescription(session, service);
-            if (serviceDescriptionType != null && serviceDescriptionType.isDisabled()) {
-                if (serviceDescriptionType.getDisabledNotice() == null) {
-                    return String.format("Service '%s' is disabled", service);
-                }
+        return tx("getDisabledNotice", session -> getDisabledNotice(service, getServiceDescription(session, service)));
+    }
 
-                return serviceDescriptionType.getDisabledNotice();
-            }
+    @Override
+    public ResolvedService resolveService(ServiceId service) {
+        return tx("resolveService", session -> {
+            ServiceType serviceType = new ServiceDAOImpl().getServiceWithCategories(session, service);
+            ClientType provider = serviceType != null
+                    ? serviceType.getServiceDescription().getClient() : getClient(session, service.getClientId());
 
-            return null;
+            return createResolvedService(service, serviceType, provider);
         });
     }
 
     @Override
     public InternalSSLKey getSSLKey() throws Exception {
-        return InternalSSLKey.load();
+        return InternalSSLKeyCache.get();
     }
 
     @Override
     public boolean isQueryAllowed(ClientId client, ServiceId service, String method, String path) {
-        return tx(session -> internalIsQueryAllowed(session, client, service, method, path));
+        return tx("isQueryAllowed", session -> internalIsQueryAllowed(session, client, service, method, path));
     }
 
     @Override
     public List<SecurityCategoryId> getRequiredCategories(ServiceId service) {
-        return tx(session -> {
+        return tx("getRequiredCategories", session -> {
             ServiceType serviceType = getService(session, service);
             if (serviceType != null) {
                 return serviceType.getRequiredSecurityCategory();
@@ -257,7 +272,7 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public List<String> getTspUrl() {
-        return tx(session -> getConf().getTsp().stream()
+        return tx("getTspUrl", session -> getConf().getTsp().stream()
                 .map(tsp -> tsp.getUrl())
                 .filter(StringUtils::isNotBlank)
                 .collect(Collectors.toList()));
@@ -265,7 +280,7 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public DescriptionType getDescriptionType(ServiceId service) {
-        return tx(session -> {
+        return tx("getDescriptionType", session -> {
             ServiceType serviceType = getService(session, service);
             if (serviceType != null && serviceType.getServiceDescription() != null) {
                 return serviceType.getServiceDescription().getType();
@@ -277,7 +292,7 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public String getServiceDescriptionURL(ServiceId service) {
-        return tx(session -> {
+        return tx("getServiceDescriptionURL", session -> {
             ServiceType serviceType = getService(session, service);
             if (serviceType != null && serviceType.getServiceDescription() != null) {
                 return serviceType.getServiceDescription().getUrl();
@@ -304,6 +319,51 @@ public class ServerConfImpl implements ServerConfProvider {
         return new ServiceDescriptionDAOImpl().getServiceDescription(session, service);
     }
 
+    /**
+     * @return the current version of the configuration in the database, or null if the database does not track
+     * the version
+     */
+    protected Long getConfVersion() {
+        return tx("getConfVersion", session -> new ConfVersionDAOImpl().getVersion(session));
+    }
+
+    protected AccessRightIndex compileAccessRights(ClientId serviceProvider) {
+        return tx("compileAccessRights", session -> AccessRightIndex.compile(getClient(session, serviceProvider)));
+    }
+
+    protected ResolvedService.AccessCheck getAccessCheck(ClientType provider, ServiceId service) {
+        AccessRightIndex accessRights = AccessRightIndex.compile(provider);
+
+        return (client, method, path) -> accessRights.isAllowed(client, service.getServiceCode(), method, path);
+    }
+
+    private ResolvedService createResolvedService(ServiceId service, ServiceType serviceType, ClientType provider) {
+        if (serviceType == null) {
+            return new ResolvedService(service, provider != null ? provider.getClientStatus() : null, false, null,
+                    null, Collections.emptyList(), null, DEFAULT_SERVICE_TIMEOUT, getAccessCheck(provider, service));
+        }
+
+        ServiceDescriptionType serviceDescription = serviceType.getServiceDescription();
+
+        return new ResolvedService(service, provider.getClientStatus(), true,
+                serviceDescription != null ? serviceDescription.getType() : null,
+                getDisabledNotice(service, serviceDescription),
+                Collections.unmodifiableList(new ArrayList<>(serviceType.getRequiredSecurityCategory())),
+                serviceType.getUrl(), serviceType.getTimeout(), getAccessCheck(provider, service));
+    }
+
+    private static String getDisabledNotice(ServiceId service, ServiceDescriptionType serviceDescriptionType) {
+        if (serviceDescriptionType != null && serviceDescriptionType.isDisabled()) {
+            if (serviceDescriptionType.getDisabledNotice() == null) {
+                return String.format("Service '%s' is disabled", service);
+            }
+
+            return serviceDescriptionType.getDisabledNotice();
+        }
+
+        return null;
+    }
+
     private boolean internalIsQueryAllowed(Session session, ClientId client, ServiceId service, String method,
             String path) {
 
@@ -323,12 +383,7 @@ public class ServerConfImpl implements ServerConfProvider {
     private boolean checkAccessRights(ClientType clientType, Session session, ClientId client, ServiceId service,
             String method, String path) {
 
-        final String normalizedPath;
-        if (path == null) {
-            normalizedPath = null;
-        } else {
-            normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
-        }
+        final String normalizedPath = AccessRightIndex.normalizePath(path);
 
         for (AccessRightType accessRight : clientType.getAcl()) {
             final EndpointType endpoint = accessRight.getEndpoint();
@@ -381,9 +436,9 @@ public class ServerConfImpl implements ServerConfProvider {
                 .findFirst().orElse(null);
     }
 
-    protected static <T> T tx(TransactionCallback<T> t) {
+    protected static <T> T tx(String operation, TransactionCallback<T> t) {
         try {
-            return doInTransaction(t);
+            return doInTransaction(operation, t);
         } catch (Exception e) {
             throw translateException(e);
         }
@@ -32,6 +32,7 @@ import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -114,6 +115,22 @@ public interface ServerConfProvider {
      */
     List<X509Certificate> getIsCerts(ClientId client) throws Exception;
 
+    /**
+     * @param client the client identifier
+     * @return the certificates that are allowed to be used to authenticate the client information system, indexed
+     * for fast lookup
+     * @throws Exception if an error occurs
+     */
+    default IsCertificateIndex getIsCertificateIndex(ClientId client) throws Exception {
+        List<byte[]> certificates = new ArrayList<>();
+
+        for (X509Certificate certificate : getIsCerts(client)) {
+            certificates.add(certificate.getEncoded());
+        }
+
+        return IsCertificateIndex.of(certificates);
+    }
+
 
     /**
      * List all known certificates that are allowed to be used to authenticate
@@ -178,4 +195,22 @@ public interface ServerConfProvider {
      * @return the service description url
      */
     String getServiceDescriptionURL(ServiceId service);
+
+    /**
+     * Resolves everything the server proxy needs to know about the service. The default implementation makes a
+     * separate call for every value, implementations should override it to resolve the values at once.
+     * @param service the service identifier
+     * @return the resolved service
+     */
+    default ResolvedService resolveService(ServiceId service) {
+        return new ResolvedService(service,
+                getMemberStatus(service.getClientId()),
+                serviceExists(service),
+                getDescriptionType(service),
+                getDisabledNotice(service),
+                getRequiredCategories(service),
+                getServiceAddress(service),
+                getServiceTimeout(service),
+                (client, method, path) -> isQueryAllowed(client, service, method, path));
+    }
 }
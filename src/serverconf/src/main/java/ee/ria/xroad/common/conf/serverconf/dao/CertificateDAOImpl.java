@@ -36,7 +36,7 @@ import java.util.List;
 public class CertificateDAOImpl extends AbstractDAOImpl<CertificateType> {
 
     public List<CertificateType> findAll(Session session) {
-        return findAll(session, CertificateType.class);
+        return findMany(session.createNamedQuery("CertificateType.findAll", CertificateType.class));
     }
 
 }
@@ -29,12 +29,7 @@ import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.identifier.ClientId;
 
 import org.hibernate.Session;
-
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Join;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
+import org.hibernate.query.Query;
 
 import java.util.List;
 
@@ -54,28 +49,11 @@ public class ClientDAOImpl extends AbstractDAOImpl<ClientType> {
      * @return true, if client with specified identifier exists
      */
     public boolean clientExists(Session session, ClientId id, boolean includeSubsystems) {
-        final CriteriaBuilder cb = session.getCriteriaBuilder();
-        final CriteriaQuery<Boolean> query = cb.createQuery(Boolean.class);
-        final Root<ClientType> client = query.from(ClientType.class);
-        final Join<ClientType, ClientId> iden = client.join("identifier");
-        Predicate pred = cb.conjunction();
-
-        if (!includeSubsystems) {
-            pred = cb.and(pred, cb.equal(iden.get("type"), id.getObjectType()));
-        }
-
-        pred = cb.and(pred,
-                cb.equal(iden.get("xRoadInstance"), id.getXRoadInstance()),
-                cb.equal(iden.get("memberClass"), id.getMemberClass()),
-                cb.equal(iden.get("memberCode"), id.getMemberCode()));
-
-        if (id.getSubsystemCode() != null) {
-            pred = cb.and(pred, cb.equal(iden.get("subsystemCode"), id.getSubsystemCode()));
-        }
-
-        query.select(cb.literal(Boolean.TRUE)).where(pred);
-        return session.createQuery(query).list().size() > 0;
+        Query<ClientType> query = includeSubsystems && id.getSubsystemCode() == null
+                ? setMember(session.createNamedQuery("ClientType.findMemberOrSubsystems", ClientType.class), id)
+                : createQuery(session, id);
 
+        return !findMany(query).isEmpty();
     }
 
     /**
@@ -85,23 +63,7 @@ public class ClientDAOImpl extends AbstractDAOImpl<ClientType> {
      * @return the client
      */
     public ClientType getClient(Session session, ClientId id) {
-        final CriteriaBuilder cb = session.getCriteriaBuilder();
-        final CriteriaQuery<ClientType> query = cb.createQuery(ClientType.class);
-        final Root<ClientType> client = query.from(ClientType.class);
-        final Join<ClientType, ClientId> iden = client.join("identifier");
-
-        Predicate pred =
-                cb.and(cb.equal(iden.get("type"), id.getObjectType()),
-                        cb.equal(iden.get("xRoadInstance"), id.getXRoadInstance()),
-                        cb.equal(iden.get("memberClass"), id.getMemberClass()),
-                        cb.equal(iden.get("memberCode"), id.getMemberCode()));
-        if (id.getSubsystemCode() != null) {
-            pred = cb.and(pred, cb.equal(iden.get("subsystemCode"), id.getSubsystemCode()));
-        }
-
-        return session
-                .createQuery(query.select(client).where(pred))
-                .uniqueResult();
+        return findOne(createQuery(session, id));
     }
 
     /**
@@ -117,4 +79,20 @@ public class ClientDAOImpl extends AbstractDAOImpl<ClientType> {
         }
         return emptyList();
     }
+
+    private static Query<ClientType> createQuery(Session session, ClientId id) {
+        if (id.getSubsystemCode() == null) {
+            return setMember(session.createNamedQuery("ClientType.findMember", ClientType.class), id);
+        }
+
+        return setMember(session.createNamedQuery("ClientType.findSubsystem", ClientType.class), id)
+                .setParameter("subsystemCode", id.getSubsystemCode());
+    }
+
+    private static Query<ClientType> setMember(Query<ClientType> query, ClientId id) {
+        return query
+                .setParameter("xRoadInstance", id.getXRoadInstance())
+                .setParameter("memberClass", id.getMemberClass())
+                .setParameter("memberCode", id.getMemberCode());
+    }
 }
@@ -62,7 +62,7 @@ public class ServiceDAOImpl extends AbstractDAOImpl<ServiceType> {
      * @return the service object
      */
     public ServiceType getService(Session session, ServiceId id) {
-        ServiceType serviceType = find(session, id);
+        ServiceType serviceType = find(session, id, false);
         if (serviceType != null) {
             Hibernate.initialize(serviceType.getRequiredSecurityCategory());
         }
@@ -70,6 +70,19 @@ public class ServiceDAOImpl extends AbstractDAOImpl<ServiceType> {
         return serviceType;
     }
 
+    /**
+     * Returns the service object for the given service identifier or null
+     * if the service cannot be found. The service description, the service
+     * provider and the required security categories of the service are
+     * fetched by the same query.
+     * @param session the session
+     * @param id the service identifier
+     * @return the service object
+     */
+    public ServiceType getServiceWithCategories(Session session, ServiceId id) {
+        return find(session, id, true);
+    }
+
     /**
      * Returns true, if service with the specified identifier exists.
      * @param session the session
@@ -77,7 +90,7 @@ public class ServiceDAOImpl extends AbstractDAOImpl<ServiceType> {
      * @return true, if service with the specified identifier exists
      */
     public boolean serviceExists(Session session, ServiceId id) {
-        return find(session, id) != null;
+        return find(session, id, false) != null;
     }
 
     /**
@@ -134,12 +147,17 @@ public class ServiceDAOImpl extends AbstractDAOImpl<ServiceType> {
     }
 
     @SuppressWarnings("squid:S1192")
-    private ServiceType find(Session session, ServiceId id) {
+    private ServiceType find(Session session, ServiceId id, boolean fetchCategories) {
         StringBuilder qb = new StringBuilder();
-        qb.append("select s from ServiceType s");
+        qb.append(fetchCategories ? "select distinct s" : "select s");
+        qb.append(" from ServiceType s");
         qb.append(" inner join fetch s.serviceDescription w");
         qb.append(" inner join fetch w.client c");
 
+        if (fetchCategories) {
+            qb.append(" left join fetch s.requiredSecurityCategory");
+        }
+
         qb.append(" where s.serviceCode = :serviceCode");
         qb.append(" and s.serviceVersion "
                 + nullOrName(id.getServiceVersion(), "serviceVersion"));
@@ -160,6 +178,9 @@ public class ServiceDAOImpl extends AbstractDAOImpl<ServiceType> {
         q.setParameter("clientCode", id.getClientId().getMemberCode());
         setString(q, CLIENT_SUBSYSTEM_CODE, id.getClientId().getSubsystemCode());
 
+        // results are kept in the query cache like the named client lookups
+        q.setCacheable(true);
+
         return findOne(q);
     }
 }
@@ -0,0 +1,358 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.ServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
+import ee.ria.xroad.common.conf.serverconf.model.ServiceDescriptionType;
+import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.conf.TestUtil.MEMBER_CLASS;
+import static ee.ria.xroad.proxy.conf.TestUtil.XROAD_INSTANCE;
+import static ee.ria.xroad.proxy.conf.TestUtil.cleanDB;
+import static ee.ria.xroad.proxy.conf.TestUtil.createAccessRight;
+import static ee.ria.xroad.proxy.conf.TestUtil.prepareDB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Differential tests for compiled access rights: random server configurations are generated and the access checks
+ * of {@link CachingServerConfImpl}, which uses the compiled access rights, are compared to the access checks of
+ * {@link ServerConfImpl}, which goes through the access right entries in the database. The allowed services of
+ * both are compared to the services that pass the access check one by one.
+ */
+@Slf4j
+public class AccessRightIndexTest {
+
+    private static final int ROUNDS = 25;
+    private static final int QUERIES_PER_ROUND = 2000;
+
+    private static final int MEMBERS = 6;
+    private static final int PROVIDERS = 3;
+    private static final int MAX_LOCAL_GROUPS = 4;
+    private static final int MAX_GROUP_MEMBERS = 5;
+    private static final int MAX_ENDPOINTS = 12;
+    private static final int MAX_ACL_ENTRIES = 40;
+
+    private static final String[] SUBSYSTEMS = {null, "sub0", "sub1"};
+    private static final String[] GROUP_CODES = {"group0", "group1", "group2"};
+    private static final String[] GLOBAL_GROUP_CODES = {"global0", "global1", "global2"};
+    private static final String[] SERVICE_CODES = {"service0", "service1", "service2"};
+    private static final String[] ENDPOINT_METHODS = {"*", "GET", "get", "POST", "DELETE"};
+    private static final String[] ENDPOINT_PATHS = {
+        "**", "/", "/foo", "/foo/*", "/foo/**", "/foo/*/bar", "/*.json", "/b\\*z", "/api/v1/**/items"
+    };
+
+    private static final DescriptionType[] DESCRIPTION_TYPES = {null, DescriptionType.WSDL, DescriptionType.REST};
+
+    private static final String[] QUERY_SERVICE_CODES = {"service0", "service1", "service2", "unknown"};
+    private static final String[] QUERY_METHODS = {null, "GET", "Get", "POST", "PUT", "DELETE"};
+    private static final String[] QUERY_PATHS = {
+        null, "/", "/foo", "/foo/", "/foo/x", "/foo/x/bar", "/foo/x/y/bar", "/x.json", "/a/x.json", "/b*z",
+        "/bz", "/foo/../foo/x", "/./foo", "/%66oo/x", "/foo/x%2Fbar", "/api/v1/items", "/api/v1/a/b/items"
+    };
+
+    /**
+     * Creates the test database and makes the membership of global groups depend on both the subject and the group.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        prepareDB();
+
+        GlobalConf.reload(new EmptyGlobalConf() {
+            @Override
+            public boolean isSubjectInGlobalGroup(ClientId subject, GlobalGroupId group) {
+                return Math.floorMod(Objects.hash(subject.toShortString(), group.getGroupCode()), 3) == 0;
+            }
+        });
+    }
+
+    /**
+     * Restores the test database used by the other tests.
+     * @throws Exception if an error occurs
+     */
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        GlobalConf.reload(new EmptyGlobalConf());
+
+        prepareDB();
+    }
+
+    /**
+     * Test to ensure compiled access rights give the same decisions as the access right entries.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void compiledAccessRightsMatchAccessRightEntries() throws Exception {
+        int compared = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            Random random = new Random(round);
+
+            cleanDB();
+            doInTransaction(session -> {
+                session.save(createServerConf(session, random));
+                return null;
+            });
+
+            ServerConfImpl reference = new ServerConfImpl();
+            CachingServerConfImpl compiled = new CachingServerConfImpl();
+
+            for (int i = 0; i < QUERIES_PER_ROUND; i++) {
+                ClientId client = random.nextInt(20) == 0 ? null : clientId(random);
+                ServiceId service = ServiceId.create(providerId(random.nextInt(PROVIDERS + 1)),
+                        pick(random, QUERY_SERVICE_CODES), "v1");
+                String method = pick(random, QUERY_METHODS);
+                String path = pick(random, QUERY_PATHS);
+
+                boolean expected;
+
+                try {
+                    expected = reference.isQueryAllowed(client, service, method, path);
+                } catch (CodedException e) {
+                    // Access right entries can not be checked without a path, the index does not match them
+                    assertTrue(path == null);
+
+                    continue;
+                }
+
+                assertEquals(String.format("Round %d: %s, %s, %s %s", round, client, service, method, path),
+                        expected, compiled.isQueryAllowed(client, service, method, path));
+
+                compared++;
+            }
+        }
+
+        log.info("Compared {} access checks", compared);
+
+        assertTrue(compared > ROUNDS * QUERIES_PER_ROUND / 2);
+    }
+
+    /**
+     * Test to ensure allowed services computed from the compiled access rights are the services that pass the
+     * access check without method and path.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void allowedServicesMatchAccessChecks() throws Exception {
+        int compared = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            Random random = new Random(round);
+
+            cleanDB();
+            doInTransaction(session -> {
+                session.save(createServerConf(session, random));
+                return null;
+            });
+
+            ServerConfImpl reference = new ServerConfImpl();
+            CachingServerConfImpl compiled = new CachingServerConfImpl();
+
+            for (int i = 0; i <= PROVIDERS; i++) {
+                ClientId provider = providerId(i);
+
+                for (ClientId client : allClientIds()) {
+                    for (DescriptionType type : DESCRIPTION_TYPES) {
+                        List<ServiceId> expected = reference.getServicesByDescriptionType(provider, type).stream()
+                                .filter(service -> isQueryAllowed(reference, client, service))
+                                .collect(Collectors.toList());
+                        String message = String.format("Round %d: %s, %s, %s", round, client, provider, type);
+
+                        assertEquals(message, expected,
+                                reference.getAllowedServicesByDescriptionType(provider, client, type));
+                        assertEquals(message, new HashSet<>(expected),
+                                new HashSet<>(compiled.getAllowedServicesByDescriptionType(provider, client, type)));
+
+                        compared++;
+                    }
+                }
+            }
+        }
+
+        log.info("Compared {} allowed service lists", compared);
+    }
+
+    private static boolean isQueryAllowed(ServerConfImpl conf, ClientId client, ServiceId service) {
+        try {
+            return conf.isQueryAllowed(client, service, null, null);
+        } catch (CodedException e) {
+            // Access right entries can not be checked without a path, they do not allow the service
+            return false;
+        }
+    }
+
+    private static ServerConfType createServerConf(Session session, Random random) {
+        ServerConfType conf = new ServerConfType();
+        conf.setServerCode("server");
+
+        for (int i = 0; i < PROVIDERS; i++) {
+            ClientType provider = new ClientType();
+            provider.setConf(conf);
+            provider.setIdentifier(providerId(i));
+            provider.setClientStatus("registered");
+            conf.getClient().add(provider);
+
+            if (i == 0) {
+                conf.setOwner(provider);
+            }
+
+            int localGroups = random.nextInt(MAX_LOCAL_GROUPS + 1);
+
+            for (int j = 0; j < localGroups; j++) {
+                // Group codes may repeat, only the first group with a code is used
+                LocalGroupType group = new LocalGroupType();
+                group.setGroupCode(pick(random, GROUP_CODES));
+                group.setDescription("group");
+                group.setUpdated(new Date());
+
+                int members = random.nextInt(MAX_GROUP_MEMBERS + 1);
+
+                for (int k = 0; k < members; k++) {
+                    GroupMemberType member = new GroupMemberType();
+                    member.setGroupMemberId(clientId(random));
+                    member.setAdded(new Date());
+                    group.getGroupMember().add(member);
+                }
+
+                provider.getLocalGroup().add(group);
+            }
+
+            EndpointType[] endpoints = new EndpointType[1 + random.nextInt(MAX_ENDPOINTS)];
+
+            for (int j = 0; j < endpoints.length; j++) {
+                endpoints[j] = new EndpointType(pick(random, SERVICE_CODES), pick(random, ENDPOINT_METHODS),
+                        pick(random, ENDPOINT_PATHS), false);
+                session.persist(endpoints[j]);
+                provider.getEndpoint().add(endpoints[j]);
+            }
+
+            int aclEntries = random.nextInt(MAX_ACL_ENTRIES + 1);
+
+            for (int j = 0; j < aclEntries; j++) {
+                provider.getAcl().add(createAccessRight(pick(random, endpoints), subjectId(random)));
+            }
+
+            provider.getServiceDescription().add(createServiceDescription(provider, DescriptionType.WSDL,
+                    SERVICE_CODES.length - 1, "v1", "v2"));
+            provider.getServiceDescription().add(createServiceDescription(provider, DescriptionType.REST,
+                    SERVICE_CODES.length, (String) null));
+        }
+
+        return conf;
+    }
+
+    // Every service code of the description is created in all the given versions
+    private static ServiceDescriptionType createServiceDescription(ClientType provider, DescriptionType type,
+            int serviceCodes, String... versions) {
+        ServiceDescriptionType serviceDescription = new ServiceDescriptionType();
+        serviceDescription.setClient(provider);
+        serviceDescription.setUrl("http://" + type);
+        serviceDescription.setType(type);
+
+        for (String version : versions) {
+            for (int i = 0; i < serviceCodes; i++) {
+                ServiceType service = new ServiceType();
+                service.setServiceDescription(serviceDescription);
+                service.setServiceCode(SERVICE_CODES[i]);
+                service.setServiceVersion(version);
+                serviceDescription.getService().add(service);
+            }
+        }
+
+        return serviceDescription;
+    }
+
+    private static List<ClientId> allClientIds() {
+        List<ClientId> clients = new ArrayList<>();
+        clients.add(null);
+
+        for (int i = 0; i < MEMBERS; i++) {
+            for (String subsystem : SUBSYSTEMS) {
+                clients.add(ClientId.create(XROAD_INSTANCE, MEMBER_CLASS, "member" + i, subsystem));
+            }
+        }
+
+        return clients;
+    }
+
+    private static XRoadId subjectId(Random random) {
+        switch (random.nextInt(10)) {
+            case 0:
+            case 1:
+                return LocalGroupId.create(pick(random, GROUP_CODES) + (random.nextInt(10) == 0 ? "x" : ""));
+            case 2:
+                return GlobalGroupId.create(XROAD_INSTANCE, pick(random, GLOBAL_GROUP_CODES));
+            case 3:
+                ClientId client = clientId(random);
+                return ServiceId.create(client, pick(random, SERVICE_CODES));
+            default:
+                return clientId(random);
+        }
+    }
+
+    private static ClientId providerId(int provider) {
+        return ClientId.create(XROAD_INSTANCE, MEMBER_CLASS, "provider" + provider, "providerSub");
+    }
+
+    private static ClientId clientId(Random random) {
+        return ClientId.create(XROAD_INSTANCE, MEMBER_CLASS, "member" + random.nextInt(MEMBERS),
+                pick(random, SUBSYSTEMS));
+    }
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
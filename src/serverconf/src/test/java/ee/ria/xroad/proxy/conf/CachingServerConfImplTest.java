@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.ServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.model.ConfVersionType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.conf.TestUtil.CLIENT_CODE;
+import static ee.ria.xroad.proxy.conf.TestUtil.NUM_SERVICES;
+import static ee.ria.xroad.proxy.conf.TestUtil.SERVICE_CODE;
+import static ee.ria.xroad.proxy.conf.TestUtil.SERVICE_VERSION;
+import static ee.ria.xroad.proxy.conf.TestUtil.client;
+import static ee.ria.xroad.proxy.conf.TestUtil.createTestClientId;
+import static ee.ria.xroad.proxy.conf.TestUtil.createTestServiceId;
+import static ee.ria.xroad.proxy.conf.TestUtil.prepareDB;
+import static ee.ria.xroad.proxy.conf.TestUtil.service;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests caching server conf.
+ */
+public class CachingServerConfImplTest {
+
+    private static final List<ServiceId> SERVICES = Arrays.asList(
+            createTestServiceId(client(1), service(1, 1), SERVICE_VERSION),
+            createTestServiceId(client(1), service(1, NUM_SERVICES - 1), SERVICE_VERSION),
+            createTestServiceId(client(2), service(0, NUM_SERVICES - 2), null),
+            createTestServiceId(client(1), SERVICE_CODE + "X", SERVICE_VERSION));
+
+    private static final List<ClientId> CLIENTS = Arrays.asList(
+            createTestClientId(),
+            createTestClientId(client(1)),
+            createTestClientId(CLIENT_CODE + "X"));
+
+    /**
+     * Creates test database.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        prepareDB();
+    }
+
+    /**
+     * Test to ensure cached values equal the values read from the database, also when read again from the cache.
+     */
+    @Test
+    public void cachedValuesMatchDatabase() {
+        ServerConfImpl database = new ServerConfImpl();
+        CachingServerConfImpl caching = new CachingServerConfImpl();
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(database.getIdentifier(), caching.getIdentifier());
+            assertEquals(database.getTspUrl(), caching.getTspUrl());
+
+            for (ClientId client : CLIENTS) {
+                assertEquals(database.getMemberStatus(client), caching.getMemberStatus(client));
+                assertEquals(database.getIsAuthentication(client), caching.getIsAuthentication(client));
+            }
+
+            for (ServiceId service : SERVICES) {
+                assertEquals(database.getServiceAddress(service), caching.getServiceAddress(service));
+                assertEquals(database.getServiceTimeout(service), caching.getServiceTimeout(service));
+                assertEquals(database.getDisabledNotice(service), caching.getDisabledNotice(service));
+                assertEquals(database.getRequiredCategories(service), caching.getRequiredCategories(service));
+                assertEquals(database.getDescriptionType(service), caching.getDescriptionType(service));
+
+                if (database.serviceExists(service)) {
+                    assertEquals(database.isSslAuthentication(service), caching.isSslAuthentication(service));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test to ensure cache statistics are exposed over JMX.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void exposeStatisticsOverJmx() throws Exception {
+        CachingServerConfImpl caching = new CachingServerConfImpl();
+        ClientId client = createTestClientId(client(1));
+
+        caching.getMemberStatus(client);
+        caching.getMemberStatus(client);
+        caching.getMemberStatus(client);
+
+        assertEquals(2L, getStatistic(CachingServerConfImpl.MEMBER_STATUS + ".hitCount"));
+        assertEquals(1L, getStatistic(CachingServerConfImpl.MEMBER_STATUS + ".missCount"));
+        assertEquals(1L, getStatistic(CachingServerConfImpl.MEMBER_STATUS + ".size"));
+    }
+
+    /**
+     * Test to ensure cached values are kept until the configuration version changes and reloaded soon after it
+     * changes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void invalidateCachesWhenVersionChanges() throws Exception {
+        String pollInterval = System.getProperty(SystemProperties.SERVER_CONF_VERSION_POLL_INTERVAL);
+        System.setProperty(SystemProperties.SERVER_CONF_VERSION_POLL_INTERVAL, "50");
+
+        try {
+            setMemberStatus(null, true);
+
+            CachingServerConfImpl caching = new CachingServerConfImpl();
+            ClientId client = createTestClientId(client(1));
+            String status = caching.getMemberStatus(client);
+
+            setMemberStatus(status + "X", false);
+            Thread.sleep(500);
+
+            assertEquals(status, caching.getMemberStatus(client));
+
+            setMemberStatus(status + "X", true);
+            long deadline = System.currentTimeMillis() + 1000;
+
+            while (!(status + "X").equals(caching.getMemberStatus(client))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(status + "X", caching.getMemberStatus(client));
+        } finally {
+            if (pollInterval != null) {
+                System.setProperty(SystemProperties.SERVER_CONF_VERSION_POLL_INTERVAL, pollInterval);
+            } else {
+                System.clearProperty(SystemProperties.SERVER_CONF_VERSION_POLL_INTERVAL);
+            }
+
+            prepareDB();
+        }
+    }
+
+    private static void setMemberStatus(String status, boolean incrementVersion) throws Exception {
+        doInTransaction(session -> {
+            if (status != null) {
+                new ClientDAOImpl().getClient(session, createTestClientId(client(1))).setClientStatus(status);
+            }
+
+            // The test database has no triggers, so the version is changed as the triggers would do
+            if (incrementVersion) {
+                ConfVersionType confVersion = session.get(ConfVersionType.class, ConfVersionType.ID);
+
+                if (confVersion == null) {
+                    confVersion = new ConfVersionType();
+                    confVersion.setId(ConfVersionType.ID);
+                    session.save(confVersion);
+                } else {
+                    confVersion.setVersion(confVersion.getVersion() + 1);
+                }
+            }
+
+            return null;
+        });
+    }
+
+    private static Object getStatistic(String name) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName objectName : server.queryNames(new ObjectName("xroad.serverconf:*"), null)) {
+            if (name.equals(objectName.getKeyProperty("name"))) {
+                return server.getAttribute(objectName, "Value");
+            }
+        }
+
+        throw new AssertionError("Statistic " + name + " not found");
+    }
+}
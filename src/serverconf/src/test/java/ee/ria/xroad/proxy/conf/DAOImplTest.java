@@ -37,11 +37,13 @@ import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
 import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceDescriptionType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
+import ee.ria.xroad.common.db.TransactionCallback;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.LocalGroupId;
 import ee.ria.xroad.common.identifier.ServiceId;
 
 import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -146,6 +148,36 @@ public class DAOImplTest {
         assertEquals(id.getClientId(), serviceDescription.getClient().getIdentifier());
     }
 
+    /**
+     * Test that repeated lookups in separate transactions are served from the second-level and query caches.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cacheRepeatedLookups() throws Exception {
+        ServerConfDatabaseCtx.get().commitTransaction();
+
+        ClientId clientId = createTestClientId(client(1));
+        ServiceId serviceId = createTestServiceId(client(1), service(1, 1), SERVICE_VERSION);
+        TransactionCallback<ServiceType> lookup = s -> {
+            new ClientDAOImpl().getIsCerts(s, clientId).size();
+
+            return new ServiceDAOImpl().getService(s, serviceId);
+        };
+
+        Statistics statistics = ServerConfDatabaseCtx.get().getSessionFactory().getStatistics();
+        statistics.clear();
+
+        assertNotNull(ServerConfDatabaseCtx.doInTransaction(lookup));
+        long statements = statistics.getPrepareStatementCount();
+
+        assertNotNull(ServerConfDatabaseCtx.doInTransaction(lookup));
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getQueryCacheHitCount() > 0);
+        assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+
+        session = ServerConfDatabaseCtx.get().beginTransaction();
+    }
+
     /**
      * Test getting ACL.
      * @throws Exception if an error occurs
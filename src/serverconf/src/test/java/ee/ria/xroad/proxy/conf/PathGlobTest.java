@@ -57,6 +57,8 @@ public class PathGlobTest {
                 {"", "", true},
                 {"", " ", false},
                 {".^$+{[]|()", ".^$+{[]|()", true},
+                {"/a?", "/a?", true},
+                {"/a?", "/", false},
                 {"**/bar/**", "a/b/c/bar/e/f", true},
                 {"**/bar/**", "a/b/c/foo/e/f", false},
                 {"**\\*", "/what/ever*", true},
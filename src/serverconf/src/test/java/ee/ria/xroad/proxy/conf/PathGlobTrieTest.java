@@ -0,0 +1,141 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.serverconf.PathGlob;
+import ee.ria.xroad.common.conf.serverconf.PathGlobTrie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the path glob trie matches paths like {@link PathGlob}, using randomly generated globs and paths.
+ */
+public class PathGlobTrieTest {
+
+    private static final long SEED = 4711L;
+    private static final int ROUNDS = 20000;
+    private static final int MAX_GLOBS = 20;
+    private static final int MAX_PARTS = 8;
+
+    private static final String[] GLOB_PARTS = {
+        "/", "/", "/", "a", "b", "ab", "*", "*", "**", "***", "\\*", "\\\\", "\\", ".", "?", "a?", "", "%2F", "A"
+    };
+
+    private static final String[] PATH_PARTS = {
+        "/", "/", "/", "a", "b", "ab", "*", "\\", ".", "?", "", "%2F", "A", "ba"
+    };
+
+    /**
+     * Test to ensure a trie with a single glob matches the same paths as the glob.
+     */
+    @Test
+    public void singleGlobMatchesAsPathGlob() {
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < ROUNDS; i++) {
+            String glob = generate(random, GLOB_PARTS);
+            PathGlobTrie trie = new PathGlobTrie();
+            trie.add(glob);
+
+            for (int j = 0; j < MAX_PARTS; j++) {
+                String path = generate(random, PATH_PARTS);
+
+                assertEquals("<" + glob + "> matches <" + path + ">",
+                        PathGlob.matches(glob, path), trie.matches(path));
+            }
+        }
+    }
+
+    /**
+     * Test to ensure a trie with many globs matches a path if and only if any of the globs matches it.
+     */
+    @Test
+    public void manyGlobsMatchAsAnyPathGlob() {
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < ROUNDS / MAX_GLOBS; i++) {
+            List<String> globs = new ArrayList<>();
+            PathGlobTrie trie = new PathGlobTrie();
+
+            for (int j = random.nextInt(MAX_GLOBS) + 1; j > 0; j--) {
+                String glob = generate(random, GLOB_PARTS);
+                globs.add(glob);
+                trie.add(glob);
+            }
+
+            for (int j = 0; j < MAX_GLOBS; j++) {
+                String path = generate(random, PATH_PARTS);
+                boolean expected = globs.stream().anyMatch(glob -> PathGlob.matches(glob, path));
+
+                assertEquals(globs + " match <" + path + ">", expected, trie.matches(path));
+            }
+        }
+    }
+
+    /**
+     * Test to ensure typical endpoint globs are matched.
+     */
+    @Test
+    public void matchEndpointGlobs() {
+        PathGlobTrie trie = new PathGlobTrie();
+        trie.add("/pets");
+        trie.add("/pets/*");
+        trie.add("/pets/*/owner");
+        trie.add("/stores/**");
+        trie.add("/files/report*");
+
+        assertTrue(trie.matches("/pets"));
+        assertTrue(trie.matches("/pets/1"));
+        assertTrue(trie.matches("/pets/1/owner"));
+        assertTrue(trie.matches("/stores/"));
+        assertTrue(trie.matches("/stores/1/items/2"));
+        assertTrue(trie.matches("/files/report1"));
+
+        assertFalse(trie.matches("/pets/1/2"));
+        assertFalse(trie.matches("/pets/1/owner/"));
+        assertFalse(trie.matches("/stores"));
+        assertFalse(trie.matches("/files/a/report1"));
+        assertFalse(trie.matches("/Pets"));
+        assertFalse(new PathGlobTrie().matches(""));
+    }
+
+    private static String generate(Random random, String[] parts) {
+        StringBuilder b = new StringBuilder();
+
+        for (int i = random.nextInt(MAX_PARTS + 1); i > 0; i--) {
+            b.append(parts[random.nextInt(parts.length)]);
+        }
+
+        return b.toString();
+    }
+}
@@ -26,7 +26,10 @@ package ee.ria.xroad.proxy.conf;
 
 import ee.ria.xroad.common.ExpectedCodedException;
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
 import ee.ria.xroad.common.conf.serverconf.IsAuthentication;
+import ee.ria.xroad.common.conf.serverconf.IsCertificateIndex;
+import ee.ria.xroad.common.conf.serverconf.ResolvedService;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
 import ee.ria.xroad.common.conf.serverconf.ServerConfImpl;
@@ -247,6 +250,43 @@ public class ServerConfTest {
         assertFalse(ServerConf.isQueryAllowed(client1, serviceRest));
     }
 
+    /**
+     * Tests resolving services at once gives the same values as the separate calls.
+     */
+    @Test
+    public void resolveService() {
+        ClientId client1 = createTestClientId(client(1));
+        ClientId clientX = createTestClientId(CLIENT_CODE + "X");
+
+        List<ServiceId> services = Arrays.asList(
+                createTestServiceId(client1.getMemberCode(), service(1, 1), SERVICE_VERSION),
+                createTestServiceId(client1.getMemberCode(), service(1, NUM_SERVICES - 1), SERVICE_VERSION),
+                createTestServiceId(client1.getMemberCode(), service(1, NUM_SERVICES - 2), null),
+                createTestServiceId(client1.getMemberCode(), "rest", null),
+                createTestServiceId(client1.getMemberCode(), SERVICE_CODE + "X", SERVICE_VERSION),
+                createTestServiceId(CLIENT_CODE + "X", SERVICE_CODE + "X", SERVICE_VERSION));
+
+        for (ServiceId service : services) {
+            ResolvedService resolved = ServerConf.resolveService(service);
+
+            assertEquals(service, resolved.getServiceId());
+            assertEquals(ServerConf.getMemberStatus(service.getClientId()), resolved.getProviderStatus());
+            assertEquals(ServerConf.serviceExists(service), resolved.exists());
+            assertEquals(ServerConf.getDescriptionType(service), resolved.getDescriptionType());
+            assertEquals(ServerConf.getDisabledNotice(service), resolved.getDisabledNotice());
+            assertEquals(new ArrayList<>(ServerConf.getRequiredCategories(service)),
+                    new ArrayList<>(resolved.getRequiredCategories()));
+            assertEquals(ServerConf.getServiceAddress(service), resolved.getAddress());
+            assertEquals(ServerConf.getServiceTimeout(service), resolved.getTimeout());
+
+            for (ClientId client : Arrays.asList(client1, clientX)) {
+                assertEquals(ServerConf.isQueryAllowed(client, service), resolved.isQueryAllowed(client));
+                assertEquals(ServerConf.isQueryAllowed(client, service, "GET", "/api/foo"),
+                        resolved.isQueryAllowed(client, "GET", "/api/foo"));
+            }
+        }
+    }
+
     /**
      * Tests getting conntector host.
      */
@@ -300,6 +340,20 @@ public class ServerConfTest {
         assertEquals(readCertificate(BASE64_CERT), isCerts.get(0));
     }
 
+    /**
+     * Tests getting the IS certificate index.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void getIsCertificateIndex() throws Exception {
+        IsCertificateIndex isCerts = ServerConf.getIsCertificateIndex(createTestClientId(client(1)));
+        assertFalse(isCerts.isEmpty());
+        assertTrue(isCerts.contains(readCertificate(BASE64_CERT)));
+        assertFalse(isCerts.contains(TestCertUtil.getConsumer().certChain[0]));
+
+        assertTrue(ServerConf.getIsCertificateIndex(createTestClientId(client(2))).isEmpty());
+    }
+
     /**
      * Tests getting SSL authentication.
      */